@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Static R-tree over axis-aligned bounding boxes, for finding the boxes that
+ * intersect a query box.
+ * <p>
+ * The tree is bulk-loaded with the Sort-Tile-Recursive (STR) algorithm: The
+ * boxes are sorted into tiles by their centers, one dimension after the other,
+ * and consecutive runs of {@link #NODE_SIZE} boxes form the leaves. Higher
+ * levels group consecutive runs of {@link #NODE_SIZE} nodes of the level
+ * below. Bounds of all boxes and nodes are stored in flat primitive arrays.
+ *
+ * @param <T>
+ *            the type of the objects associated with the boxes
+ */
+final class BoundingBoxTree< T >
+{
+	static final int NODE_SIZE = 16;
+
+	private final int n;
+
+	/**
+	 * Objects associated with the boxes, in tree order.
+	 */
+	private final List< T > objects;
+
+	/**
+	 * {@code levelMin.get(0)} and {@code levelMax.get(0)} are the bounds of
+	 * the boxes, in tree order. Level {@code l > 0} holds the bounds of nodes,
+	 * where node {@code i} covers elements
+	 * {@code [i * NODE_SIZE, (i+1) * NODE_SIZE)} of level {@code l - 1}.
+	 * Bounds of element {@code i} in dimension {@code d} are at
+	 * {@code i * n + d}.
+	 */
+	private final List< long[] > levelMin;
+
+	private final List< long[] > levelMax;
+
+	/**
+	 * @param objects
+	 *            the objects associated with the boxes
+	 * @param min
+	 *            min of the box of the i-th object in dimension d at
+	 *            {@code min[i * n + d]}
+	 * @param max
+	 *            max of the box of the i-th object in dimension d at
+	 *            {@code max[i * n + d]}
+	 */
+	BoundingBoxTree( final int n, final List< T > objects, final long[] min, final long[] max )
+	{
+		this.n = n;
+		final int size = objects.size();
+
+		final Integer[] order = new Integer[ size ];
+		for ( int i = 0; i < size; ++i )
+			order[ i ] = i;
+		sortTileRecursive( order, 0, size, 0, min, max );
+
+		this.objects = new ArrayList<>( size );
+		final long[] sortedMin = new long[ size * n ];
+		final long[] sortedMax = new long[ size * n ];
+		for ( int i = 0; i < size; ++i )
+		{
+			final int o = order[ i ];
+			this.objects.add( objects.get( o ) );
+			System.arraycopy( min, o * n, sortedMin, i * n, n );
+			System.arraycopy( max, o * n, sortedMax, i * n, n );
+		}
+
+		levelMin = new ArrayList<>();
+		levelMax = new ArrayList<>();
+		levelMin.add( sortedMin );
+		levelMax.add( sortedMax );
+		int levelSize = size;
+		while ( levelSize > NODE_SIZE )
+		{
+			final long[] childMin = levelMin.get( levelMin.size() - 1 );
+			final long[] childMax = levelMax.get( levelMax.size() - 1 );
+			final int numNodes = ( levelSize + NODE_SIZE - 1 ) / NODE_SIZE;
+			final long[] nodeMin = new long[ numNodes * n ];
+			final long[] nodeMax = new long[ numNodes * n ];
+			Arrays.fill( nodeMin, Long.MAX_VALUE );
+			Arrays.fill( nodeMax, Long.MIN_VALUE );
+			for ( int c = 0; c < levelSize; ++c )
+			{
+				final int node = c / NODE_SIZE;
+				for ( int d = 0; d < n; ++d )
+				{
+					nodeMin[ node * n + d ] = Math.min( nodeMin[ node * n + d ], childMin[ c * n + d ] );
+					nodeMax[ node * n + d ] = Math.max( nodeMax[ node * n + d ], childMax[ c * n + d ] );
+				}
+			}
+			levelMin.add( nodeMin );
+			levelMax.add( nodeMax );
+			levelSize = numNodes;
+		}
+	}
+
+	/**
+	 * Sort {@code order[from, to)} into tiles, by the centers of their boxes
+	 * in dimensions {@code d, ..., n-1}.
+	 */
+	private void sortTileRecursive( final Integer[] order, final int from, final int to, final int d, final long[] min, final long[] max )
+	{
+		final int size = to - from;
+		if ( size <= NODE_SIZE )
+			return;
+		Arrays.sort( order, from, to, Comparator.comparingLong( i -> min[ i * n + d ] + max[ i * n + d ] ) );
+		if ( d == n - 1 )
+			return;
+		final int numLeaves = ( size + NODE_SIZE - 1 ) / NODE_SIZE;
+		final int numSlices = ( int ) Math.ceil( Math.pow( numLeaves, 1.0 / ( n - d ) ) );
+		final int sliceSize = NODE_SIZE * ( ( numLeaves + numSlices - 1 ) / numSlices );
+		for ( int s = from; s < to; s += sliceSize )
+			sortTileRecursive( order, s, Math.min( s + sliceSize, to ), d + 1, min, max );
+	}
+
+	/**
+	 * Get all objects whose box intersects the box {@code [qmin, qmax]}.
+	 */
+	List< T > intersecting( final long[] qmin, final long[] qmax )
+	{
+		final List< T > result = new ArrayList<>();
+		final int top = levelMin.size() - 1;
+		final int topSize = levelMin.get( top ).length / n;
+		for ( int i = 0; i < topSize; ++i )
+			intersecting( top, i, qmin, qmax, result );
+		return result;
+	}
+
+	private void intersecting( final int level, final int i, final long[] qmin, final long[] qmax, final List< T > result )
+	{
+		final long[] min = levelMin.get( level );
+		final long[] max = levelMax.get( level );
+		for ( int d = 0; d < n; ++d )
+			if ( min[ i * n + d ] > qmax[ d ] || max[ i * n + d ] < qmin[ d ] )
+				return;
+		if ( level == 0 )
+			result.add( objects.get( i ) );
+		else
+		{
+			final int childLevelSize = levelMin.get( level - 1 ).length / n;
+			final int end = Math.min( ( i + 1 ) * NODE_SIZE, childLevelSize );
+			for ( int c = i * NODE_SIZE; c < end; ++c )
+				intersecting( level - 1, c, qmin, qmax, result );
+		}
+	}
+}
@@ -0,0 +1,503 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.roi.MaskInterval;
+import net.imglib2.roi.Masks;
+import net.imglib2.roi.boundary.Boundary.StructuringElement;
+import net.imglib2.roi.labeling.LabelRegionSummaries.IndexStatistics;
+import net.imglib2.type.BooleanType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Label the connected components of a binary mask into an {@link ImgLabeling}.
+ * <p>
+ * The mask is split into slabs along the last dimension. Each slab is labeled
+ * by a raster scan with a union-find structure of provisional labels. The
+ * slabs are processed in parallel if labeling is called within
+ * {@link Parallelization#runMultiThreaded(Runnable)}. Components touching
+ * neighboring slabs are then merged, and the final labels are written into
+ * the index image of the {@link ImgLabeling}. Size, center of mass, and
+ * bounding box of the components are accumulated while writing, and returned
+ * as {@link LabelRegionSummaries}.
+ * <p>
+ * Components are labeled {@code 1, 2, 3, ...}, in the flat iteration order of
+ * their first pixel. The result does not depend on the number of threads.
+ * <p>
+ * Provisional labels are stored as an {@code int} per pixel, i.e., labeling
+ * requires 4 bytes of temporary memory per pixel of the mask.
+ */
+public final class ConnectedComponents
+{
+	/**
+	 * Maximum number of pixels in a slab, such that pixels of a slab can be
+	 * addressed by {@code int} indices.
+	 */
+	private static final long MAX_SLAB_SIZE = 1L << 30;
+
+	private ConnectedComponents()
+	{}
+
+	/**
+	 * Label the connected components of {@code mask}.
+	 *
+	 * @param mask
+	 *            the binary mask. Components are formed by the {@code true}
+	 *            pixels.
+	 * @param labeling
+	 *            an empty labeling with the same interval as {@code mask}.
+	 *            Components are labeled {@code 1, 2, 3, ...} into this
+	 *            labeling.
+	 * @param se
+	 *            which pixels are neighbors. {@code FOUR_CONNECTED} means
+	 *            pixels differing by 1 in exactly one dimension (4-neighborhood
+	 *            in 2D, 6-neighborhood in 3D). {@code EIGHT_CONNECTED} means
+	 *            pixels differing by at most 1 in every dimension
+	 *            (8-neighborhood in 2D, 26-neighborhood in 3D).
+	 * @return summaries (size, center of mass, bounding box) of the labeled
+	 *         components.
+	 * @throws IllegalArgumentException
+	 *             if {@code labeling} is not empty or does not have the same
+	 *             interval as {@code mask}.
+	 */
+	public static < B extends BooleanType< B >, I extends IntegerType< I > > LabelRegionSummaries< Integer > labelAllConnectedComponents(
+			final RandomAccessibleInterval< B > mask,
+			final ImgLabeling< Integer, I > labeling,
+			final StructuringElement se )
+	{
+		final int n = mask.numDimensions();
+		if ( !Intervals.equals( mask, labeling ) )
+			throw new IllegalArgumentException( "mask and labeling must have the same interval" );
+		if ( labeling.getMapping().numSets() > 1 )
+			throw new IllegalArgumentException( "labeling must be empty" );
+
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final long numPixels = Intervals.numElements( mask );
+		final int numSlabs = ( int ) Math.max( taskExecutor.suggestNumberOfTasks(), ( numPixels - 1 ) / MAX_SLAB_SIZE + 1 );
+		final List< Slab > slabs = new ArrayList<>();
+		for ( final Interval interval : LabelRegions.splitIntoSlabs( mask, numSlabs ) )
+		{
+			if ( Intervals.numElements( interval ) > MAX_SLAB_SIZE )
+				throw new IllegalArgumentException( "mask is too large" );
+			slabs.add( new Slab( interval ) );
+		}
+
+		final long[] dims = Intervals.dimensionsAsLongArray( mask );
+		final long[][] offsets = backwardOffsets( n, se );
+		final int[] flatOffsets = new int[ offsets.length ];
+		for ( int k = 0; k < offsets.length; ++k )
+		{
+			long stride = 1;
+			for ( int d = 0; d < n; ++d )
+			{
+				flatOffsets[ k ] += offsets[ k ][ d ] * stride;
+				stride *= dims[ d ];
+			}
+		}
+
+		// label each slab
+		if ( slabs.size() == 1 )
+			slabs.get( 0 ).scan( mask, offsets, flatOffsets );
+		else
+			taskExecutor.forEach( slabs, slab -> slab.scan( mask, offsets, flatOffsets ) );
+
+		// merge components across slab boundaries
+		int numProvisional = 0;
+		for ( final Slab slab : slabs )
+		{
+			slab.offset = numProvisional;
+			numProvisional += slab.numLabels;
+		}
+		final UnionFind global = new UnionFind( numProvisional + 1 );
+		global.makeSet( 0 );
+		for ( final Slab slab : slabs )
+			for ( int l = 1; l <= slab.numLabels; ++l )
+				global.makeSet( slab.offset + slab.roots[ l ] );
+		for ( int i = 1; i < slabs.size(); ++i )
+			merge( slabs.get( i - 1 ), slabs.get( i ), dims, offsets, flatOffsets, global );
+
+		// assign final labels in order of first occurrence
+		final int[] finalLabels = new int[ numProvisional + 1 ];
+		int numComponents = 0;
+		for ( int g = 1; g <= numProvisional; ++g )
+		{
+			final int root = global.find( g );
+			finalLabels[ g ] = root == g ? ++numComponents : finalLabels[ root ];
+		}
+
+		final List< Set< Integer > > labelSets = new ArrayList<>( numComponents + 1 );
+		labelSets.add( Collections.emptySet() );
+		for ( int label = 1; label <= numComponents; ++label )
+			labelSets.add( Collections.singleton( label ) );
+		labeling.getMapping().setLabelSets( labelSets );
+
+		// write final labels into index image
+		final RandomAccessibleInterval< I > indexImg = labeling.getIndexImg();
+		if ( slabs.size() == 1 )
+			slabs.get( 0 ).write( indexImg, finalLabels );
+		else
+			taskExecutor.forEach( slabs, slab -> slab.write( indexImg, finalLabels ) );
+		labeling.indexImgModified( labeling );
+
+		// combine statistics of slabs into statistics of components
+		final IndexStatistics stats = new IndexStatistics( n, numComponents + 1 );
+		for ( final Slab slab : slabs )
+			for ( int l = 1; l <= slab.numLabels; ++l )
+				if ( slab.roots[ l ] == l )
+					stats.add( finalLabels[ slab.offset + l ], slab.stats, slab.slots[ l ] );
+
+		final Map< Integer, LabelRegionSummary< Integer > > summaries = new HashMap<>();
+		for ( int label = 1; label <= numComponents; ++label )
+		{
+			final int from = label * n;
+			final int to = from + n;
+			summaries.put( label, new LabelRegionSummary<>( label, stats.size[ label ],
+					Arrays.copyOfRange( stats.sum, from, to ),
+					Arrays.copyOfRange( stats.min, from, to ),
+					Arrays.copyOfRange( stats.max, from, to ) ) );
+		}
+		return new LabelRegionSummaries<>( labeling, summaries );
+	}
+
+	/**
+	 * Label the connected components of {@code mask}.
+	 *
+	 * @see #labelAllConnectedComponents(RandomAccessibleInterval,
+	 *      ImgLabeling, StructuringElement)
+	 */
+	public static < I extends IntegerType< I > > LabelRegionSummaries< Integer > labelAllConnectedComponents(
+			final MaskInterval mask,
+			final ImgLabeling< Integer, I > labeling,
+			final StructuringElement se )
+	{
+		return labelAllConnectedComponents( Masks.toRandomAccessibleInterval( mask ), labeling, se );
+	}
+
+	/**
+	 * Get the offsets to the neighbors of a pixel that precede it in flat
+	 * iteration order.
+	 */
+	static long[][] backwardOffsets( final int n, final StructuringElement se )
+	{
+		final List< long[] > offsets = new ArrayList<>();
+		if ( se == StructuringElement.FOUR_CONNECTED )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				final long[] offset = new long[ n ];
+				offset[ d ] = -1;
+				offsets.add( offset );
+			}
+		}
+		else
+		{
+			// all offsets in {-1,0,1}^n where the last non-zero element is -1
+			final long[] offset = new long[ n ];
+			Arrays.fill( offset, -1 );
+			while ( true )
+			{
+				int last = n - 1;
+				while ( last >= 0 && offset[ last ] == 0 )
+					--last;
+				if ( last >= 0 && offset[ last ] == -1 )
+					offsets.add( offset.clone() );
+
+				int d = 0;
+				for ( ; d < n; ++d )
+				{
+					if ( ++offset[ d ] <= 1 )
+						break;
+					offset[ d ] = -1;
+				}
+				if ( d == n )
+					break;
+			}
+		}
+		return offsets.toArray( new long[ 0 ][] );
+	}
+
+	/**
+	 * Whether {@code pos + offset} is within {@code [0, dims)} in dimensions
+	 * {@code 0} to {@code numDims - 1}.
+	 */
+	private static boolean inside( final long[] pos, final long[] offset, final long[] dims, final int numDims )
+	{
+		for ( int d = 0; d < numDims; ++d )
+		{
+			final long p = pos[ d ] + offset[ d ];
+			if ( p < 0 || p >= dims[ d ] )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the line through {@code pos} (along dimension 0) has all
+	 * neighboring lines within {@code [0, dims)}.
+	 */
+	private static boolean isInteriorLine( final long[] pos, final long[] dims )
+	{
+		for ( int d = 1; d < pos.length; ++d )
+			if ( pos[ d ] < 1 || pos[ d ] >= dims[ d ] - 1 )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Increment {@code pos} in flat iteration order of {@code dims}.
+	 */
+	private static void fwd( final long[] pos, final long[] dims )
+	{
+		for ( int d = 0; d < pos.length; ++d )
+		{
+			if ( ++pos[ d ] < dims[ d ] )
+				break;
+			pos[ d ] = 0;
+		}
+	}
+
+	/**
+	 * Union the global provisional labels of components that touch across
+	 * the boundary between {@code prev} and the following slab {@code next}.
+	 */
+	private static void merge( final Slab prev, final Slab next, final long[] dims, final long[][] offsets, final int[] flatOffsets, final UnionFind global )
+	{
+		final int n = dims.length;
+		final long[] planeDims = dims.clone();
+		planeDims[ n - 1 ] = 1;
+		final int planeSize = ( int ) Intervals.numElements( planeDims );
+		final int prevSize = prev.labels.length;
+		final long[] pos = new long[ n ];
+		for ( int i = 0; i < planeSize; ++i, fwd( pos, planeDims ) )
+		{
+			final int label = next.labels[ i ];
+			if ( label == 0 )
+				continue;
+			for ( int k = 0; k < offsets.length; ++k )
+			{
+				if ( offsets[ k ][ n - 1 ] != -1 || !inside( pos, offsets[ k ], dims, n - 1 ) )
+					continue;
+				final int neighbor = prev.labels[ prevSize + i + flatOffsets[ k ] ];
+				if ( neighbor != 0 )
+					global.union( next.offset + label, prev.offset + neighbor );
+			}
+		}
+	}
+
+	/**
+	 * A slab of the mask, with its provisional labels.
+	 */
+	private static final class Slab
+	{
+		private final Interval interval;
+
+		/**
+		 * Provisional label of each pixel in flat iteration order, or 0 for
+		 * background.
+		 */
+		int[] labels;
+
+		/**
+		 * Provisional labels are {@code 1, ..., numLabels}.
+		 */
+		int numLabels;
+
+		/**
+		 * Root (the smallest provisional label of the component within this
+		 * slab) of each provisional label.
+		 */
+		int[] roots;
+
+		/**
+		 * Offset of the provisional labels of this slab into the global
+		 * provisional labels.
+		 */
+		int offset;
+
+		/**
+		 * Index into {@link #stats} for each root provisional label.
+		 */
+		int[] slots;
+
+		IndexStatistics stats;
+
+		Slab( final Interval interval )
+		{
+			this.interval = interval;
+		}
+
+		void scan( final RandomAccessibleInterval< ? extends BooleanType< ? > > mask, final long[][] offsets, final int[] flatOffsets )
+		{
+			final int n = interval.numDimensions();
+			final long[] dims = Intervals.dimensionsAsLongArray( interval );
+			final int size = ( int ) Intervals.numElements( interval );
+			labels = new int[ size ];
+			final UnionFind uf = new UnionFind( 64 );
+			uf.makeSet( 0 );
+			final long[] pos = new long[ n ];
+			final Cursor< ? extends BooleanType< ? > > c = Views.flatIterable( Views.interval( mask, interval ) ).cursor();
+			boolean interiorLine = false;
+			for ( int i = 0; i < size; ++i, fwd( pos, dims ) )
+			{
+				if ( pos[ 0 ] == 0 )
+					interiorLine = isInteriorLine( pos, dims );
+				if ( !c.next().get() )
+					continue;
+				// neighbors of interior pixels need no bounds checks
+				final boolean interior = interiorLine && pos[ 0 ] > 0 && pos[ 0 ] < dims[ 0 ] - 1;
+				int label = 0;
+				int previous = 0;
+				for ( int k = 0; k < offsets.length; ++k )
+				{
+					if ( !interior && !inside( pos, offsets[ k ], dims, n ) )
+						continue;
+					final int neighbor = labels[ i + flatOffsets[ k ] ];
+					if ( neighbor != 0 && neighbor != previous )
+					{
+						previous = neighbor;
+						label = label == 0 ? uf.find( neighbor ) : uf.union( label, neighbor );
+					}
+				}
+				labels[ i ] = label == 0 ? uf.makeSet( uf.size() ) : label;
+			}
+
+			numLabels = uf.size() - 1;
+			roots = new int[ numLabels + 1 ];
+			slots = new int[ numLabels + 1 ];
+			int numRoots = 0;
+			for ( int l = 1; l <= numLabels; ++l )
+			{
+				roots[ l ] = uf.find( l );
+				if ( roots[ l ] == l )
+					slots[ l ] = numRoots++;
+			}
+			stats = new IndexStatistics( n, numRoots );
+		}
+
+		< I extends IntegerType< I > > void write( final RandomAccessibleInterval< I > indexImg, final int[] finalLabels )
+		{
+			final Cursor< I > c = Views.flatIterable( Views.interval( indexImg, interval ) ).localizingCursor();
+			for ( int i = 0; i < labels.length; ++i )
+			{
+				final I t = c.next();
+				final int label = labels[ i ];
+				if ( label == 0 )
+					t.setZero();
+				else
+				{
+					final int root = roots[ label ];
+					t.setInteger( finalLabels[ offset + root ] );
+					stats.add( slots[ root ], c );
+				}
+			}
+			labels = null;
+		}
+	}
+
+	/**
+	 * Union-find over {@code int} elements. The root of each set is its
+	 * smallest element.
+	 */
+	private static final class UnionFind
+	{
+		private int[] parent;
+
+		private int size;
+
+		UnionFind( final int capacity )
+		{
+			parent = new int[ capacity ];
+			size = 0;
+		}
+
+		/**
+		 * Add element {@code size()} with the given {@code parent}.
+		 *
+		 * @return the added element.
+		 */
+		int makeSet( final int p )
+		{
+			if ( size == parent.length )
+				parent = Arrays.copyOf( parent, 2 * size );
+			parent[ size ] = p;
+			return size++;
+		}
+
+		int size()
+		{
+			return size;
+		}
+
+		int find( int i )
+		{
+			while ( parent[ i ] != i )
+			{
+				parent[ i ] = parent[ parent[ i ] ];
+				i = parent[ i ];
+			}
+			return i;
+		}
+
+		int union( final int a, final int b )
+		{
+			final int ra = find( a );
+			final int rb = find( b );
+			if ( ra < rb )
+			{
+				parent[ rb ] = ra;
+				return ra;
+			}
+			else
+			{
+				parent[ ra ] = rb;
+				return rb;
+			}
+		}
+	}
+}
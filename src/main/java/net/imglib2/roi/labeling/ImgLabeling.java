@@ -34,6 +34,9 @@
 
 package net.imglib2.roi.labeling;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -46,11 +49,18 @@ import net.imglib2.Cursor;
 import net.imglib2.FlatIterationOrder;
 import net.imglib2.Interval;
 import net.imglib2.IterableInterval;
+import net.imglib2.Localizable;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.AbstractConvertedCursor;
 import net.imglib2.converter.AbstractConvertedRandomAccess;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.roi.IterableRegion;
+import net.imglib2.roi.Regions;
 import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 import net.imglib2.view.iteration.SubIntervalIterable;
 import net.imglib2.roi.labeling.LabelingType.ModCount;
@@ -87,14 +97,43 @@ public class ImgLabeling< T, I extends IntegerType< I > >
 
 	private final LabelingMapping< T > mapping;
 
+	/**
+	 * Created by the first {@link LabelRegions} for this labeling. Until
+	 * then, there is no cache that needs to know which blocks were modified.
+	 */
+	private volatile ModifiedBlocks modifiedBlocks;
+
+	/**
+	 * Minimum number of pixels per chunk (or slab) when processing in
+	 * parallel.
+	 */
+	private static final long MIN_PAINT_CHUNK_SIZE = 4096;
+
 	public ImgLabeling( final RandomAccessibleInterval< I > img )
+	{
+		this( img, false );
+	}
+
+	/**
+	 * Creates an empty ImgLabeling backed by the index image {@code img}.
+	 *
+	 * @param img
+	 *            the index image
+	 * @param compactLabelSets
+	 *            whether the {@link LabelingMapping} should store label sets
+	 *            compactly. This is recommended for labelings with millions
+	 *            of distinct label sets.
+	 *
+	 * @see LabelingMapping#LabelingMapping(IntegerType, boolean)
+	 */
+	public ImgLabeling( final RandomAccessibleInterval< I > img, final boolean compactLabelSets )
 	{
 		super( img );
 		indexAccessible = img;
 		indexIterable = Views.iterable( img );
 		subIterable = indexIterable instanceof SubIntervalIterable;
 		generation = new ModCount();
-		mapping = new LabelingMapping<>( indexIterable.firstElement() );
+		mapping = new LabelingMapping<>( indexIterable.firstElement(), compactLabelSets );
 	}
 
 	/**
@@ -135,14 +174,107 @@ public class ImgLabeling< T, I extends IntegerType< I > >
 	 * the list of labels. A pixel value of zero represents a pixel with no
 	 * label. A pixel value of N represents the label, which is given by the Nth
 	 * entry in the list of labels.
+	 * <p>
+	 *
+	 * @see #fromImageAndLabels(RandomAccessibleInterval, List, boolean)
 	 */
 	public static < T, I extends IntegerType< I > > ImgLabeling< T, I > fromImageAndLabels(
 			final RandomAccessibleInterval< I > img,
 			final List< T > labels )
 	{
-		final List< Set< T > > labelSets = Stream.concat( Stream.< Set< T > >of( Collections.emptySet() ),
-				labels.stream().map( Collections::singleton ) ).collect( Collectors.toList() );
-		return fromImageAndLabelSets( img, labelSets );
+		return fromImageAndLabels( img, labels, false );
+	}
+
+	/**
+	 * Creates a non empty ImgLabeling, from an index image and a list of
+	 * labels, like
+	 * {@link #fromImageAndLabels(RandomAccessibleInterval, List)}.
+	 * <p>
+	 * If {@code lazy == true}, the label sets are created lazily (see
+	 * {@link LabelingMapping#setLabels(List)}), so this takes constant time
+	 * and memory. The {@link LabelingMapping} then
+	 * {@link LabelingMapping#hasCompactLabelSets() stores label sets
+	 * compactly}, and duplicates in the list of labels are only detected when
+	 * labels are first looked up (for example, when a label is added to a
+	 * pixel).
+	 */
+	public static < T, I extends IntegerType< I > > ImgLabeling< T, I > fromImageAndLabels(
+			final RandomAccessibleInterval< I > img,
+			final List< T > labels,
+			final boolean lazy )
+	{
+		if ( !lazy )
+		{
+			final List< Set< T > > labelSets = Stream.concat( Stream.< Set< T > >of( Collections.emptySet() ),
+					labels.stream().map( Collections::singleton ) ).collect( Collectors.toList() );
+			return fromImageAndLabelSets( img, labelSets );
+		}
+		final ImgLabeling< T, I > result = new ImgLabeling<>( img, true );
+		result.getMapping().setLabels( labels );
+		return result;
+	}
+
+	/**
+	 * Creates a non empty ImgLabeling, from an integer label image, for
+	 * example an instance segmentation.
+	 * <p>
+	 * The pixel values of the index image must be between 0 and
+	 * {@code numLabels}. A pixel value of zero represents a pixel with no
+	 * label. A pixel value of N represents the label N.
+	 * <p>
+	 * Like {@link #fromImageAndLabels(RandomAccessibleInterval, List, boolean)
+	 * lazy fromImageAndLabels}, this takes constant time and memory.
+	 */
+	public static < I extends IntegerType< I > > ImgLabeling< Integer, I > fromLabelImage(
+			final RandomAccessibleInterval< I > img,
+			final int numLabels )
+	{
+		final List< Integer > labels = new AbstractList< Integer >()
+		{
+			@Override
+			public Integer get( final int index )
+			{
+				if ( index < 0 || index >= numLabels )
+					throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + numLabels );
+				return index + 1;
+			}
+
+			@Override
+			public int size()
+			{
+				return numLabels;
+			}
+		};
+		final ImgLabeling< Integer, I > result = new ImgLabeling<>( img, true );
+		result.getMapping().setLabels( labels, label -> {
+			if ( label instanceof Integer )
+			{
+				final int value = ( Integer ) label;
+				if ( value >= 1 && value <= numLabels )
+					return value - 1;
+			}
+			return -1;
+		} );
+		return result;
+	}
+
+	/**
+	 * Creates an empty ImgLabeling of the given {@code dimensions}, with an
+	 * index image that grows as needed: Initially, it uses 1 byte per pixel.
+	 * When more than 256 label sets are used, index values are widened to 2
+	 * (or 4) bytes per pixel, but only in blocks of pixels that contain such
+	 * large values. Existing cursors and random accesses remain valid.
+	 * <p>
+	 * The total number of pixels must not exceed {@code Integer.MAX_VALUE}.
+	 *
+	 * @param dimensions
+	 *            the dimensions of the labeling
+	 * @param <T>
+	 *            The type of labels assigned to pixels
+	 */
+	public static < T > ImgLabeling< T, IntType > withWideningIndexImg( final long... dimensions )
+	{
+		return new ImgLabeling<>( WideningIntAccess.createImg( dimensions ) );
 	}
 
 	public LabelingMapping< T > getMapping()
@@ -150,6 +282,257 @@ public class ImgLabeling< T, I extends IntegerType< I > >
 		return mapping;
 	}
 
+	/**
+	 * Get the record of which blocks of this labeling were modified. It is
+	 * created on the first call, and only records modifications after that.
+	 */
+	ModifiedBlocks getModifiedBlocks()
+	{
+		ModifiedBlocks blocks = modifiedBlocks;
+		if ( blocks == null )
+		{
+			synchronized ( this )
+			{
+				blocks = modifiedBlocks;
+				if ( blocks == null )
+					modifiedBlocks = blocks = new ModifiedBlocks( indexAccessible );
+			}
+		}
+		return blocks;
+	}
+
+	/**
+	 * Add {@code label} to (or remove it from) the label sets of all pixels in
+	 * {@code region}.
+	 * <p>
+	 * Instead of going through {@link LabelingType} for every pixel, this
+	 * computes the transition {@code oldIndex -> newIndex} once for each index
+	 * that occurs in the region, and writes the new indices directly into the
+	 * index image. The generation is incremented once (if any pixel changed).
+	 * <p>
+	 * If called within {@link Parallelization#runMultiThreaded(Runnable)}, and
+	 * {@code region} is an {@link IterableRegion} (for example a
+	 * {@link LabelRegion}, or a mask converted by
+	 * {@link net.imglib2.roi.Masks#toIterableRegion(net.imglib2.roi.MaskInterval)}),
+	 * disjoint slabs of the region along the last dimension are painted in
+	 * parallel.
+	 *
+	 * @param region
+	 *            pixels to paint. Must be contained in this labeling.
+	 * @param label
+	 *            the label to add or remove
+	 * @param add
+	 *            whether to add ({@code true}) or remove ({@code false}) the
+	 *            label
+	 */
+	void paint( final IterableInterval< Void > region, final T label, final boolean add )
+	{
+		if ( !Intervals.contains( this, region ) )
+			throw new IllegalArgumentException( "region is not contained in the labeling" );
+
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< IterableInterval< I > > slabs = sampleSlabs( region, taskExecutor );
+		final List< Boolean > changed = slabs.size() == 1
+				? Collections.singletonList( paintPixels( slabs.get( 0 ), label, add ) )
+				: taskExecutor.forEachApply( slabs, slab -> paintPixels( slab, label, add ) );
+
+		if ( changed.contains( true ) )
+			indexImgModified( region );
+	}
+
+	/**
+	 * Sample the index image in disjoint slabs of {@code region} along the
+	 * last dimension, for painting in parallel. Each slab is iterated by
+	 * restricting the mask of {@code region} to the slab interval, so this is
+	 * only done if {@code region} is an {@link IterableRegion}. Otherwise (or
+	 * if the region is small), the whole region is sampled as one slab.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private List< IterableInterval< I > > sampleSlabs( final IterableInterval< Void > region, final TaskExecutor taskExecutor )
+	{
+		final long numSlabs = Math.min( taskExecutor.suggestNumberOfTasks(), Intervals.numElements( region ) / MIN_PAINT_CHUNK_SIZE );
+		if ( numSlabs < 2 || !( region instanceof IterableRegion ) )
+			return Collections.singletonList( Regions.sample( region, indexAccessible ) );
+
+		final List< IterableInterval< I > > slabs = new ArrayList<>();
+		for ( final Interval slab : LabelRegions.splitIntoSlabs( region, ( int ) numSlabs ) )
+			slabs.add( Regions.sampleWithRandomAccessible( ( IterableRegion ) region, Views.interval( indexAccessible, slab ) ) );
+		return slabs;
+	}
+
+	/**
+	 * Split {@code size} pixels into chunks for processing in parallel.
+	 *
+	 * @return list of chunks {@code { start, size }} in iteration order.
+	 */
+	private static List< long[] > chunks( final long size, final TaskExecutor taskExecutor )
+	{
+		final int numChunks = ( int ) Math.max( 1, Math.min( taskExecutor.suggestNumberOfTasks(), size / MIN_PAINT_CHUNK_SIZE ) );
+		final List< long[] > chunks = new ArrayList<>( numChunks );
+		for ( int i = 0; i < numChunks; ++i )
+		{
+			final long start = size * i / numChunks;
+			final long end = size * ( i + 1 ) / numChunks;
+			chunks.add( new long[] { start, end - start } );
+		}
+		return chunks;
+	}
+
+	/**
+	 * Remove label sets that are not used by any pixel from the
+	 * {@link LabelingMapping}, and renumber the remaining label sets densely
+	 * (preserving their order). The index image is rewritten accordingly.
+	 * Labels that are no longer used by any label set are removed from the
+	 * mapping, too.
+	 * <p>
+	 * This is useful for long-running labelings, where relabeling and erasing
+	 * leaves behind label sets that are no longer referenced, which take up
+	 * index values and make {@link LabelRegions} slower.
+	 * <p>
+	 * If called within {@link Parallelization#runMultiThreaded(Runnable)},
+	 * the index image is scanned and rewritten in parallel. This must not be
+	 * called concurrently with other modifications or accesses of the
+	 * labeling. Cached {@link LabelRegions} (including random accesses of
+	 * their {@link LabelRegion}s) and views created by {@link Labelings}
+	 * notice the change and are updated when accessed next.
+	 *
+	 * @return the number of label sets that were removed
+	 */
+	public int removeUnusedLabelSets()
+	{
+		final int numSets = mapping.numSets();
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< long[] > chunks = chunks( indexIterable.size(), taskExecutor );
+
+		// find used label sets
+		final List< boolean[] > usedInChunks = taskExecutor.forEachApply( chunks, chunk -> {
+			final boolean[] used = new boolean[ numSets ];
+			final Cursor< I > c = indexIterable.cursor();
+			c.jumpFwd( chunk[ 0 ] );
+			for ( long i = 0; i < chunk[ 1 ]; ++i )
+				used[ c.next().getInteger() ] = true;
+			return used;
+		} );
+
+		// dense renumbering, the empty set always remains at index 0
+		final int[] oldToNew = new int[ numSets ];
+		final int[] newToOld = new int[ numSets ];
+		int numUsed = 0;
+		for ( int i = 0; i < numSets; ++i )
+		{
+			boolean used = i == 0;
+			for ( int j = 0; j < usedInChunks.size() && !used; ++j )
+				used = usedInChunks.get( j )[ i ];
+			if ( used )
+			{
+				oldToNew[ i ] = numUsed;
+				newToOld[ numUsed++ ] = i;
+			}
+		}
+		if ( numUsed == numSets )
+			return 0;
+
+		// rewrite the index image
+		taskExecutor.forEach( chunks, chunk -> {
+			final Cursor< I > c = indexIterable.cursor();
+			c.jumpFwd( chunk[ 0 ] );
+			for ( long i = 0; i < chunk[ 1 ]; ++i )
+			{
+				final I t = c.next();
+				t.setInteger( oldToNew[ t.getInteger() ] );
+			}
+		} );
+
+		mapping.retainLabelSets( Arrays.copyOf( newToOld, numUsed ) );
+		indexImgModified( this );
+		return numSets - numUsed;
+	}
+
+	/**
+	 * Notify this labeling that its index image was modified directly (not
+	 * through {@link LabelingType}) in the given {@code interval}. This
+	 * increments the generation and marks the blocks of {@code interval} as
+	 * modified, so that {@link LabelRegions} of this labeling pick up the
+	 * change in their next update.
+	 * <p>
+	 * Call this after writing to {@link #getIndexImg()}. Otherwise,
+	 * {@link LabelRegions} only update the parts of the labeling that were
+	 * modified through {@link LabelingType}, and keep stale regions for the
+	 * directly written pixels.
+	 *
+	 * @param interval
+	 *            an interval containing all directly modified pixels
+	 */
+	public void indexImgModified( final Interval interval )
+	{
+		generation.increment();
+		final ModifiedBlocks blocks = modifiedBlocks;
+		if ( blocks != null )
+			blocks.markModified( interval );
+	}
+
+	/**
+	 * Paint all {@code pixels}.
+	 *
+	 * @return whether any pixel was changed.
+	 */
+	private boolean paintPixels( final IterableInterval< I > pixels, final T label, final boolean add )
+	{
+		final LabelingMapping< T >.AddRemoveCacheMap addRemove = mapping.createAddRemoveCacheMap();
+		int[] transitions = new int[ 0 ];
+		boolean changed = false;
+
+		for ( final I t : pixels )
+		{
+			final int index = t.getInteger();
+			if ( index >= transitions.length )
+			{
+				final int oldLength = transitions.length;
+				transitions = Arrays.copyOf( transitions, Math.max( index + 1, mapping.numSets() ) );
+				Arrays.fill( transitions, oldLength, transitions.length, -1 );
+			}
+			int newIndex = transitions[ index ];
+			if ( newIndex < 0 )
+			{
+				newIndex = add
+						? addRemove.addLabelToSetAtIndex( label, index )
+						: addRemove.removeLabelFromSetAtIndex( label, index );
+				transitions[ index ] = newIndex;
+			}
+			if ( newIndex != index )
+			{
+				t.setInteger( newIndex );
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * A {@link LabelingType} that records modifications in
+	 * {@link #modifiedBlocks}, using the position of the accessor it belongs
+	 * to.
+	 */
+	class ModificationTrackingLabelingType extends LabelingType< T >
+	{
+		private final Localizable position;
+
+		ModificationTrackingLabelingType( final Localizable position )
+		{
+			super( null, ImgLabeling.this.mapping, ImgLabeling.this.generation );
+			this.position = position;
+		}
+
+		@Override
+		protected void modified()
+		{
+			super.modified();
+			final ModifiedBlocks blocks = modifiedBlocks;
+			if ( blocks != null )
+				blocks.markModified( position );
+		}
+	}
+
 	class LabelingConvertedRandomAccess extends AbstractConvertedRandomAccess< I, LabelingType< T > >
 	{
 		private final LabelingType< T > type;
@@ -157,7 +540,7 @@ public class ImgLabeling< T, I extends IntegerType< I > >
 		public LabelingConvertedRandomAccess( final RandomAccess< I > source )
 		{
 			super( source );
-			this.type = new LabelingType<>( null, mapping, generation );
+			this.type = new ModificationTrackingLabelingType( this );
 		}
 
 		@Override
@@ -181,7 +564,7 @@ public class ImgLabeling< T, I extends IntegerType< I > >
 		public LabelingConvertedCursor( final Cursor< I > source )
 		{
 			super( source );
-			this.type = new LabelingType<>( null, mapping, generation );
+			this.type = new ModificationTrackingLabelingType( this );
 		}
 
 		@Override
@@ -291,6 +674,11 @@ public class ImgLabeling< T, I extends IntegerType< I > >
 	}
 
 	/**
+	 * Values written directly to the index image are not recorded as
+	 * modifications. After writing to the index image, call
+	 * {@link #indexImgModified(Interval)}, so that existing
+	 * {@link LabelRegions} pick up the change in their next update.
+	 *
 	 * @return RandomAccessibleInterval containing the indices
 	 */
 	public RandomAccessibleInterval< I > getIndexImg()
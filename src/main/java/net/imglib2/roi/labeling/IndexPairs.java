@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+/**
+ * Unordered pairs of {@code int} indices, packed into {@code long} keys for
+ * primitive hash maps.
+ * <p>
+ * The pair is ordered, packed into a {@code long}, and scrambled (bijectively)
+ * by multiplying with an odd constant. Otherwise Trove's hash
+ * ({@code high ^ low} bits) would collide for all pairs with similar indices.
+ */
+final class IndexPairs
+{
+	private static final long SCRAMBLE = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Multiplicative inverse of {@link #SCRAMBLE} (modulo 2^64).
+	 */
+	private static final long UNSCRAMBLE = 0xF1DE83E19937733DL;
+
+	private IndexPairs()
+	{}
+
+	/**
+	 * Key for the unordered pair {@code (index1, index2)}.
+	 */
+	static long key( final int index1, final int index2 )
+	{
+		final long packed = index1 <= index2
+				? ( ( long ) index1 << 32 ) | index2
+				: ( ( long ) index2 << 32 ) | index1;
+		return packed * SCRAMBLE;
+	}
+
+	/**
+	 * Get the smaller index of the pair represented by {@code key}.
+	 */
+	static int first( final long key )
+	{
+		return ( int ) ( ( key * UNSCRAMBLE ) >>> 32 );
+	}
+
+	/**
+	 * Get the larger index of the pair represented by {@code key}.
+	 */
+	static int second( final long key )
+	{
+		return ( int ) ( key * UNSCRAMBLE );
+	}
+}
@@ -0,0 +1,307 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Statistics (size, sum, mean, variance, min, max) of the intensities of all
+ * pixels having a given label.
+ * <p>
+ * Use {@link #compute(RandomAccessibleInterval, RandomAccessibleInterval)} to
+ * compute the statistics for all labels of a labeling in a single pass over
+ * the labeling and the intensity image. This is much faster than sampling the
+ * intensity image with every {@link LabelRegion} separately.
+ *
+ * @param <T>
+ *            the label type
+ */
+public class LabelIntensityStatistics< T >
+{
+	private final T label;
+
+	private final long size;
+
+	private final double sum;
+
+	private final double mean;
+
+	private final double m2;
+
+	private final double min;
+
+	private final double max;
+
+	LabelIntensityStatistics( final T label, final long size, final double sum, final double mean, final double m2, final double min, final double max )
+	{
+		this.label = label;
+		this.size = size;
+		this.sum = sum;
+		this.mean = mean;
+		this.m2 = m2;
+		this.min = min;
+		this.max = max;
+	}
+
+	public T getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Get the number of pixels having the label.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	public double getSum()
+	{
+		return sum;
+	}
+
+	public double getMean()
+	{
+		return mean;
+	}
+
+	/**
+	 * Get the (unbiased) sample variance of the intensities, or {@code NaN}
+	 * if the label occurs at only one pixel.
+	 */
+	public double getVariance()
+	{
+		return size > 1 ? m2 / ( size - 1 ) : Double.NaN;
+	}
+
+	public double getMin()
+	{
+		return min;
+	}
+
+	public double getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Compute intensity statistics for all labels occurring in
+	 * {@code labeling}.
+	 * <p>
+	 * The labeling and the intensity image are iterated together once.
+	 * Statistics are accumulated for each label set index of the
+	 * {@link LabelingMapping} and then combined into statistics of labels. If
+	 * the labeling is an {@link ImgLabeling} with a primitive-array backed
+	 * index image, background pixels are skipped without reading the
+	 * intensity image.
+	 * <p>
+	 * The labeling is split into slabs along the last dimension, which are
+	 * processed in parallel if this is called within
+	 * {@link Parallelization#runMultiThreaded(Runnable)}.
+	 *
+	 * @param labeling
+	 *            the labeling
+	 * @param img
+	 *            intensity image. Must contain the interval of the labeling.
+	 * @return map from labels occurring in the labeling to their statistics.
+	 */
+	public static < T > Map< T, LabelIntensityStatistics< T > > compute(
+			final RandomAccessibleInterval< LabelingType< T > > labeling,
+			final RandomAccessibleInterval< ? extends RealType< ? > > img )
+	{
+		if ( labeling.numDimensions() != img.numDimensions() || !Intervals.contains( img, labeling ) )
+			throw new IllegalArgumentException( "intensity image must contain the labeling" );
+
+		final LabelingMapping< T > mapping = Views.iterable( labeling ).firstElement().getMapping();
+		final int numSets = mapping.numSets();
+		final NonZeroIndexScanner indexScanner = NonZeroIndexScanner.forLabeling( labeling );
+
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< Interval > slabs = LabelRegions.splitIntoSlabs( labeling, taskExecutor.suggestNumberOfTasks() );
+		final List< Accumulator > slabStats = slabs.size() == 1
+				? Collections.singletonList( scanSlab( labeling, img, indexScanner, slabs.get( 0 ), numSets ) )
+				: taskExecutor.forEachApply( slabs, slab -> scanSlab( labeling, img, indexScanner, slab, numSets ) );
+		final Accumulator stats = slabStats.get( 0 );
+		for ( int i = 1; i < slabStats.size(); ++i )
+			stats.add( slabStats.get( i ) );
+
+		// combine statistics of label sets into statistics of labels
+		final Map< T, Integer > labelToSlot = new HashMap<>();
+		final Set< T > labels = mapping.getLabels();
+		final Accumulator labelStats = new Accumulator( labels.size() );
+		for ( final T label : labels )
+			labelToSlot.put( label, labelToSlot.size() );
+		for ( int index = 1; index < numSets; ++index )
+		{
+			if ( stats.size[ index ] == 0 )
+				continue;
+			for ( final T label : mapping.labelsAtIndex( index ) )
+				labelStats.add( labelToSlot.get( label ), stats, index );
+		}
+
+		final Map< T, LabelIntensityStatistics< T > > result = new HashMap<>();
+		for ( final Map.Entry< T, Integer > entry : labelToSlot.entrySet() )
+		{
+			final int slot = entry.getValue();
+			if ( labelStats.size[ slot ] == 0 )
+				continue;
+			final T label = entry.getKey();
+			result.put( label, new LabelIntensityStatistics<>( label,
+					labelStats.size[ slot ], labelStats.sum[ slot ], labelStats.mean[ slot ],
+					labelStats.m2[ slot ], labelStats.min[ slot ], labelStats.max[ slot ] ) );
+		}
+		return result;
+	}
+
+	private static Accumulator scanSlab(
+			final RandomAccessibleInterval< ? extends LabelingType< ? > > labeling,
+			final RandomAccessibleInterval< ? extends RealType< ? > > img,
+			final NonZeroIndexScanner indexScanner,
+			final Interval slab,
+			final int numSets )
+	{
+		final Accumulator stats = new Accumulator( numSets );
+		if ( indexScanner != null )
+		{
+			final RandomAccess< ? extends RealType< ? > > ra = img.randomAccess( slab );
+			indexScanner.scan( slab, ( index, position ) -> {
+				ra.setPosition( position );
+				stats.add( index, ra.get().getRealDouble() );
+			} );
+		}
+		else
+		{
+			final Cursor< ? extends LabelingType< ? > > lc = Views.flatIterable( Views.interval( labeling, slab ) ).cursor();
+			final Cursor< ? extends RealType< ? > > ic = Views.flatIterable( Views.interval( img, slab ) ).cursor();
+			while ( lc.hasNext() )
+			{
+				final int index = lc.next().getIndex().getInteger();
+				ic.fwd();
+				if ( index > 0 )
+					stats.add( index, ic.get().getRealDouble() );
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Size, sum, mean, sum of squared differences from the mean, and bounds of
+	 * intensities, for each slot (label set index, or label). The mean and
+	 * squared differences are updated incrementally, and merged with the
+	 * pairwise formula of Chan et al., to avoid cancellation errors.
+	 */
+	private static class Accumulator
+	{
+		final long[] size;
+
+		final double[] sum;
+
+		final double[] mean;
+
+		final double[] m2;
+
+		final double[] min;
+
+		final double[] max;
+
+		Accumulator( final int numSlots )
+		{
+			size = new long[ numSlots ];
+			sum = new double[ numSlots ];
+			mean = new double[ numSlots ];
+			m2 = new double[ numSlots ];
+			min = new double[ numSlots ];
+			max = new double[ numSlots ];
+			Arrays.fill( min, Double.POSITIVE_INFINITY );
+			Arrays.fill( max, Double.NEGATIVE_INFINITY );
+		}
+
+		void add( final int slot, final double value )
+		{
+			final long n = ++size[ slot ];
+			final double delta = value - mean[ slot ];
+			mean[ slot ] += delta / n;
+			m2[ slot ] += delta * ( value - mean[ slot ] );
+			sum[ slot ] += value;
+			if ( value < min[ slot ] )
+				min[ slot ] = value;
+			if ( value > max[ slot ] )
+				max[ slot ] = value;
+		}
+
+		/**
+		 * Add {@code other} statistics of {@code otherSlot} to {@code slot}.
+		 */
+		void add( final int slot, final Accumulator other, final int otherSlot )
+		{
+			final long nb = other.size[ otherSlot ];
+			if ( nb == 0 )
+				return;
+			final long na = size[ slot ];
+			final long n = na + nb;
+			final double delta = other.mean[ otherSlot ] - mean[ slot ];
+			mean[ slot ] += delta * nb / n;
+			m2[ slot ] += other.m2[ otherSlot ] + delta * delta * na * nb / n;
+			size[ slot ] = n;
+			sum[ slot ] += other.sum[ otherSlot ];
+			min[ slot ] = Math.min( min[ slot ], other.min[ otherSlot ] );
+			max[ slot ] = Math.max( max[ slot ], other.max[ otherSlot ] );
+		}
+
+		/**
+		 * Add {@code other} statistics for all slots.
+		 */
+		void add( final Accumulator other )
+		{
+			for ( int slot = 0; slot < size.length; ++slot )
+				add( slot, other, slot );
+		}
+	}
+}
@@ -34,6 +34,7 @@
 package net.imglib2.roi.labeling;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
@@ -44,10 +45,14 @@ import net.imglib2.RealPoint;
 import net.imglib2.RealPositionable;
 import net.imglib2.outofbounds.OutOfBounds;
 import net.imglib2.outofbounds.OutOfBoundsConstantValue;
+import net.imglib2.roi.MaskInterval;
 import net.imglib2.roi.PositionableIterableRegion;
 import net.imglib2.roi.labeling.LabelRegions.LabelRegionProperties;
 import net.imglib2.roi.util.PositionableInterval;
 import net.imglib2.roi.util.PositionableLocalizable;
+import net.imglib2.roi.util.iterationcode.CompactIterationCode;
+import net.imglib2.roi.util.iterationcode.IterationCode;
+import net.imglib2.roi.util.iterationcode.IterationCodeMask;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.util.Intervals;
 
@@ -82,6 +87,13 @@ public class LabelRegion< T > extends PositionableInterval implements Positionab
 
 	private int expectedGeneration;
 
+	/**
+	 * Lookup table from label set index to whether the label set contains
+	 * {@link #label}. Used by {@link LabelRegionRandomAccess}. Created lazily,
+	 * and shared with copies created afterwards.
+	 */
+	private volatile LabelSetPredicateLookup< T > containsLookup;
+
 	public LabelRegion( final LabelRegions< T > regions, final LabelRegionProperties regionProperties, final T label )
 	{
 		super( new FinalInterval( regionProperties.getBoundingBoxMin(), regionProperties.getBoundingBoxMax() ) );
@@ -108,6 +120,7 @@ public class LabelRegion< T > extends PositionableInterval implements Positionab
 		this.size = other.size;
 		this.itcodes = other.itcodes;
 		this.centerOfMass = other.centerOfMass;
+		this.containsLookup = other.containsLookup;
 	}
 
 	/**
@@ -151,12 +164,56 @@ public class LabelRegion< T > extends PositionableInterval implements Positionab
 		}
 	}
 
+	/**
+	 * Get a lookup table from label set index to whether the label set
+	 * contains the label of this region. The table is extended when label
+	 * sets are added to the mapping, and rebuilt when label sets are
+	 * re-indexed.
+	 */
+	synchronized LabelSetPredicateLookup< T > getContainsLookup()
+	{
+		if ( containsLookup == null )
+			containsLookup = new LabelSetPredicateLookup<>( regions.getMapping(), s -> s.contains( label ) );
+		return containsLookup;
+	}
+
 	public RealLocalizable getCenterOfMass()
 	{
 		update();
 		return centerOfMass;
 	}
 
+	/**
+	 * Get the covariance matrix of the pixel coordinates of this region, i.e.,
+	 * the second-order central moments normalized by {@link #size()}. Inertia
+	 * tensor and principal axes of the region can be derived from this.
+	 * <p>
+	 * This requires that the {@link LabelRegions} were created with
+	 * {@code secondOrderMoments = true}. The moments are then accumulated
+	 * while scanning the labeling, together with the
+	 * {@link #getCenterOfMass() center of mass}.
+	 *
+	 * @return a new {@code n x n} covariance matrix.
+	 * @throws IllegalStateException
+	 *             if the {@link LabelRegions} do not compute second-order
+	 *             moments.
+	 */
+	public double[][] getCovariance()
+	{
+		if ( !regions.hasSecondOrderMoments() )
+			throw new IllegalStateException( "LabelRegions were created without second-order moments" );
+		update();
+		final double[] packed = regionProperties.getCovariance();
+		final double[][] covariance = new double[ n ][ n ];
+		for ( int d1 = 0, i = 0; d1 < n; ++d1 )
+			for ( int d2 = d1; d2 < n; ++d2, ++i )
+			{
+				covariance[ d1 ][ d2 ] = packed[ i ];
+				covariance[ d2 ][ d1 ] = packed[ i ];
+			}
+		return covariance;
+	}
+
 	@Override
 	public LabelRegionRandomAccess< T > randomAccess()
 	{
@@ -178,7 +235,34 @@ public class LabelRegion< T > extends PositionableInterval implements Positionab
 	public LabelRegionCursor cursor()
 	{
 		update();
-		return new LabelRegionCursor( itcodes, currentOffset );
+		final CompactIterationCode[] compactItcodes = regionProperties.getCompactItcodes();
+		return compactItcodes == null
+				? new LabelRegionCursor( itcodes, regionProperties.getSkipIndices(), currentOffset )
+				: new LabelRegionCursor( compactItcodes, currentOffset );
+	}
+
+	/**
+	 * Get a {@link MaskInterval} for the pixels of this region, at its current
+	 * position. The mask is built from the {@link IterationCode}s of the
+	 * region, and tests membership in time logarithmic in the number of raster
+	 * stretches of the region. It is a snapshot: it does not reference the
+	 * labeling, and does not reflect later changes of the labeling or the
+	 * position of this region.
+	 */
+	public IterationCodeMask toMask()
+	{
+		update();
+		final CompactIterationCode[] compactItcodes = regionProperties.getCompactItcodes();
+		final List< TIntArrayList > codes;
+		if ( compactItcodes == null )
+			codes = itcodes;
+		else
+		{
+			codes = new ArrayList<>( compactItcodes.length );
+			for ( final CompactIterationCode code : compactItcodes )
+				codes.add( code.decode() );
+		}
+		return new IterationCodeMask( codes, regionProperties.getBoundingBoxMin(), regionProperties.getBoundingBoxMax(), currentOffset );
 	}
 
 	@Override
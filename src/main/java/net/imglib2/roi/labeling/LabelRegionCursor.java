@@ -35,7 +35,9 @@ package net.imglib2.roi.labeling;
 
 import java.util.ArrayList;
 
+import net.imglib2.roi.util.iterationcode.CompactIterationCode;
 import net.imglib2.roi.util.iterationcode.IterationCodeListCursor;
+import net.imglib2.roi.util.iterationcode.IterationCodeSkipIndex;
 
 import gnu.trove.list.array.TIntArrayList;
 
@@ -46,6 +48,16 @@ public class LabelRegionCursor extends IterationCodeListCursor
 		super( itcodesList, offset );
 	}
 
+	public LabelRegionCursor( final ArrayList< TIntArrayList > itcodesList, final IterationCodeSkipIndex[] skipIndices, final long[] offset )
+	{
+		super( itcodesList, skipIndices, offset );
+	}
+
+	public LabelRegionCursor( final CompactIterationCode[] compactItcodes, final long[] offset )
+	{
+		super( compactItcodes, offset );
+	}
+
 	protected LabelRegionCursor( final LabelRegionCursor c )
 	{
 		super( c );
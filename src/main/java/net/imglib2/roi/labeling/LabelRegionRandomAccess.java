@@ -41,12 +41,16 @@ import net.imglib2.type.logic.BoolType;
 
 public class LabelRegionRandomAccess< T >  extends AbstractEuclideanSpace implements RandomAccess< BoolType >
 {
-	private final T label;
-
 	private final BoolType type;
 
 	private final RandomAccess< LabelingType< T > > source;
 
+	/**
+	 * {@code containsLookup.test( i )} is {@code true} if the label set at
+	 * index {@code i} contains the label of the region.
+	 */
+	private final LabelSetPredicateLookup< T > containsLookup;
+
 	private final long[] offset;
 
 	private final long[] tmp;
@@ -55,7 +59,7 @@ public class LabelRegionRandomAccess< T >  extends AbstractEuclideanSpace implem
 	{
 		super( region.numDimensions() );
 		source = region.regions.labeling.randomAccess( region );
-		label = region.getLabel();
+		containsLookup = region.getContainsLookup();
 		type = new BoolType();
 		this.offset = offset;
 		tmp = new long[ n ];
@@ -65,7 +69,7 @@ public class LabelRegionRandomAccess< T >  extends AbstractEuclideanSpace implem
 	{
 		super( region.numDimensions() );
 		source = region.regions.labeling.randomAccess( interval );
-		label = region.getLabel();
+		containsLookup = region.getContainsLookup();
 		type = new BoolType();
 		this.offset = offset;
 		tmp = new long[ n ];
@@ -76,7 +80,7 @@ public class LabelRegionRandomAccess< T >  extends AbstractEuclideanSpace implem
 		super( a.numDimensions() );
 		source = a.source.copyRandomAccess();
 		type = a.type.copy();
-		label = a.label;
+		containsLookup = a.containsLookup;
 		offset = a.offset;
 		tmp = new long[ n ];
 	}
@@ -84,7 +88,7 @@ public class LabelRegionRandomAccess< T >  extends AbstractEuclideanSpace implem
 	@Override
 	public BoolType get()
 	{
-		type.set( source.get().contains( label ) );
+		type.set( containsLookup.test( source.get().getIndex().getInteger() ) );
 		return type;
 	}
 
@@ -0,0 +1,343 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.imglib2.AbstractEuclideanSpace;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.view.Views;
+
+/**
+ * Provides {@link LabelRegionSummary summaries} (size, center of mass,
+ * bounding box) for all labels of a labeling.
+ * <p>
+ * In contrast to {@link LabelRegions}, this does not build iteration codes for
+ * the label regions. The labeling is processed one block at a time, and only
+ * per-label-set sums and bounds are kept. Memory usage is therefore bounded by
+ * the block size and the number of label sets, and not by the size of the
+ * labeling. This is intended for labelings that are larger than memory, for
+ * example {@link ImgLabeling}s backed by a lazily loaded {@code CellImg}.
+ * <p>
+ * If the index image of an {@link ImgLabeling} is a {@code CellImg}, its cells
+ * are used as blocks, so that each cell is loaded only once. Otherwise, blocks
+ * of {@value #DEFAULT_BLOCK_SIZE} pixels in each dimension are used (unless
+ * specified otherwise).
+ * <p>
+ * Blocks are processed in parallel if the summaries are accessed within
+ * {@link Parallelization#runMultiThreaded(Runnable)}.
+ * <p>
+ * Changes to the underlying labeling are reflected, by processing the labeling
+ * again.
+ *
+ * @param <T>
+ *            the label type
+ */
+public class LabelRegionSummaries< T > extends AbstractEuclideanSpace implements Iterable< LabelRegionSummary< T > >
+{
+	static final int DEFAULT_BLOCK_SIZE = 64;
+
+	private final RandomAccessibleInterval< LabelingType< T > > labeling;
+
+	private final LabelingType< T > type;
+
+	private final int[] blockSize;
+
+	private final NonZeroIndexScanner indexScanner;
+
+	private Map< T, LabelRegionSummary< T > > labelToSummary;
+
+	private int expectedGeneration;
+
+	public LabelRegionSummaries( final RandomAccessibleInterval< LabelingType< T > > labeling )
+	{
+		this( labeling, defaultBlockSize( labeling ) );
+	}
+
+	/**
+	 * @param blockSize
+	 *            size of the blocks in which the labeling is processed.
+	 */
+	public LabelRegionSummaries( final RandomAccessibleInterval< LabelingType< T > > labeling, final int... blockSize )
+	{
+		super( labeling.numDimensions() );
+		if ( blockSize.length != n )
+			throw new IllegalArgumentException( "expected " + n + "-dimensional block size" );
+		this.labeling = labeling;
+		this.blockSize = blockSize.clone();
+		type = Views.iterable( labeling ).firstElement();
+		indexScanner = NonZeroIndexScanner.forLabeling( labeling );
+		labelToSummary = Collections.emptyMap();
+		expectedGeneration = type.getGeneration() - 1;
+	}
+
+	/**
+	 * Create {@link LabelRegionSummaries} with summaries that were computed
+	 * elsewhere for the current generation of {@code labeling}. They are
+	 * recomputed if the labeling is modified later.
+	 */
+	LabelRegionSummaries( final RandomAccessibleInterval< LabelingType< T > > labeling, final Map< T, LabelRegionSummary< T > > labelToSummary )
+	{
+		this( labeling );
+		this.labelToSummary = labelToSummary;
+		expectedGeneration = type.getGeneration();
+	}
+
+	public LabelRegionSummary< T > getSummary( final T label )
+	{
+		update();
+		return labelToSummary.get( label );
+	}
+
+	/**
+	 * Get the set of labels which actually occur at some pixel in the labeling.
+	 */
+	public Set< T > getExistingLabels()
+	{
+		update();
+		return labelToSummary.keySet();
+	}
+
+	@Override
+	public Iterator< LabelRegionSummary< T > > iterator()
+	{
+		update();
+		return labelToSummary.values().iterator();
+	}
+
+	private static int[] defaultBlockSize( final RandomAccessibleInterval< ? > labeling )
+	{
+		final int n = labeling.numDimensions();
+		final int[] blockSize = new int[ n ];
+		if ( labeling instanceof ImgLabeling && ( ( ImgLabeling< ?, ? > ) labeling ).getIndexImg() instanceof AbstractCellImg )
+			( ( AbstractCellImg< ?, ?, ?, ? > ) ( ( ImgLabeling< ?, ? > ) labeling ).getIndexImg() ).getCellGrid().cellDimensions( blockSize );
+		else
+			Arrays.fill( blockSize, DEFAULT_BLOCK_SIZE );
+		return blockSize;
+	}
+
+	private synchronized void update()
+	{
+		final int generation = type.getGeneration();
+		if ( generation == expectedGeneration )
+			return;
+
+		final LabelingMapping< T > mapping = type.getMapping();
+		final int numSets = mapping.numSets();
+
+		final List< List< Interval > > tasks = splitIntoTasks( createBlocks() );
+		final List< IndexStatistics > taskStats = tasks.size() == 1
+				? Collections.singletonList( scanBlocks( tasks.get( 0 ), numSets ) )
+				: Parallelization.getTaskExecutor().forEachApply( tasks, blocks -> scanBlocks( blocks, numSets ) );
+		final IndexStatistics stats = taskStats.get( 0 );
+		for ( int i = 1; i < taskStats.size(); ++i )
+			stats.add( taskStats.get( i ) );
+
+		// combine statistics of label sets into statistics of labels
+		final Map< T, IndexStatistics > labelToStats = new HashMap<>();
+		for ( int index = 1; index < numSets; ++index )
+		{
+			if ( stats.size[ index ] == 0 )
+				continue;
+			for ( final T label : mapping.labelsAtIndex( index ) )
+			{
+				IndexStatistics labelStats = labelToStats.get( label );
+				if ( labelStats == null )
+				{
+					labelStats = new IndexStatistics( n, 1 );
+					labelToStats.put( label, labelStats );
+				}
+				labelStats.add( 0, stats, index );
+			}
+		}
+
+		final Map< T, LabelRegionSummary< T > > summaries = new HashMap<>();
+		for ( final Map.Entry< T, IndexStatistics > entry : labelToStats.entrySet() )
+		{
+			final IndexStatistics s = entry.getValue();
+			summaries.put( entry.getKey(), new LabelRegionSummary<>( entry.getKey(), s.size[ 0 ], s.sum, s.min, s.max ) );
+		}
+		labelToSummary = summaries;
+		expectedGeneration = generation;
+	}
+
+	/**
+	 * Create blocks of {@link #blockSize} covering the labeling, in flat
+	 * iteration order of the block grid.
+	 */
+	private List< Interval > createBlocks()
+	{
+		final List< Interval > blocks = new ArrayList<>();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		final long[] gridPos = new long[ n ];
+		final long[] gridMax = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+			gridMax[ d ] = ( labeling.dimension( d ) - 1 ) / blockSize[ d ];
+		while ( true )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = labeling.min( d ) + gridPos[ d ] * blockSize[ d ];
+				max[ d ] = Math.min( labeling.max( d ), min[ d ] + blockSize[ d ] - 1 );
+			}
+			blocks.add( new FinalInterval( min, max ) );
+
+			int d = 0;
+			for ( ; d < n; ++d )
+			{
+				if ( ++gridPos[ d ] <= gridMax[ d ] )
+					break;
+				gridPos[ d ] = 0;
+			}
+			if ( d == n )
+				break;
+		}
+		return blocks;
+	}
+
+	private static List< List< Interval > > splitIntoTasks( final List< Interval > blocks )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final int numTasks = Math.max( 1, Math.min( taskExecutor.suggestNumberOfTasks(), blocks.size() ) );
+		final List< List< Interval > > tasks = new ArrayList<>( numTasks );
+		for ( int i = 0; i < numTasks; ++i )
+			tasks.add( blocks.subList( blocks.size() * i / numTasks, blocks.size() * ( i + 1 ) / numTasks ) );
+		return tasks;
+	}
+
+	private IndexStatistics scanBlocks( final List< Interval > blocks, final int numSets )
+	{
+		final IndexStatistics stats = new IndexStatistics( n, numSets );
+		for ( final Interval block : blocks )
+		{
+			if ( indexScanner != null )
+				indexScanner.scan( block, stats::add );
+			else
+			{
+				final Cursor< LabelingType< T > > c = Views.flatIterable( Views.interval( labeling, block ) ).localizingCursor();
+				while ( c.hasNext() )
+				{
+					final int index = c.next().getIndex().getInteger();
+					if ( index > 0 )
+						stats.add( index, c );
+				}
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Size, sum of positions, and bounds of pixels, for each slot (label set
+	 * index).
+	 */
+	static class IndexStatistics
+	{
+		private final int n;
+
+		final long[] size;
+
+		final long[] sum;
+
+		final long[] min;
+
+		final long[] max;
+
+		IndexStatistics( final int n, final int numSlots )
+		{
+			this.n = n;
+			size = new long[ numSlots ];
+			sum = new long[ numSlots * n ];
+			min = new long[ numSlots * n ];
+			max = new long[ numSlots * n ];
+			Arrays.fill( min, Long.MAX_VALUE );
+			Arrays.fill( max, Long.MIN_VALUE );
+		}
+
+		void add( final int slot, final Localizable position )
+		{
+			++size[ slot ];
+			final int o = slot * n;
+			for ( int d = 0; d < n; ++d )
+			{
+				final long x = position.getLongPosition( d );
+				sum[ o + d ] += x;
+				if ( x < min[ o + d ] )
+					min[ o + d ] = x;
+				if ( x > max[ o + d ] )
+					max[ o + d ] = x;
+			}
+		}
+
+		/**
+		 * Add {@code other} statistics of {@code otherSlot} to {@code slot}.
+		 */
+		void add( final int slot, final IndexStatistics other, final int otherSlot )
+		{
+			size[ slot ] += other.size[ otherSlot ];
+			final int o = slot * n;
+			final int oo = otherSlot * n;
+			for ( int d = 0; d < n; ++d )
+			{
+				sum[ o + d ] += other.sum[ oo + d ];
+				min[ o + d ] = Math.min( min[ o + d ], other.min[ oo + d ] );
+				max[ o + d ] = Math.max( max[ o + d ], other.max[ oo + d ] );
+			}
+		}
+
+		/**
+		 * Add {@code other} statistics for all slots.
+		 */
+		void add( final IndexStatistics other )
+		{
+			for ( int slot = 0; slot < size.length; ++slot )
+				if ( other.size[ slot ] > 0 )
+					add( slot, other, slot );
+		}
+	}
+}
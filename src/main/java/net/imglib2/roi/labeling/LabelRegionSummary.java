@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import net.imglib2.AbstractInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
+
+/**
+ * Summary statistics of the pixels having a given label: the number of pixels,
+ * their center of mass, and their bounding box (the interval bounds of this
+ * {@link LabelRegionSummary}).
+ * <p>
+ * In contrast to {@link LabelRegion}, a {@link LabelRegionSummary} does not
+ * allow iterating the pixels. It is computed by {@link LabelRegionSummaries}
+ * without holding any per-pixel data in memory.
+ *
+ * @param <T>
+ *            the label type
+ */
+public class LabelRegionSummary< T > extends AbstractInterval
+{
+	private final T label;
+
+	private final long size;
+
+	private final RealPoint centerOfMass;
+
+	LabelRegionSummary( final T label, final long size, final long[] sumPositions, final long[] min, final long[] max )
+	{
+		super( min, max );
+		this.label = label;
+		this.size = size;
+		centerOfMass = new RealPoint( n );
+		for ( int d = 0; d < n; ++d )
+			centerOfMass.setPosition( ( double ) sumPositions[ d ] / size, d );
+	}
+
+	public T getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * Get the number of pixels having the label.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	public RealLocalizable getCenterOfMass()
+	{
+		return centerOfMass;
+	}
+}
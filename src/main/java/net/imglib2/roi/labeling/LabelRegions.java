@@ -37,16 +37,30 @@ import gnu.trove.list.array.TIntArrayList;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import net.imglib2.AbstractEuclideanSpace;
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.Localizable;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.roi.util.iterationcode.CompactIterationCode;
+import net.imglib2.roi.util.iterationcode.IterationCode;
 import net.imglib2.roi.util.iterationcode.IterationCodeBuilder;
+import net.imglib2.roi.util.iterationcode.IterationCodeSkipIndex;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
 /**
@@ -60,6 +74,50 @@ import net.imglib2.view.Views;
  * Changes to the underlying labeling are correctly reflected.
  * {@link LabelRegions} is thread-safe, however, concurrently modifying the
  * labeling and accessing the {@link LabelRegions} has undefined results.
+ * {@link #parallelStream()} can be used to process the regions in parallel.
+ *
+ * <p>
+ * Computing the regions requires a scan over the labeling. This scan is
+ * multi-threaded if the {@link LabelRegions} are accessed within
+ * {@link Parallelization#runMultiThreaded(Runnable)}. The labeling is then
+ * split into slabs along the last dimension, which are scanned in parallel.
+ * The result is identical to a single-threaded scan.
+ *
+ * <p>
+ * If the labeling is an {@link ImgLabeling} whose index image is an
+ * {@code ArrayImg}, {@code PlanarImg}, or {@code CellImg}, the scan reads the
+ * index values directly from the underlying arrays and skips background
+ * pixels without localizing them. This makes scanning sparse labelings much
+ * faster.
+ *
+ * <p>
+ * If the labeling is an {@link ImgLabeling}, it records which blocks were
+ * modified (starting when the first {@code LabelRegions} for it is created).
+ * After small modifications, only the fragments touching modified blocks are
+ * recomputed, instead of scanning the whole labeling again. Modifications
+ * through {@link LabelingType} and the painting methods of {@link ImgLabeling}
+ * are recorded automatically. After writing directly to
+ * {@link ImgLabeling#getIndexImg()}, call
+ * {@link ImgLabeling#indexImgModified(Interval)}; otherwise these writes are
+ * not picked up by the next update.
+ *
+ * <p>
+ * Labels whose bounding boxes intersect a given interval can be found with
+ * {@link #labelsIntersecting(Interval)}. This uses an R-tree over the bounding
+ * boxes, which is built on the first query after the labeling was modified.
+ *
+ * <p>
+ * Optionally, sums of products of coordinates can be accumulated in the same
+ * scan (see {@link #LabelRegions(RandomAccessibleInterval, boolean)}). Then
+ * {@link LabelRegion#getCovariance()} provides the second-order central
+ * moments of each region, without iterating the region again.
+ *
+ * <p>
+ * For labelings with very large regions, the {@link IterationCode}s of the
+ * regions can be stored compressed (see
+ * {@link #LabelRegions(RandomAccessibleInterval, boolean, boolean)}). This
+ * reduces their memory footprint several-fold, at the cost of decoding them
+ * on the fly when iterating a {@link LabelRegion}.
  *
  * @param <T>
  *            the label type
@@ -105,10 +163,93 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 
 	private int expectedGeneration;
 
+	/**
+	 * If the labeling is an {@link ImgLabeling}, this records which blocks were
+	 * modified since the last update. Otherwise {@code null}.
+	 */
+	private final ModifiedBlocks modifiedBlocks;
+
+	/**
+	 * The {@link ModifiedBlocks#newEpoch() epoch} started by the last update.
+	 * Blocks modified since then must be rescanned.
+	 */
+	private int expectedEpoch;
+
+	/**
+	 * Whether {@link #indexToFragmentProperties} were computed by a full scan
+	 * (and can be incrementally updated from now on).
+	 */
+	private boolean scanned;
+
+	/**
+	 * If the labeling is an {@link ImgLabeling} with a primitive-array backed
+	 * index image, this scans the index image directly, skipping background.
+	 * Otherwise {@code null}, and the labeling is scanned with a
+	 * {@link Cursor}.
+	 */
+	private final NonZeroIndexScanner indexScanner;
+
+	/**
+	 * R-tree over the bounding boxes of the existing labels. Created on demand
+	 * by {@link #getBoundingBoxTree()}, and discarded by {@link #update()}.
+	 */
+	private BoundingBoxTree< T > boundingBoxTree;
+
+	/**
+	 * Whether second-order moments are accumulated while scanning.
+	 */
+	private final boolean secondOrderMoments;
+
+	/**
+	 * Whether {@link IterationCode}s of fragments are stored as
+	 * {@link CompactIterationCode}s.
+	 */
+	private final boolean compactIterationCodes;
+
 	public LabelRegions( final RandomAccessibleInterval< LabelingType< T > > labeling )
+	{
+		this( labeling, false );
+	}
+
+	/**
+	 * Create {@link LabelRegions} for all labels of {@code labeling}.
+	 *
+	 * @param labeling
+	 *            the labeling
+	 * @param secondOrderMoments
+	 *            whether to accumulate second-order moments while scanning the
+	 *            labeling. This is required for
+	 *            {@link LabelRegion#getCovariance()}.
+	 */
+	public LabelRegions( final RandomAccessibleInterval< LabelingType< T > > labeling, final boolean secondOrderMoments )
+	{
+		this( labeling, secondOrderMoments, false );
+	}
+
+	/**
+	 * Create {@link LabelRegions} for all labels of {@code labeling}.
+	 *
+	 * @param labeling
+	 *            the labeling
+	 * @param secondOrderMoments
+	 *            whether to accumulate second-order moments while scanning the
+	 *            labeling. This is required for
+	 *            {@link LabelRegion#getCovariance()}.
+	 * @param compactIterationCodes
+	 *            whether to store the {@link IterationCode}s of the regions
+	 *            as {@link CompactIterationCode}s. This uses much less memory
+	 *            for large regions, but iterating a region is somewhat slower
+	 *            because the codes are decoded on the fly.
+	 */
+	public LabelRegions( final RandomAccessibleInterval< LabelingType< T > > labeling, final boolean secondOrderMoments, final boolean compactIterationCodes )
 	{
 		super( labeling.numDimensions() );
 		this.labeling = labeling;
+		this.secondOrderMoments = secondOrderMoments;
+		this.compactIterationCodes = compactIterationCodes;
+		modifiedBlocks = ( labeling instanceof ImgLabeling ) ? ( ( ImgLabeling< ?, ? > ) labeling ).getModifiedBlocks() : null;
+		scanned = false;
+		indexScanner = NonZeroIndexScanner.forLabeling( labeling );
 		type = Views.iterable( labeling ).firstElement();
 		indexToFragmentProperties = new ArrayList< FragmentProperties >();
 		labelToLabelRegionProperties = new HashMap< T, LabelRegionProperties >();
@@ -117,9 +258,42 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 		expectedGeneration = type.getGeneration() - 1;
 	}
 
+	LabelingMapping< T > getMapping()
+	{
+		return type.getMapping();
+	}
+
+	/**
+	 * Whether second-order moments are accumulated while scanning the
+	 * labeling, i.e., whether {@link LabelRegion#getCovariance()} is
+	 * available.
+	 */
+	public boolean hasSecondOrderMoments()
+	{
+		return secondOrderMoments;
+	}
+
+	/**
+	 * Whether the {@link IterationCode}s of the regions are stored as
+	 * {@link CompactIterationCode}s.
+	 */
+	public boolean hasCompactIterationCodes()
+	{
+		return compactIterationCodes;
+	}
+
 	public LabelRegion< T > getLabelRegion( final T label )
 	{
 		update();
+		return getOrCreateLabelRegion( label );
+	}
+
+	/**
+	 * Get the canonical {@link LabelRegion} for {@code label}, creating it if
+	 * necessary.
+	 */
+	private synchronized LabelRegion< T > getOrCreateLabelRegion( final T label )
+	{
 		LabelRegion< T > labelRegion = labelToLabelRegion.get( label );
 		if ( labelRegion == null )
 		{
@@ -139,6 +313,56 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 		return labelToLabelRegionProperties.keySet();
 	}
 
+	/**
+	 * Get the labels whose bounding boxes intersect {@code interval}. This is a
+	 * superset of the labels occurring in {@code interval}.
+	 * <p>
+	 * The query takes time logarithmic in the number of labels (plus the
+	 * number of results).
+	 */
+	public List< T > labelsIntersecting( final Interval interval )
+	{
+		return getBoundingBoxTree().intersecting( Intervals.minAsLongArray( interval ), Intervals.maxAsLongArray( interval ) );
+	}
+
+	/**
+	 * Get the labels whose bounding boxes contain {@code position}. This is a
+	 * superset of the labels at {@code position}.
+	 * <p>
+	 * The query takes time logarithmic in the number of labels (plus the
+	 * number of results).
+	 */
+	public List< T > labelsContaining( final Localizable position )
+	{
+		final long[] pos = new long[ n ];
+		position.localize( pos );
+		return getBoundingBoxTree().intersecting( pos, pos );
+	}
+
+	private BoundingBoxTree< T > getBoundingBoxTree()
+	{
+		update();
+		synchronized ( this )
+		{
+			if ( boundingBoxTree == null )
+			{
+				final int size = labelToLabelRegionProperties.size();
+				final List< T > labels = new ArrayList<>( size );
+				final long[] min = new long[ size * n ];
+				final long[] max = new long[ size * n ];
+				for ( final Entry< T, LabelRegionProperties > entry : labelToLabelRegionProperties.entrySet() )
+				{
+					final int i = labels.size();
+					labels.add( entry.getKey() );
+					System.arraycopy( entry.getValue().getBoundingBoxMin(), 0, min, i * n, n );
+					System.arraycopy( entry.getValue().getBoundingBoxMax(), 0, max, i * n, n );
+				}
+				boundingBoxTree = new BoundingBoxTree<>( n, labels, min, max );
+			}
+			return boundingBoxTree;
+		}
+	}
+
 	@Override
 	public Iterator< LabelRegion< T > > iterator()
 	{
@@ -155,14 +379,7 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 			@Override
 			public LabelRegion< T > next()
 			{
-				final T label = labelIterator.next();
-				LabelRegion< T > labelRegion = labelToLabelRegion.get( label );
-				if ( labelRegion == null )
-				{
-					labelRegion = new LabelRegion< T >( LabelRegions.this, labelToLabelRegionProperties.get( label ), label );
-					labelToLabelRegion.put( label, labelRegion );
-				}
-				return labelRegion;
+				return getOrCreateLabelRegion( labelIterator.next() );
 			}
 
 			@Override
@@ -173,17 +390,154 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 		};
 	}
 
+	/**
+	 * Get a {@link Spliterator} over the {@link LabelRegion}s of the current
+	 * generation of the labeling.
+	 * <p>
+	 * The regions are collected when the {@link Spliterator} is created, so
+	 * it is not affected by later modifications of the labeling. It splits
+	 * such that both parts contain approximately the same number of pixels.
+	 * It can be safely traversed in parallel, e.g., by
+	 * {@link #parallelStream()}, to process regions concurrently (as long as
+	 * the labeling is not modified at the same time).
+	 */
+	@Override
+	public Spliterator< LabelRegion< T > > spliterator()
+	{
+		update();
+		final List< LabelRegion< T > > regions = new ArrayList<>();
+		synchronized ( this )
+		{
+			for ( final T label : labelToLabelRegionProperties.keySet() )
+				regions.add( getOrCreateLabelRegion( label ) );
+		}
+		final long[] cumulativeSizes = new long[ regions.size() + 1 ];
+		for ( int i = 0; i < regions.size(); ++i )
+			cumulativeSizes[ i + 1 ] = cumulativeSizes[ i ] + regions.get( i ).size();
+		return new LabelRegionSpliterator<>( regions, cumulativeSizes, 0, regions.size() );
+	}
+
+	/**
+	 * Get a sequential {@link Stream} over the {@link LabelRegion}s of the
+	 * current generation of the labeling.
+	 */
+	public Stream< LabelRegion< T > > stream()
+	{
+		return StreamSupport.stream( spliterator(), false );
+	}
+
+	/**
+	 * Get a parallel {@link Stream} over the {@link LabelRegion}s of the
+	 * current generation of the labeling.
+	 *
+	 * @see #spliterator()
+	 */
+	public Stream< LabelRegion< T > > parallelStream()
+	{
+		return StreamSupport.stream( spliterator(), true );
+	}
+
+	/**
+	 * {@link Spliterator} over {@code regions[from, to)}, splitting at the
+	 * median of the cumulative region sizes.
+	 */
+	static final class LabelRegionSpliterator< T > implements Spliterator< LabelRegion< T > >
+	{
+		private final List< LabelRegion< T > > regions;
+
+		/**
+		 * {@code cumulativeSizes[i]} is the sum of the sizes of the first
+		 * {@code i} regions.
+		 */
+		private final long[] cumulativeSizes;
+
+		private int from;
+
+		private final int to;
+
+		LabelRegionSpliterator( final List< LabelRegion< T > > regions, final long[] cumulativeSizes, final int from, final int to )
+		{
+			this.regions = regions;
+			this.cumulativeSizes = cumulativeSizes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean tryAdvance( final Consumer< ? super LabelRegion< T > > action )
+		{
+			if ( from >= to )
+				return false;
+			action.accept( regions.get( from++ ) );
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining( final Consumer< ? super LabelRegion< T > > action )
+		{
+			while ( from < to )
+				action.accept( regions.get( from++ ) );
+		}
+
+		@Override
+		public Spliterator< LabelRegion< T > > trySplit()
+		{
+			if ( to - from < 2 )
+				return null;
+			final long half = ( cumulativeSizes[ from ] + cumulativeSizes[ to ] ) / 2;
+			int mid = Arrays.binarySearch( cumulativeSizes, from + 1, to, half );
+			if ( mid < 0 )
+			{
+				// split before or after the region that contains the median
+				mid = -mid - 1;
+				if ( mid > from + 1 && half - cumulativeSizes[ mid - 1 ] < cumulativeSizes[ mid ] - half )
+					--mid;
+			}
+			mid = Math.max( from + 1, Math.min( to - 1, mid ) );
+			final LabelRegionSpliterator< T > prefix = new LabelRegionSpliterator<>( regions, cumulativeSizes, from, mid );
+			from = mid;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize()
+		{
+			return to - from;
+		}
+
+		@Override
+		public int characteristics()
+		{
+			return SIZED | SUBSIZED | NONNULL | DISTINCT;
+		}
+	}
+
 	static final class FragmentProperties extends IterationCodeBuilder
 	{
 		private final int index;
 
 		private final long[] sumPositions;
 
-		public < T > FragmentProperties( final int index, final RandomAccessibleInterval< LabelingType< T > > labeling )
+		/**
+		 * Sums of products of coordinates {@code x[d1] * x[d2]} for
+		 * {@code d1 <= d2}, packed row by row as the upper triangle of a
+		 * symmetric matrix. If second-order moments are not computed,
+		 * {@code null}.
+		 */
+		private final long[] sumProducts;
+
+		/**
+		 * The {@link IterationCode} of this fragment, if it was
+		 * {@link #compact() compacted}. Otherwise {@code null}.
+		 */
+		private CompactIterationCode compactItcode;
+
+		public < T > FragmentProperties( final int index, final RandomAccessibleInterval< LabelingType< T > > labeling, final boolean secondOrderMoments )
 		{
 			super( labeling.numDimensions(), labeling.min( 0 ) );
 			this.index = index;
 			this.sumPositions = new long[ n ];
+			this.sumProducts = secondOrderMoments ? new long[ n * ( n + 1 ) / 2 ] : null;
 		}
 
 		/**
@@ -203,12 +557,58 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 			return sumPositions;
 		}
 
+		long[] getSumProducts()
+		{
+			return sumProducts;
+		}
+
 		@Override
 		public void add( final Localizable pos )
 		{
 			super.add( pos );
 			for ( int d = 0; d < n; ++d )
 				sumPositions[ d ] += pos.getLongPosition( d );
+			if ( sumProducts != null )
+			{
+				// super.add() localized pos into prev
+				final long[] x = prev;
+				for ( int d1 = 0, i = 0; d1 < n; ++d1 )
+				{
+					final long x1 = x[ d1 ];
+					for ( int d2 = d1; d2 < n; ++d2, ++i )
+						sumProducts[ i ] += x1 * x[ d2 ];
+				}
+			}
+		}
+
+		/**
+		 * Append the (finished) fragment {@code other} which was built for
+		 * the same index on the following slab of the labeling.
+		 */
+		void append( final FragmentProperties other )
+		{
+			super.append( other );
+			for ( int d = 0; d < n; ++d )
+				sumPositions[ d ] += other.sumPositions[ d ];
+			if ( sumProducts != null )
+				for ( int i = 0; i < sumProducts.length; ++i )
+					sumProducts[ i ] += other.sumProducts[ i ];
+		}
+
+		/**
+		 * Replace the {@link IterationCode} of this (finished) fragment by a
+		 * {@link CompactIterationCode}. The fragment cannot be
+		 * {@link #append(FragmentProperties) appended} to after that.
+		 */
+		void compact()
+		{
+			compactItcode = CompactIterationCode.encode( getItcode(), n );
+			getItcode().clear( 0 );
+		}
+
+		CompactIterationCode getCompactItcode()
+		{
+			return compactItcode;
 		}
 	}
 
@@ -220,12 +620,49 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 
 		private final double[] centerOfMass;
 
+		/**
+		 * Sums of products of coordinates, packed as in
+		 * {@link FragmentProperties#getSumProducts()}. If second-order moments
+		 * are not computed, {@code null}.
+		 */
+		private final long[] sumProducts;
+
+		/**
+		 * Second-order central moments, normalized by size, packed as
+		 * {@link #sumProducts}. If second-order moments are not computed,
+		 * {@code null}.
+		 */
+		private final double[] covariance;
+
 		private final long[] bbmin;
 
 		private final long[] bbmax;
 
 		private final ArrayList< TIntArrayList > itcodes;
 
+		/**
+		 * The fragments whose {@link #itcodes} make up the region. Empty if
+		 * {@link LabelRegions#compactIterationCodes}.
+		 */
+		private final ArrayList< FragmentProperties > fragments;
+
+		/**
+		 * {@link IterationCodeSkipIndex}s of the {@link #itcodes}. Created on
+		 * demand by {@link #getSkipIndices()}.
+		 */
+		private IterationCodeSkipIndex[] skipIndices;
+
+		/**
+		 * {@link CompactIterationCode}s of the fragments, if
+		 * {@link LabelRegions#compactIterationCodes}. Otherwise {@code null}.
+		 */
+		private final ArrayList< CompactIterationCode > compactItcodesList;
+
+		/**
+		 * {@link #compactItcodesList} as an array, created by {@link #finish()}.
+		 */
+		private CompactIterationCode[] compactItcodes;
+
 		private final LabelRegions< ? > labelRegions;
 
 		LabelRegionProperties( final LabelRegions< ? > labelRegions )
@@ -234,9 +671,13 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 			this.labelRegions = labelRegions;
 			sumPositions = new long[ n ];
 			centerOfMass = new double[ n ];
+			sumProducts = labelRegions.secondOrderMoments ? new long[ n * ( n + 1 ) / 2 ] : null;
+			covariance = labelRegions.secondOrderMoments ? new double[ n * ( n + 1 ) / 2 ] : null;
 			bbmin = new long[ n ];
 			bbmax = new long[ n ];
 			itcodes = new ArrayList< TIntArrayList >();
+			fragments = new ArrayList<>();
+			compactItcodesList = labelRegions.compactIterationCodes ? new ArrayList<>() : null;
 			reset();
 		}
 
@@ -259,9 +700,18 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 			size = 0;
 			Arrays.fill( sumPositions, 0 );
 			Arrays.fill( centerOfMass, 0 );
+			if ( sumProducts != null )
+			{
+				Arrays.fill( sumProducts, 0 );
+				Arrays.fill( covariance, 0 );
+			}
 			Arrays.fill( bbmin, Long.MAX_VALUE );
 			Arrays.fill( bbmax, Long.MIN_VALUE );
 			itcodes.clear();
+			fragments.clear();
+			skipIndices = null;
+			if ( compactItcodesList != null )
+				compactItcodesList.clear();
 		}
 
 		void add( final FragmentProperties frag )
@@ -272,6 +722,13 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 			for ( int d = 0; d < n; ++d )
 				sumPositions[ d ] += fragSumPositions[ d ];
 
+			if ( sumProducts != null )
+			{
+				final long[] fragSumProducts = frag.getSumProducts();
+				for ( int i = 0; i < sumProducts.length; ++i )
+					sumProducts[ i ] += fragSumProducts[ i ];
+			}
+
 			final long[] fragBBMin = frag.getBoundingBoxMin();
 			final long[] fragBBMax = frag.getBoundingBoxMax();
 			for ( int d = 0; d < n; d++ )
@@ -282,14 +739,28 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 					bbmax[ d ] = fragBBMax[ d ];
 			}
 
-			itcodes.add( frag.getItcode() );
+			if ( compactItcodesList != null )
+				compactItcodesList.add( frag.getCompactItcode() );
+			else
+			{
+				itcodes.add( frag.getItcode() );
+				fragments.add( frag );
+			}
 		}
 
 		void finish()
 		{
 			if ( size != 0 )
+			{
 				for ( int d = 0; d < n; d++ )
 					centerOfMass[ d ] = ( double ) sumPositions[ d ] / ( double ) size;
+				if ( sumProducts != null )
+					for ( int d1 = 0, i = 0; d1 < n; ++d1 )
+						for ( int d2 = d1; d2 < n; ++d2, ++i )
+							covariance[ i ] = ( sumProducts[ i ] - ( double ) sumPositions[ d1 ] * centerOfMass[ d2 ] ) / size;
+			}
+			if ( compactItcodesList != null )
+				compactItcodes = compactItcodesList.toArray( new CompactIterationCode[ 0 ] );
 		}
 
 		long getSize()
@@ -307,6 +778,16 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 			return centerOfMass;
 		}
 
+		long[] getSumProducts()
+		{
+			return sumProducts;
+		}
+
+		double[] getCovariance()
+		{
+			return covariance;
+		}
+
 		long[] getBoundingBoxMin()
 		{
 			return bbmin;
@@ -321,6 +802,258 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 		{
 			return itcodes;
 		}
+
+		/**
+		 * Get the {@link IterationCodeSkipIndex}s for {@link #getItcodes()}.
+		 * The skip indices of the fragments are built on the first call, and
+		 * are kept for fragments that are not modified by later updates.
+		 */
+		synchronized IterationCodeSkipIndex[] getSkipIndices()
+		{
+			if ( skipIndices == null )
+			{
+				final IterationCodeSkipIndex[] indices = new IterationCodeSkipIndex[ fragments.size() ];
+				for ( int i = 0; i < indices.length; ++i )
+					indices[ i ] = fragments.get( i ).getSkipIndex();
+				skipIndices = indices;
+			}
+			return skipIndices;
+		}
+
+		/**
+		 * Get the {@link CompactIterationCode}s of the fragments making up
+		 * the region, or {@code null} if the {@link LabelRegions} do not
+		 * {@link LabelRegions#hasCompactIterationCodes() compact} the
+		 * {@link IterationCode}s.
+		 */
+		CompactIterationCode[] getCompactItcodes()
+		{
+			return compactItcodes;
+		}
+	}
+
+	/**
+	 * Build {@link FragmentProperties} for all pixels in {@code interval}.
+	 * <p>
+	 * The interval is split into slabs along the last dimension, which are
+	 * scanned in parallel by the {@link TaskExecutor} provided by
+	 * {@link Parallelization#getTaskExecutor()}. The per-slab fragments are
+	 * then stitched in slab order, such that the result is identical to a
+	 * single scan in flat iteration order.
+	 *
+	 * @param interval
+	 *            the interval to scan
+	 * @param numFragments
+	 *            number of label sets in the {@link LabelingMapping}
+	 * @param filter
+	 *            if not {@code null}, only fragments for label set indices
+	 *            {@code i} with {@code filter[i] == true} are built. (The
+	 *            fragments for other indices are empty.)
+	 * @return a list of finished {@link FragmentProperties}, indexed by label
+	 *         set index.
+	 */
+	private ArrayList< FragmentProperties > scan( final Interval interval, final int numFragments, final boolean[] filter )
+	{
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< Interval > slabs = splitIntoSlabs( interval, taskExecutor.suggestNumberOfTasks() );
+		final List< FragmentProperties[] > slabFragments = slabs.size() == 1
+				? Collections.singletonList( scanSlab( slabs.get( 0 ), numFragments, filter ) )
+				: taskExecutor.forEachApply( slabs, slab -> scanSlab( slab, numFragments, filter ) );
+
+		final ArrayList< FragmentProperties > fragments = new ArrayList<>( numFragments );
+		for ( int i = 0; i < numFragments; ++i )
+		{
+			FragmentProperties frag = null;
+			for ( final FragmentProperties[] slab : slabFragments )
+			{
+				final FragmentProperties slabFrag = slab[ i ];
+				if ( slabFrag == null )
+					continue;
+				if ( frag == null )
+					frag = slabFrag;
+				else
+					frag.append( slabFrag );
+			}
+			if ( frag == null )
+				frag = emptyFragment( i );
+			fragments.add( frag );
+		}
+		if ( compactIterationCodes )
+			taskExecutor.forEach( fragments, frag -> {
+				if ( frag.getCompactItcode() == null )
+					frag.compact();
+			} );
+		return fragments;
+	}
+
+	/**
+	 * Build {@link FragmentProperties} for all pixels in {@code slab}.
+	 * Fragments are only created for label set indices that occur in the slab
+	 * (and pass the {@code filter}, if it is not {@code null}).
+	 *
+	 * @return array of finished {@link FragmentProperties}, indexed by label
+	 *         set index. Entries for indices that do not occur are
+	 *         {@code null}.
+	 */
+	private FragmentProperties[] scanSlab( final Interval slab, final int numFragments, final boolean[] filter )
+	{
+		final FragmentProperties[] fragments = new FragmentProperties[ numFragments ];
+		if ( indexScanner != null )
+		{
+			indexScanner.scan( slab, ( index, position ) -> {
+				if ( filter == null || filter[ index ] )
+					addToFragment( fragments, index, position );
+			} );
+		}
+		else
+		{
+			final Cursor< ? extends LabelingType< ? > > c = Views.flatIterable( Views.interval( labeling, slab ) ).localizingCursor();
+			while ( c.hasNext() )
+			{
+				final int index = c.next().getIndex().getInteger();
+				if ( index > 0 && ( filter == null || filter[ index ] ) )
+					addToFragment( fragments, index, c );
+			}
+		}
+		for ( final FragmentProperties frag : fragments )
+			if ( frag != null )
+				frag.finish();
+		return fragments;
+	}
+
+	private void addToFragment( final FragmentProperties[] fragments, final int index, final Localizable position )
+	{
+		FragmentProperties frag = fragments[ index ];
+		if ( frag == null )
+		{
+			frag = new FragmentProperties( index, labeling, secondOrderMoments );
+			fragments[ index ] = frag;
+		}
+		frag.add( position );
+	}
+
+	/**
+	 * Whether the fragments of the previous update can be updated by
+	 * rescanning only the blocks modified since the {@code epoch} started by
+	 * the previous update. This is possible if the labeling is an
+	 * {@link ImgLabeling}, a full scan happened before, and the modified blocks
+	 * make up at most a quarter of the labeling.
+	 */
+	private boolean canUpdateIncrementally( final int numFragments, final int epoch )
+	{
+		if ( modifiedBlocks == null || !scanned || numFragments < indexToFragmentProperties.size() )
+			return false;
+		return modifiedBlocks.numModifiedSince( epoch ) <= modifiedBlocks.numBlocks() / 4;
+	}
+
+	/**
+	 * Update {@link #indexToFragmentProperties} after the given blocks were
+	 * modified.
+	 * <p>
+	 * All fragments that had pixels in the modified blocks before, or have
+	 * pixels there now, are affected. They are rebuilt by scanning the
+	 * bounding box of the modified blocks and the previous bounding boxes of
+	 * the affected fragments. All other fragments are kept.
+	 */
+	private void updateFragments( final List< Interval > modified, final int numFragments )
+	{
+		final int oldNumFragments = indexToFragmentProperties.size();
+		if ( modified.isEmpty() )
+		{
+			for ( int i = oldNumFragments; i < numFragments; ++i )
+				indexToFragmentProperties.add( emptyFragment( i ) );
+			return;
+		}
+
+		final boolean[] affected = new boolean[ numFragments ];
+
+		// fragments that had pixels in the modified blocks
+		for ( int i = 1; i < oldNumFragments; ++i )
+		{
+			final FragmentProperties frag = indexToFragmentProperties.get( i );
+			if ( frag.getSize() > 0 && intersectsAny( frag, modified ) )
+				affected[ i ] = true;
+		}
+
+		// fragments that have pixels in the modified blocks now
+		for ( final Interval block : modified )
+			for ( final LabelingType< T > t : Views.interval( labeling, block ) )
+				affected[ t.getIndex().getInteger() ] = true;
+		affected[ 0 ] = false;
+
+		final BoundingBox region = new BoundingBox( n );
+		for ( final Interval block : modified )
+		{
+			region.update( Intervals.minAsLongArray( block ) );
+			region.update( Intervals.maxAsLongArray( block ) );
+		}
+		for ( int i = 1; i < oldNumFragments; ++i )
+		{
+			final FragmentProperties frag = indexToFragmentProperties.get( i );
+			if ( affected[ i ] && frag.getSize() > 0 )
+			{
+				region.update( frag.getBoundingBoxMin() );
+				region.update( frag.getBoundingBoxMax() );
+			}
+		}
+
+		final ArrayList< FragmentProperties > fragments = scan( region, numFragments, affected );
+		for ( int i = 0; i < numFragments; ++i )
+		{
+			if ( i >= oldNumFragments )
+				indexToFragmentProperties.add( fragments.get( i ) );
+			else if ( affected[ i ] )
+				indexToFragmentProperties.set( i, fragments.get( i ) );
+		}
+	}
+
+	private FragmentProperties emptyFragment( final int index )
+	{
+		final FragmentProperties frag = new FragmentProperties( index, labeling, secondOrderMoments );
+		frag.finish();
+		if ( compactIterationCodes )
+			frag.compact();
+		return frag;
+	}
+
+	private static boolean intersectsAny( final FragmentProperties frag, final List< Interval > blocks )
+	{
+		final long[] fragMin = frag.getBoundingBoxMin();
+		final long[] fragMax = frag.getBoundingBoxMax();
+		for ( final Interval block : blocks )
+		{
+			boolean intersects = true;
+			for ( int d = 0; d < fragMin.length && intersects; ++d )
+				intersects = block.min( d ) <= fragMax[ d ] && block.max( d ) >= fragMin[ d ];
+			if ( intersects )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Split {@code interval} into at most {@code numSlabs} slabs along the
+	 * last dimension.
+	 */
+	static List< Interval > splitIntoSlabs( final Interval interval, final int numSlabs )
+	{
+		final int n = interval.numDimensions();
+		final int d = n - 1;
+		final long size = interval.dimension( d );
+		final int k = ( n < 2 ) ? 1 : ( int ) Math.max( 1, Math.min( numSlabs, size ) );
+		if ( k == 1 )
+			return Collections.singletonList( interval );
+
+		final List< Interval > slabs = new ArrayList<>( k );
+		final long[] min = Intervals.minAsLongArray( interval );
+		final long[] max = Intervals.maxAsLongArray( interval );
+		for ( int i = 0; i < k; ++i )
+		{
+			min[ d ] = interval.min( d ) + size * i / k;
+			max[ d ] = interval.min( d ) + size * ( i + 1 ) / k - 1;
+			slabs.add( new FinalInterval( min.clone(), max.clone() ) );
+		}
+		return slabs;
 	}
 
 	/**
@@ -347,29 +1080,23 @@ public class LabelRegions< T > extends AbstractEuclideanSpace implements Iterabl
 					// remember existing LabelRegions created on previous getLabelRegion() or iterator()
 					final HashMap< T, LabelRegion< T > > oldLabelToLabelRegion = new HashMap< T, LabelRegion< T > >( labelToLabelRegion );
 
-					indexToFragmentProperties.clear();
 					labelToLabelRegionProperties.clear();
 					labelToLabelRegion.clear();
+					boundingBoxTree = null;
 
 					final LabelingMapping< T > mapping = type.getMapping();
 					final int numFragments = mapping.numSets();
-					for ( int i = 0; i < numFragments; ++i )
-						indexToFragmentProperties.add( new FragmentProperties( i, labeling ) );
-
-					final Cursor< ? extends LabelingType< ? > > c = Views.flatIterable( labeling ).localizingCursor();
-					while ( c.hasNext() )
+					final int previousEpoch = expectedEpoch;
+					if ( modifiedBlocks != null )
+						expectedEpoch = modifiedBlocks.newEpoch();
+					if ( canUpdateIncrementally( numFragments, previousEpoch ) )
+						updateFragments( modifiedBlocks.getModifiedSince( previousEpoch ), numFragments );
+					else
 					{
-						final int index = c.next().getIndex().getInteger();
-						// TODO: Do a benchmark: For sparsely labeled images it
-						// might be faster to use a non-localizing Cursor, because
-						// we don't collect background coordinates. What is the
-						// trade-off?
-						if ( index > 0 )
-							indexToFragmentProperties.get( index ).add( c );
+						indexToFragmentProperties.clear();
+						indexToFragmentProperties.addAll( scan( labeling, numFragments, null ) );
+						scanned = true;
 					}
-					// generation = type.getGeneration();
-					for ( final FragmentProperties frag : indexToFragmentProperties )
-						frag.finish();
 
 					// now build LabelProperties
 					for ( final FragmentProperties frag : indexToFragmentProperties )
@@ -0,0 +1,239 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage of the label sets of a {@link LabelingMapping}. The sorted
+ * label ids of all sets are stored consecutively in one {@code int[]} array,
+ * where the ids of the set with index {@code i} occupy the range
+ * {@code offsets[i]} (inclusive) to {@code offsets[i+1]} (exclusive). Sets are
+ * interned by an open-addressing hash table of set indices.
+ * <p>
+ * Looking up sets does not lock. {@link #add(SortedInts)} and
+ * {@link #clear()} must be synchronized externally. When arrays are full,
+ * they are replaced by larger copies, and {@link #numSets} is written last,
+ * so that readers see all data of the sets with indices smaller than
+ * {@link #numSets()}.
+ */
+final class LabelSetArena
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final int EMPTY = -1;
+
+	private volatile int[] ids;
+
+	private volatile int[] offsets;
+
+	/**
+	 * Open-addressing hash table of set indices, with linear probing. The
+	 * length is a power of two and at least twice the number of sets.
+	 */
+	private volatile int[] table;
+
+	private volatile int numSets;
+
+	LabelSetArena()
+	{
+		clear();
+	}
+
+	void clear()
+	{
+		ids = new int[ INITIAL_CAPACITY ];
+		offsets = new int[ INITIAL_CAPACITY + 1 ];
+		table = newTable( 2 * INITIAL_CAPACITY );
+		numSets = 0;
+	}
+
+	int numSets()
+	{
+		return numSets;
+	}
+
+	/**
+	 * Get the number of label ids in the set at {@code index}.
+	 */
+	int size( final int index )
+	{
+		final int[] offsets = this.offsets;
+		return offsets[ index + 1 ] - offsets[ index ];
+	}
+
+	/**
+	 * Get the {@code i}th (smallest) label id in the set at {@code index}.
+	 */
+	int get( final int index, final int i )
+	{
+		return ids[ offsets[ index ] + i ];
+	}
+
+	/**
+	 * Whether the set at {@code index} contains {@code labelId}.
+	 */
+	boolean contains( final int index, final int labelId )
+	{
+		final int[] offsets = this.offsets;
+		return Arrays.binarySearch( ids, offsets[ index ], offsets[ index + 1 ], labelId ) >= 0;
+	}
+
+	/**
+	 * Get the label ids of the set at {@code index}.
+	 */
+	SortedInts labelIds( final int index )
+	{
+		final int[] offsets = this.offsets;
+		return SortedInts.wrapSortedValues( Arrays.copyOfRange( ids, offsets[ index ], offsets[ index + 1 ] ) );
+	}
+
+	/**
+	 * Get the index of the set with the given {@code labelIds}, or {@code -1}
+	 * if there is no such set (yet).
+	 */
+	int indexOf( final SortedInts labelIds )
+	{
+		final int n = numSets;
+		final int[] table = this.table;
+		final int mask = table.length - 1;
+		for ( int slot = mix( labelIds.hashCode() ) & mask;; slot = ( slot + 1 ) & mask )
+		{
+			final int index = table[ slot ];
+			if ( index == EMPTY )
+				return -1;
+			if ( index < n && equals( index, labelIds ) )
+				return index;
+		}
+	}
+
+	/**
+	 * Append a new set with the given {@code labelIds}, which must not be
+	 * contained already.
+	 *
+	 * @return the index of the new set
+	 */
+	int add( final SortedInts labelIds )
+	{
+		final int index = numSets;
+		final int size = labelIds.size();
+
+		int[] offsets = this.offsets;
+		if ( index + 1 == offsets.length )
+		{
+			offsets = Arrays.copyOf( offsets, 2 * index + 1 );
+			this.offsets = offsets;
+		}
+		final int begin = offsets[ index ];
+		int[] ids = this.ids;
+		if ( begin + size > ids.length )
+		{
+			ids = Arrays.copyOf( ids, Math.max( 2 * ids.length, begin + size ) );
+			this.ids = ids;
+		}
+		for ( int i = 0; i < size; ++i )
+			ids[ begin + i ] = labelIds.get( i );
+		offsets[ index + 1 ] = begin + size;
+
+		if ( 2 * ( index + 1 ) > table.length )
+			table = rehash( 2 * table.length, index );
+		insert( table, index, labelIds.hashCode() );
+
+		numSets = index + 1;
+		return index;
+	}
+
+	private boolean equals( final int index, final SortedInts labelIds )
+	{
+		final int[] offsets = this.offsets;
+		final int begin = offsets[ index ];
+		final int size = offsets[ index + 1 ] - begin;
+		if ( size != labelIds.size() )
+			return false;
+		final int[] ids = this.ids;
+		for ( int i = 0; i < size; ++i )
+			if ( ids[ begin + i ] != labelIds.get( i ) )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Create a table of the given {@code capacity} containing the sets with
+	 * indices smaller than {@code numSets}.
+	 */
+	private int[] rehash( final int capacity, final int numSets )
+	{
+		final int[] newTable = newTable( capacity );
+		final int[] offsets = this.offsets;
+		final int[] ids = this.ids;
+		for ( int index = 0; index < numSets; ++index )
+		{
+			// same as Arrays.hashCode() of the label ids, see SortedInts
+			int hash = 1;
+			for ( int i = offsets[ index ]; i < offsets[ index + 1 ]; ++i )
+				hash = 31 * hash + ids[ i ];
+			insert( newTable, index, hash );
+		}
+		return newTable;
+	}
+
+	private static void insert( final int[] table, final int index, final int hash )
+	{
+		final int mask = table.length - 1;
+		int slot = mix( hash ) & mask;
+		while ( table[ slot ] != EMPTY )
+			slot = ( slot + 1 ) & mask;
+		table[ slot ] = index;
+	}
+
+	private static int[] newTable( final int capacity )
+	{
+		final int[] table = new int[ capacity ];
+		Arrays.fill( table, EMPTY );
+		return table;
+	}
+
+	/**
+	 * Spread the bits of {@code hash} (finalizer of MurmurHash3).
+	 */
+	private static int mix( int hash )
+	{
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
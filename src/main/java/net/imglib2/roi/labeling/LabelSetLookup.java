@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/**
+ * Lookup table from label set index to the value of a function of the label
+ * set at that index. The function is evaluated once per label set. The table
+ * is extended lazily when indices of label sets that were created later are
+ * {@link #get(int) looked up}, and rebuilt when label sets were re-indexed.
+ *
+ * @param <T>
+ *            the label type
+ *
+ * @see LabelSetPredicateLookup
+ */
+final class LabelSetLookup< T >
+{
+	private final LabelingMapping< T > mapping;
+
+	private final ToLongFunction< ? super Set< T > > function;
+
+	/**
+	 * The lookup table for the label sets of {@link LabelingMapping#getVersion()
+	 * version} {@code version} of the mapping.
+	 */
+	private static final class Table
+	{
+		final int version;
+
+		final long[] lut;
+
+		Table( final int version, final long[] lut )
+		{
+			this.version = version;
+			this.lut = lut;
+		}
+	}
+
+	private volatile Table table;
+
+	LabelSetLookup( final LabelingMapping< T > mapping, final ToLongFunction< ? super Set< T > > function )
+	{
+		this.mapping = mapping;
+		this.function = function;
+		table = new Table( mapping.getVersion(), new long[ 0 ] );
+		update();
+	}
+
+	/**
+	 * Get the value of the function of the label set at {@code index}.
+	 */
+	long get( final int index )
+	{
+		final Table table = this.table;
+		final long[] lut = table.lut;
+		return index < lut.length && table.version == mapping.getVersion() ? lut[ index ] : update()[ index ];
+	}
+
+	/**
+	 * Extend the table to all label sets of the mapping. If the label sets
+	 * were re-indexed, for example by
+	 * {@link ImgLabeling#removeUnusedLabelSets()}, the table is rebuilt.
+	 */
+	private synchronized long[] update()
+	{
+		final int version = mapping.getVersion();
+		final long[] lut = table.version == version ? table.lut : new long[ 0 ];
+		final int oldSize = lut.length;
+		final int numSets = mapping.numSets();
+		if ( numSets <= oldSize )
+			return lut;
+		final long[] newLut = Arrays.copyOf( lut, numSets );
+		for ( int i = oldSize; i < numSets; ++i )
+			newLut[ i ] = function.applyAsLong( mapping.labelsAtIndex( i ) );
+		table = new Table( version, newLut );
+		return newLut;
+	}
+}
@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Lookup table from label set index to the result of a {@link Predicate} on
+ * the label set at that index, stored as a bitset. The predicate is evaluated
+ * once per label set. The table is extended lazily when indices of label sets
+ * that were created later are {@link #test(int) tested}, and rebuilt when
+ * label sets were re-indexed.
+ *
+ * @param <T>
+ *            the label type
+ *
+ * @see LabelSetLookup
+ */
+final class LabelSetPredicateLookup< T >
+{
+	private final LabelingMapping< T > mapping;
+
+	private final Predicate< ? super Set< T > > predicate;
+
+	/**
+	 * The lookup table for the first {@code size} label sets of
+	 * {@link LabelingMapping#getVersion() version} {@code version} of the
+	 * mapping. Bit {@code i % 64} of {@code words[ i / 64 ]} is the result for
+	 * label set {@code i}.
+	 */
+	private static final class Table
+	{
+		final int version;
+
+		final int size;
+
+		final long[] words;
+
+		Table( final int version, final int size, final long[] words )
+		{
+			this.version = version;
+			this.size = size;
+			this.words = words;
+		}
+
+		boolean get( final int index )
+		{
+			return ( words[ index >>> 6 ] & ( 1L << index ) ) != 0;
+		}
+	}
+
+	private volatile Table table;
+
+	LabelSetPredicateLookup( final LabelingMapping< T > mapping, final Predicate< ? super Set< T > > predicate )
+	{
+		this.mapping = mapping;
+		this.predicate = predicate;
+		table = new Table( mapping.getVersion(), 0, new long[ 0 ] );
+		update();
+	}
+
+	/**
+	 * Get the result of the predicate on the label set at {@code index}.
+	 */
+	boolean test( final int index )
+	{
+		final Table table = this.table;
+		return index < table.size && table.version == mapping.getVersion() ? table.get( index ) : update().get( index );
+	}
+
+	/**
+	 * Extend the table to all label sets of the mapping. If the label sets
+	 * were re-indexed, for example by
+	 * {@link ImgLabeling#removeUnusedLabelSets()}, the table is rebuilt.
+	 */
+	private synchronized Table update()
+	{
+		final int version = mapping.getVersion();
+		final Table old = table.version == version ? table : new Table( version, 0, new long[ 0 ] );
+		final int numSets = mapping.numSets();
+		if ( numSets <= old.size )
+			return old;
+		final long[] words = Arrays.copyOf( old.words, ( numSets + 63 ) >>> 6 );
+		for ( int i = old.size; i < numSets; ++i )
+			if ( predicate.test( mapping.labelsAtIndex( i ) ) )
+				words[ i >>> 6 ] |= 1L << i;
+		table = new Table( version, numSets, words );
+		return table;
+	}
+}
@@ -40,16 +40,16 @@ import java.lang.ref.WeakReference;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
 
-import gnu.trove.impl.Constants;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 import net.imglib2.type.numeric.IntegerType;
 
 /**
@@ -57,6 +57,20 @@ import net.imglib2.type.numeric.IntegerType;
  * which can be more compactly stored than the set of labelings. It provides an
  * {@link #intern(Set)} function that supplies a canonical object for each set
  * of labelings in a container.
+ * <p>
+ * The mapping may be used from multiple threads concurrently, for example to
+ * paint an {@link ImgLabeling} in parallel. Looking up labels and label sets
+ * does not lock. Only creating a new label or label set is synchronized.
+ * {@link #setLabelSets(List)} must not be called concurrently with other
+ * methods.
+ * <p>
+ * Optionally, label sets can be stored {@link #LabelingMapping(IntegerType,
+ * boolean) compactly}: Then, the label ids of all sets are stored in one
+ * primitive array, and {@link InternedSet}s are lightweight objects that are
+ * created on demand. This reduces memory consumption significantly for
+ * labelings with millions of label sets. In this mode, two
+ * {@link InternedSet}s representing the same label set are
+ * {@link Object#equals(Object) equal}, but not necessarily identical.
  *
  * @param <T>
  * 		the desired type of the pixel labels, for instance {@link Integer}
@@ -74,52 +88,180 @@ public class LabelingMapping< T >
 	 */
 	private final int maxNumLabelSets;
 
+	private static final int INITIAL_CAPACITY = 16;
+
 	/**
 	 * Maps indices to {@link InternedSet} (canonical label sets).
-	 * {@code setsByIndex.get( i ).index == i} holds.
+	 * {@code setsByIndex[ i ].index == i} holds for {@code i < numSets}. Sets
+	 * are only added in {@link #create(SortedInts)}, which is synchronized.
+	 * When the array is full, it is replaced by a larger copy, so that reading
+	 * does not require locking.
+	 */
+	private volatile InternedSet< T >[] setsByIndex;
+
+	private volatile int numSets;
+
+	/**
+	 * Maps label id sets to {@link InternedSet} (canonical label sets).
+	 */
+	private final Map< SortedInts, InternedSet< T > > internedSets;
+
+	/**
+	 * Compact storage of label sets. If non-{@code null}, this is used instead
+	 * of {@link #setsByIndex} and {@link #internedSets}.
+	 */
+	private final LabelSetArena arena;
+
+	/**
+	 * Number of label sets that are defined implicitly by
+	 * {@link #setLabels(List)}: The empty set at index {@code 0}, and the
+	 * singleton set of the label with id {@code i - 1} at index {@code i}. The
+	 * sets in the {@link #arena} follow these.
 	 */
-	private final ArrayList< InternedSet< T > > setsByIndex = new ArrayList<>();
+	private volatile int numImplicitSets;
 
 	/**
-	 * TODO
+	 * Incremented whenever existing label sets are removed or re-indexed,
+	 * which invalidates lookup tables indexed by label set index.
 	 */
-	private final Map< SortedInts, InternedSet< T > > internedSets = new ConcurrentHashMap<>();
+	private volatile int version;
 
+	/**
+	 * Bidirectional map between labels and label ids. Looking up existing
+	 * labels and ids does not lock. Only adding a new label is synchronized.
+	 * <p>
+	 * Optionally, the first ids are assigned implicitly to the elements of a
+	 * list of labels, see {@link LabelingMapping#setLabels(List)}. The reverse
+	 * lookup of these labels is created on demand.
+	 */
 	private static class LabelIdBimap< T >
 	{
 		public static final int NO_ENTRY_VALUE = -1;
 
-		private final List< T > labels = new ArrayList<>();
+		/**
+		 * {@code implicitLabels.get( id )} is the label with the given
+		 * {@code id < numImplicitLabels}.
+		 */
+		private final List< T > implicitLabels;
+
+		private final int numImplicitLabels;
+
+		/**
+		 * Reverse lookup of {@link #implicitLabels}, or {@code null} if it has
+		 * not been needed yet.
+		 */
+		private volatile ToIntFunction< Object > implicitIds;
+
+		/**
+		 * {@code labels[ id - numImplicitLabels ]} is the label with the given
+		 * id. When the array is full, it is replaced by a larger copy.
+		 */
+		private volatile Object[] labels = new Object[ 16 ];
+
+		private int numLabels = 0;
+
+		private final ConcurrentHashMap< T, Integer > labelToId = new ConcurrentHashMap<>();
 
-		private final TObjectIntMap< T > labelToId = new TObjectIntHashMap<>( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, NO_ENTRY_VALUE );
+		LabelIdBimap()
+		{
+			this( Collections.emptyList(), null );
+		}
+
+		/**
+		 * @param implicitLabels
+		 *            labels that are implicitly assigned the ids
+		 *            {@code 0, 1, ...}.
+		 * @param implicitIds
+		 *            reverse lookup of {@code implicitLabels}, returning
+		 *            {@link #NO_ENTRY_VALUE} for labels that are not
+		 *            contained. If {@code null}, a hash map is created when
+		 *            needed.
+		 */
+		LabelIdBimap( final List< T > implicitLabels, final ToIntFunction< Object > implicitIds )
+		{
+			this.implicitLabels = implicitLabels;
+			this.numImplicitLabels = implicitLabels.size();
+			this.implicitIds = implicitIds;
+		}
 
+		@SuppressWarnings( "unchecked" )
 		T getLabel( final int id )
 		{
-			return labels.get( id );
+			return id < numImplicitLabels
+					? implicitLabels.get( id )
+					: ( T ) labels[ id - numImplicitLabels ];
+		}
+
+		int getId( final T label )
+		{
+			final Integer id = labelToId.get( label );
+			return id != null ? id : addLabel( label );
 		}
 
-		synchronized int getId( final T label )
+		private synchronized int addLabel( final T label )
 		{
-			int id = labelToId.get( label );
-			if ( id != NO_ENTRY_VALUE )
-				return id;
-			id = labels.size();
-			labels.add( label );
+			final Integer existing = labelToId.get( label );
+			if ( existing != null )
+				return existing;
+			final int implicitId = getImplicitId( label );
+			if ( implicitId != NO_ENTRY_VALUE )
+				return implicitId;
+			final int i = numLabels++;
+			Object[] l = labels;
+			if ( i == l.length )
+				l = Arrays.copyOf( l, 2 * i );
+			l[ i ] = label;
+			labels = l;
+			final int id = numImplicitLabels + i;
 			labelToId.put( label, id );
 			return id;
 		}
 
-		synchronized int getIdIfExists( final Object label )
+		int getIdIfExists( final Object label )
+		{
+			if ( label == null )
+				return NO_ENTRY_VALUE;
+			final Integer id = labelToId.get( label );
+			return id != null ? id : getImplicitId( label );
+		}
+
+		private int getImplicitId( final Object label )
+		{
+			if ( numImplicitLabels == 0 )
+				return NO_ENTRY_VALUE;
+			ToIntFunction< Object > ids = implicitIds;
+			if ( ids == null )
+				ids = createImplicitIds();
+			return ids.applyAsInt( label );
+		}
+
+		private synchronized ToIntFunction< Object > createImplicitIds()
 		{
-			return labelToId.get( label );
+			if ( implicitIds == null )
+			{
+				final HashMap< Object, Integer > map = new HashMap<>( 2 * numImplicitLabels );
+				for ( int id = 0; id < numImplicitLabels; ++id )
+					if ( map.put( implicitLabels.get( id ), id ) != null )
+						throw new IllegalArgumentException( "no duplicates allowed in list of labels" );
+				implicitIds = label -> map.getOrDefault( label, NO_ENTRY_VALUE );
+			}
+			return implicitIds;
 		}
 
+		@SuppressWarnings( "unchecked" )
 		synchronized Set< T > getLabels()
 		{
-			return new HashSet<>( labels );
+			final HashSet< T > set = new HashSet<>( implicitLabels );
+			for ( int i = 0; i < numLabels; ++i )
+				set.add( ( T ) labels[ i ] );
+			return set;
 		}
 	}
 
+	/**
+	 * Replaced by {@link #setLabels(List)}, which must not be called
+	 * concurrently with other methods.
+	 */
 	private LabelIdBimap< T > labelIdBimap = new LabelIdBimap<>();
 
 	/**
@@ -133,12 +275,38 @@ public class LabelingMapping< T >
 	 */
 	public LabelingMapping( final IntegerType< ? > indexType )
 	{
-		this( ( int ) indexType.getMaxValue() );
+		this( indexType, false );
+	}
+
+	/**
+	 * Create a new {@link LabelingMapping} that maps label sets to the given
+	 * integral {@code indexType}.
+	 *
+	 * @param indexType
+	 *            the type to which label sets are mapped
+	 * @param compactLabelSets
+	 *            whether to store label sets compactly in a primitive array,
+	 *            instead of one object per label set.
+	 */
+	public LabelingMapping( final IntegerType< ? > indexType, final boolean compactLabelSets )
+	{
+		this( ( int ) indexType.getMaxValue(), compactLabelSets );
 	}
 
-	private LabelingMapping( final int maxNumLabelSets )
+	private LabelingMapping( final int maxNumLabelSets, final boolean compactLabelSets )
 	{
 		this.maxNumLabelSets = maxNumLabelSets;
+		if ( compactLabelSets )
+		{
+			arena = new LabelSetArena();
+			internedSets = null;
+		}
+		else
+		{
+			arena = null;
+			internedSets = new ConcurrentHashMap<>();
+			setsByIndex = newSetsArray( INITIAL_CAPACITY );
+		}
 		theEmptySet = intern( SortedInts.emptyList() );
 	}
 
@@ -147,14 +315,38 @@ public class LabelingMapping< T >
 	 */
 	LabelingMapping< T > newInstance()
 	{
-		return new LabelingMapping<>( maxNumLabelSets );
+		return new LabelingMapping<>( maxNumLabelSets, hasCompactLabelSets() );
+	}
+
+	/**
+	 * Whether label sets are stored compactly in a primitive array.
+	 *
+	 * @see #LabelingMapping(IntegerType, boolean)
+	 */
+	public boolean hasCompactLabelSets()
+	{
+		return arena != null;
 	}
 
 	void clear()
 	{
 		clearCacheMaps();
-		setsByIndex.clear();
-		internedSets.clear();
+		synchronized ( this )
+		{
+			++version;
+			if ( arena != null )
+			{
+				arena.clear();
+				numImplicitSets = 0;
+			}
+			else
+			{
+				setsByIndex = newSetsArray( INITIAL_CAPACITY );
+				numSets = 0;
+			}
+		}
+		if ( internedSets != null )
+			internedSets.clear();
 		theEmptySet = intern( SortedInts.emptyList() );
 	}
 
@@ -168,7 +360,71 @@ public class LabelingMapping< T >
 	 */
 	InternedSet< T > setAtIndex( final int index )
 	{
-		return setsByIndex.get( index );
+		final int numSets = numSets();
+		if ( index >= numSets )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + numSets );
+		return arena != null ? new InternedSet<>( this, null, index ) : setsByIndex[ index ];
+	}
+
+	/*
+	 * Access to label sets in the arena (and implicit label sets) for
+	 * flyweight InternedSets.
+	 */
+
+	private int sizeAt( final int index )
+	{
+		final int k = numImplicitSets;
+		return index < k ? Math.min( index, 1 ) : arena.size( index - k );
+	}
+
+	private int labelIdAt( final int index, final int i )
+	{
+		final int k = numImplicitSets;
+		return index < k ? index - 1 : arena.get( index - k, i );
+	}
+
+	private boolean containsIdAt( final int index, final int labelId )
+	{
+		final int k = numImplicitSets;
+		return index < k ? index != 0 && labelId == index - 1 : arena.contains( index - k, labelId );
+	}
+
+	private SortedInts labelIdsAt( final int index )
+	{
+		final int k = numImplicitSets;
+		if ( index < k )
+			return index == 0 ? SortedInts.emptyList() : SortedInts.wrapSortedValues( index - 1 );
+		return arena.labelIds( index - k );
+	}
+
+	/**
+	 * Get the version of this mapping. The version changes whenever existing
+	 * label sets are removed or re-indexed (for example by
+	 * {@link #setLabelSets(List)}), but not when new label sets are added.
+	 */
+	int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Replace the label sets by the label sets at the given {@code indices},
+	 * such that the set at {@code indices[ i ]} will be at index {@code i}.
+	 * Labels that do not occur in any of the retained sets are removed.
+	 * <p>
+	 * This must not be called concurrently with other methods.
+	 *
+	 * @param indices
+	 *            strictly increasing indices of the label sets to retain.
+	 *            {@code indices[ 0 ]} must be {@code 0} (the empty set).
+	 */
+	void retainLabelSets( final int[] indices )
+	{
+		final List< Set< T > > labelSets = new ArrayList<>( indices.length );
+		for ( final int index : indices )
+			labelSets.add( new HashSet<>( labelsAtIndex( index ) ) );
+		labelIdBimap = new LabelIdBimap<>();
+		setLabelSets( labelSets );
 	}
 
 	/**
@@ -189,7 +445,36 @@ public class LabelingMapping< T >
 
 	private InternedSet< T > intern( final SortedInts labelIds )
 	{
-		return internedSets.computeIfAbsent( labelIds, this::create );
+		if ( arena != null )
+		{
+			final int index = indexOf( labelIds );
+			return new InternedSet<>( this, null, index >= 0 ? index : createCompact( labelIds ) );
+		}
+		final InternedSet< T > internedSet = internedSets.get( labelIds );
+		return internedSet != null ? internedSet : internedSets.computeIfAbsent( labelIds, this::create );
+	}
+
+	/**
+	 * Returns the index of the given label set, or {@code -1} if it is not
+	 * contained in the mapping.
+	 */
+	private int indexOf( final SortedInts labelIds )
+	{
+		if ( arena != null )
+		{
+			final int k = numImplicitSets;
+			if ( k > 0 )
+			{
+				if ( labelIds.isEmpty() )
+					return 0;
+				if ( labelIds.size() == 1 && labelIds.get( 0 ) < k - 1 )
+					return labelIds.get( 0 ) + 1;
+			}
+			final int index = arena.indexOf( labelIds );
+			return index >= 0 ? index + k : -1;
+		}
+		final InternedSet< T > internedSet = internedSets.get( labelIds );
+		return internedSet != null ? internedSet.index : -1;
 	}
 
 	/**
@@ -197,7 +482,7 @@ public class LabelingMapping< T >
 	 */
 	public int numSets()
 	{
-		return setsByIndex.size();
+		return arena != null ? numImplicitSets + arena.numSets() : numSets;
 	}
 
 	/**
@@ -218,8 +503,17 @@ public class LabelingMapping< T >
 	 */
 	public List< Set< T > > getLabelSets()
 	{
-		final ArrayList< Set< T > > labelSets = new ArrayList<>( numSets() );
-		labelSets.addAll( setsByIndex );
+		final int size = numSets();
+		final ArrayList< Set< T > > labelSets = new ArrayList<>( size );
+		if ( arena != null )
+			for ( int i = 0; i < size; ++i )
+				labelSets.add( new InternedSet<>( this, null, i ) );
+		else
+		{
+			final InternedSet< T >[] sets = setsByIndex;
+			for ( int i = 0; i < size; ++i )
+				labelSets.add( sets[ i ] );
+		}
 		return labelSets;
 	}
 
@@ -258,25 +552,109 @@ public class LabelingMapping< T >
 		for ( int i = 1; i < numLabelSets; ++i )
 		{
 			final SortedInts set = asElementIds( labelSets.get( i ) );
-			if ( internedSets.get( set ) != null )
+			if ( indexOf( set ) >= 0 )
 				throw new IllegalArgumentException( "no duplicates allowed in list of label-sets" );
 			intern( set );
 		}
+	}
+
+	/**
+	 * Replaces the current label mapping with a mapping where index {@code 0}
+	 * is the empty set and index {@code i} is the singleton set of
+	 * {@code labels.get( i - 1 )}, that is, the mapping of an integer label
+	 * image.
+	 * <p>
+	 * The label sets are not created: They are represented implicitly until
+	 * they are needed, so this takes constant time and memory. Label sets
+	 * created later (for example, when a pixel is assigned several labels)
+	 * get indices {@code labels.size() + 1} and higher. The reverse lookup
+	 * from labels to indices (as required for {@link Set#contains(Object)}
+	 * and adding labels) is created when first used.
+	 * <p>
+	 * This requires a mapping that {@link #hasCompactLabelSets() stores label
+	 * sets compactly}.
+	 * <p>
+	 * WARNING: Like {@link #setLabelSets(List)}, this could easily result in a
+	 * malfunctioning {@link ImgLabeling}.
+	 *
+	 * @param labels
+	 *            The given list must not contain duplicates. This is only
+	 *            checked (throwing {@link IllegalArgumentException}) when the
+	 *            reverse lookup is created. The list must not be modified
+	 *            afterwards.
+	 */
+	public void setLabels( final List< T > labels )
+	{
+		setLabels( labels, null );
+	}
+
+	/**
+	 * Like {@link #setLabels(List)}, with a given reverse lookup
+	 * {@code indexOf} of {@code labels}, that returns {@code -1} for labels
+	 * that are not contained.
+	 */
+	void setLabels( final List< T > labels, final ToIntFunction< Object > indexOf )
+	{
+		if ( arena == null )
+			throw new IllegalStateException( "implicit label sets require compact label set storage" );
 
-		setsByIndex.trimToSize();
+		final int numLabels = labels.size();
+		checkNumSets( numLabels );
+		clearCacheMaps();
+		synchronized ( this )
+		{
+			++version;
+			arena.clear();
+			labelIdBimap = new LabelIdBimap<>( labels, indexOf );
+			numImplicitSets = numLabels + 1;
+		}
+		theEmptySet = intern( SortedInts.emptyList() );
 	}
 
 	private synchronized InternedSet< T > create( final SortedInts labelIds )
 	{
-		final int index = setsByIndex.size();
-		if ( index > maxNumLabelSets )
-			throw new AssertionError( String.format( "Too many labels (or types of multiply-labeled pixels): %d maximum", index ) );
+		final int index = numSets;
+		checkNumSets( index );
 
 		final InternedSet< T > internedSet = new InternedSet<>( this, labelIds, index );
-		setsByIndex.add( internedSet );
+		InternedSet< T >[] sets = setsByIndex;
+		if ( index == sets.length )
+		{
+			sets = Arrays.copyOf( sets, 2 * index );
+			setsByIndex = sets;
+		}
+		sets[ index ] = internedSet;
+		numSets = index + 1;
 		return internedSet;
 	}
 
+	/**
+	 * Add {@code labelIds} to the {@link #arena}, unless another thread did so
+	 * already.
+	 *
+	 * @return the index of the label set
+	 */
+	private synchronized int createCompact( final SortedInts labelIds )
+	{
+		final int existing = indexOf( labelIds );
+		if ( existing >= 0 )
+			return existing;
+		checkNumSets( numSets() );
+		return numImplicitSets + arena.add( labelIds );
+	}
+
+	private void checkNumSets( final int index )
+	{
+		if ( index > maxNumLabelSets )
+			throw new AssertionError( String.format( "Too many labels (or types of multiply-labeled pixels): %d maximum", index ) );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static < T > InternedSet< T >[] newSetsArray( final int capacity )
+	{
+		return new InternedSet[ capacity ];
+	}
+
 	private SortedInts asElementIds( final Set< T > labelSet )
 	{
 		final int[] values = new int[ labelSet.size() ];
@@ -290,11 +668,19 @@ public class LabelingMapping< T >
 	/**
 	 * Canonical representative for a label set. Contains the index to which the
 	 * label set is mapped.
+	 * <p>
+	 * If the {@link LabelingMapping} {@link #hasCompactLabelSets() stores label
+	 * sets compactly}, {@code InternedSet}s are flyweights that read the label
+	 * ids from the mapping.
 	 */
 	public static class InternedSet< T > extends AbstractCollection< T > implements Set< T >
 	{
 		private final LabelingMapping< T > container;
 
+		/**
+		 * The label ids of this set, or {@code null} if they are stored in the
+		 * {@link LabelingMapping#arena} (or the set is implicit).
+		 */
 		private final SortedInts labelIds;
 
 		final int index;
@@ -306,16 +692,34 @@ public class LabelingMapping< T >
 			this.index = index;
 		}
 
+		/**
+		 * Get the label ids of this set.
+		 */
+		SortedInts labelIds()
+		{
+			return labelIds != null ? labelIds : container.labelIdsAt( index );
+		}
+
+		boolean containsId( final int labelId )
+		{
+			return labelIds != null ? labelIds.contains( labelId ) : container.containsIdAt( index, labelId );
+		}
+
+		private int labelIdAt( final int i )
+		{
+			return labelIds != null ? labelIds.get( i ) : container.labelIdAt( index, i );
+		}
+
 		@Override
 		public int size()
 		{
-			return labelIds.size();
+			return labelIds != null ? labelIds.size() : container.sizeAt( index );
 		}
 
 		@Override
 		public boolean isEmpty()
 		{
-			return labelIds.isEmpty();
+			return size() == 0;
 		}
 
 		@Override
@@ -331,7 +735,7 @@ public class LabelingMapping< T >
 		public boolean equals( final Object obj )
 		{
 			if ( obj instanceof InternedSet && ( ( InternedSet ) obj ).container == container )
-				return obj == this;
+				return labelIds != null ? obj == this : ( ( InternedSet ) obj ).index == index;
 			return equalsSet( obj );
 		}
 
@@ -356,7 +760,7 @@ public class LabelingMapping< T >
 			final int labelId = container.labelIdBimap.getIdIfExists( o );
 			if ( labelId == LabelIdBimap.NO_ENTRY_VALUE )
 				return false;
-			return labelIds.contains( labelId );
+			return containsId( labelId );
 		}
 
 		@Override
@@ -369,16 +773,18 @@ public class LabelingMapping< T >
 		{
 			private int i = 0;
 
+			private final int size = size();
+
 			@Override
 			public boolean hasNext()
 			{
-				return i < labelIds.size();
+				return i < size;
 			}
 
 			@Override
 			public T next()
 			{
-				return container.labelIdBimap.getLabel( labelIds.get( i++ ) );
+				return container.labelIdBimap.getLabel( labelIdAt( i++ ) );
 			}
 		}
 	}
@@ -459,7 +865,7 @@ public class LabelingMapping< T >
 			else
 			{
 				// update triple
-				final SortedInts labelIds = setAtIndex( index ).labelIds;
+				final SortedInts labelIds = setAtIndex( index ).labelIds();
 				final int labelId = labelIdBimap.getId( label );
 				final SortedInts newLabelIds = labelIds.copyAndAdd( labelId );
 				final int toIndex = newLabelIds == labelIds ? index : intern( newLabelIds ).index;
@@ -478,7 +884,7 @@ public class LabelingMapping< T >
 			else
 			{
 				// update triple
-				final SortedInts labelIds = setAtIndex( index ).labelIds;
+				final SortedInts labelIds = setAtIndex( index ).labelIds();
 				final int labelId = labelIdBimap.getId( label );
 				final SortedInts newLabelIds = labelIds.copyAndRemove( labelId );
 				final int toIndex = newLabelIds == labelIds ? index : intern( newLabelIds ).index;
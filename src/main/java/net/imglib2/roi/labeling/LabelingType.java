@@ -37,6 +37,7 @@ package net.imglib2.roi.labeling;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import net.imglib2.labeling.LabelingROIStrategy;
 import net.imglib2.type.Type;
@@ -55,9 +56,25 @@ import net.imglib2.type.numeric.IntegerType;
  */
 public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 {
+	/**
+	 * Modification count of a labeling. This is safe to increment from
+	 * multiple threads concurrently. Increments are striped across threads (see
+	 * {@link LongAdder}), so that concurrent painting does not contend on a
+	 * single counter.
+	 */
 	protected static class ModCount
 	{
-		private int modCount = 0;
+		private final LongAdder modCount = new LongAdder();
+
+		void increment()
+		{
+			modCount.increment();
+		}
+
+		int get()
+		{
+			return ( int ) modCount.sum();
+		}
 	}
 
 	protected final ModCount generation;
@@ -91,6 +108,17 @@ public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 		this.type = type;
 	}
 
+	/**
+	 * Called whenever the label set at the current position was modified.
+	 * Increments the generation. Derived classes may override this to record
+	 * additional information about the modification, but must call
+	 * {@code super.modified()}.
+	 */
+	protected void modified()
+	{
+		generation.increment();
+	}
+
 	@Override
 	public void set( final LabelingType< T > c )
 	{
@@ -98,7 +126,7 @@ public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 			type.setInteger( c.type.getInteger() );
 		else
 			type.setInteger( mapping.intern( c ).index );
-		generation.modCount++;
+		modified();
 	}
 
 	/**
@@ -145,7 +173,7 @@ public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 	 */
 	public int getGeneration()
 	{
-		return generation.modCount;
+		return generation.get();
 	}
 
 	public LabelingMapping< T > getMapping()
@@ -176,7 +204,7 @@ public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 		if ( newindex == index )
 			return false;
 		type.setInteger( newindex );
-		generation.modCount++;
+		modified();
 		return true;
 	}
 
@@ -190,7 +218,7 @@ public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 		if ( newindex == index )
 			return false;
 		type.setInteger( newindex );
-		generation.modCount++;
+		modified();
 		return true;
 	}
 
@@ -202,7 +230,7 @@ public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 		if ( newindex != index )
 		{
 			type.setInteger( newindex );
-			generation.modCount++;
+			modified();
 		}
 	}
 
@@ -244,7 +272,7 @@ public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 		if ( newindex == index )
 			return false;
 		type.setInteger( newindex );
-		generation.modCount++;
+		modified();
 		return true;
 	}
 
@@ -259,7 +287,7 @@ public class LabelingType< T > implements Type< LabelingType< T > >, Set< T >
 		if ( newindex == index )
 			return false;
 		type.setInteger( newindex );
-		generation.modCount++;
+		modified();
 		return true;
 	}
 
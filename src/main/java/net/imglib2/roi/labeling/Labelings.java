@@ -40,10 +40,27 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
+import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.roi.MaskInterval;
+import net.imglib2.roi.Masks;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.Type;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
 /**
@@ -169,4 +186,212 @@ public class Labelings
 		}
 		return false;
 	}
+
+	/**
+	 * Get a view of {@code labeling} that is {@code true} for pixels whose
+	 * label set satisfies {@code predicate}. For example, for pixels having
+	 * label {@code a} but not label {@code b}:
+	 *
+	 * <pre>
+	 * {@code
+	 * Labelings.filter( labeling, s -> s.contains( a ) && !s.contains( b ) );
+	 * }
+	 * </pre>
+	 *
+	 * The predicate is evaluated only once per label set of the
+	 * {@link LabelingMapping}, and the results are stored in a lookup table
+	 * indexed by label set index. The view looks up the index of each pixel in
+	 * that table. The table is extended when label sets are added to the
+	 * mapping later.
+	 *
+	 * @param labeling
+	 *            The label image
+	 * @param predicate
+	 *            The predicate on label sets
+	 * @param <T>
+	 *            The type of labels assigned to pixels
+	 * @return a {@code RandomAccessibleInterval<BoolType>} view
+	 */
+	public static < T > RandomAccessibleInterval< BoolType > filter( final RandomAccessibleInterval< LabelingType< T > > labeling, final Predicate< ? super Set< T > > predicate )
+	{
+		final LabelSetPredicateLookup< T > lookup = new LabelSetPredicateLookup<>( getLabelingMapping( labeling ), predicate );
+		return convertIndices( labeling, ( i, b ) -> b.set( lookup.test( i ) ), new BoolType() );
+	}
+
+	/**
+	 * Get a {@link MaskInterval} that contains the pixels of {@code labeling}
+	 * whose label set satisfies {@code predicate}.
+	 *
+	 * @see #filter(RandomAccessibleInterval, Predicate)
+	 */
+	public static < T > MaskInterval filterMask( final RandomAccessibleInterval< LabelingType< T > > labeling, final Predicate< ? super Set< T > > predicate )
+	{
+		return Masks.toMaskInterval( filter( labeling, predicate ) );
+	}
+
+	/**
+	 * Get a view of {@code labeling} that maps each pixel to
+	 * {@code function.applyAsInt( labelSet )} of its label set. This can be
+	 * used to flatten a labeling into an integer label image.
+	 * <p>
+	 * The function is evaluated only once per label set of the
+	 * {@link LabelingMapping}, and the results are stored in a lookup table
+	 * indexed by label set index. The view looks up the index of each pixel in
+	 * that table. The table is extended when label sets are added to the
+	 * mapping later.
+	 *
+	 * @param labeling
+	 *            The label image
+	 * @param function
+	 *            The function of label sets
+	 * @param <T>
+	 *            The type of labels assigned to pixels
+	 * @return a {@code RandomAccessibleInterval<IntType>} view
+	 *
+	 * @see #materialize(RandomAccessibleInterval)
+	 */
+	public static < T > RandomAccessibleInterval< IntType > convertToInts( final RandomAccessibleInterval< LabelingType< T > > labeling, final ToIntFunction< ? super Set< T > > function )
+	{
+		final LabelSetLookup< T > lookup = new LabelSetLookup<>( getLabelingMapping( labeling ), function::applyAsInt );
+		return convertIndices( labeling, ( i, v ) -> v.set( ( int ) lookup.get( i ) ), new IntType() );
+	}
+
+	/**
+	 * Get a view of {@code labeling} that maps each pixel to
+	 * {@code function.applyAsLong( labelSet )} of its label set.
+	 *
+	 * @see #convertToInts(RandomAccessibleInterval, ToIntFunction)
+	 */
+	public static < T > RandomAccessibleInterval< LongType > convertToLongs( final RandomAccessibleInterval< LabelingType< T > > labeling, final ToLongFunction< ? super Set< T > > function )
+	{
+		final LabelSetLookup< T > lookup = new LabelSetLookup<>( getLabelingMapping( labeling ), function );
+		return convertIndices( labeling, ( i, v ) -> v.set( lookup.get( i ) ), new LongType() );
+	}
+
+	/**
+	 * Get a view of {@code labeling} that maps each pixel to the ARGB color
+	 * {@code function.applyAsInt( labelSet )} of its label set, for example
+	 * for display.
+	 *
+	 * @see #convertToInts(RandomAccessibleInterval, ToIntFunction)
+	 */
+	public static < T > RandomAccessibleInterval< ARGBType > convertToARGB( final RandomAccessibleInterval< LabelingType< T > > labeling, final ToIntFunction< ? super Set< T > > function )
+	{
+		final LabelSetLookup< T > lookup = new LabelSetLookup<>( getLabelingMapping( labeling ), function::applyAsInt );
+		return convertIndices( labeling, ( i, v ) -> v.set( ( int ) lookup.get( i ) ), new ARGBType() );
+	}
+
+	/**
+	 * Copy {@code view}, for example a view created by
+	 * {@link #convertToInts(RandomAccessibleInterval, ToIntFunction)}, into a
+	 * new {@link ArrayImg}. If called within
+	 * {@link net.imglib2.parallel.Parallelization#runMultiThreaded(Runnable)},
+	 * the view is copied in parallel.
+	 *
+	 * @param view
+	 *            The image to copy
+	 * @param <V>
+	 *            The pixel type
+	 * @return a new {@link ArrayImg} with the dimensions of {@code view}
+	 *         (translated to the origin)
+	 */
+	public static < V extends NativeType< V > > ArrayImg< V, ? > materialize( final RandomAccessibleInterval< V > view )
+	{
+		final V type = Util.getTypeFromInterval( view ).createVariable();
+		final ArrayImg< V, ? > img = new ArrayImgFactory<>( type ).create( view );
+		LoopBuilder.setImages( Views.zeroMin( view ), img ).multiThreaded().forEachPixel( ( s, t ) -> t.set( s ) );
+		return img;
+	}
+
+	/**
+	 * Functional interface for converting label set indices.
+	 */
+	private interface IndexConverter< V >
+	{
+		void convert( int index, V output );
+	}
+
+	/**
+	 * Convert {@code labeling} by applying {@code converter} to the label set
+	 * index of each pixel. For an {@link ImgLabeling} the index image is
+	 * converted directly.
+	 */
+	private static < T, V extends Type< V > > RandomAccessibleInterval< V > convertIndices( final RandomAccessibleInterval< LabelingType< T > > labeling, final IndexConverter< V > converter, final V type )
+	{
+		if ( labeling instanceof ImgLabeling )
+			return convertIndexImg( ( ImgLabeling< T, ? > ) labeling, converter, type );
+		return Converters.convert( labeling, ( t, v ) -> converter.convert( t.getIndex().getInteger(), v ), type );
+	}
+
+	private static < I extends IntegerType< I >, V extends Type< V > > RandomAccessibleInterval< V > convertIndexImg( final ImgLabeling< ?, I > labeling, final IndexConverter< V > converter, final V type )
+	{
+		return Converters.convert( labeling.getIndexImg(), ( i, v ) -> converter.convert( i.getInteger(), v ), type );
+	}
+
+	/**
+	 * Add {@code label} to all pixels of {@code region} in {@code labeling}.
+	 * <p>
+	 * This is much faster than adding the label pixel by pixel through
+	 * {@link LabelingType#add(Object)}: For each label set occurring in the
+	 * region, the index of the label set with {@code label} added is computed
+	 * only once. New indices are then written directly into the index image.
+	 * If called within
+	 * {@link net.imglib2.parallel.Parallelization#runMultiThreaded(Runnable)},
+	 * the region is painted in parallel.
+	 *
+	 * @param labeling
+	 *            The image labeling to paint into
+	 * @param region
+	 *            The pixels to paint, for example a {@link LabelRegion}. Must
+	 *            be contained in {@code labeling}.
+	 * @param label
+	 *            The label to add
+	 * @param <T>
+	 *            The type of labels assigned to pixels
+	 */
+	public static < T > void paint( final ImgLabeling< T, ? > labeling, final IterableInterval< Void > region, final T label )
+	{
+		labeling.paint( region, label, true );
+	}
+
+	/**
+	 * Add {@code label} to all pixels of {@code mask} in {@code labeling}.
+	 *
+	 * @see #paint(ImgLabeling, IterableInterval, Object)
+	 */
+	public static < T > void paint( final ImgLabeling< T, ? > labeling, final MaskInterval mask, final T label )
+	{
+		paint( labeling, Masks.toIterableRegion( mask ), label );
+	}
+
+	/**
+	 * Remove {@code label} from all pixels of {@code region} in
+	 * {@code labeling}.
+	 *
+	 * @param labeling
+	 *            The image labeling to erase from
+	 * @param region
+	 *            The pixels to erase, for example a {@link LabelRegion}. Must
+	 *            be contained in {@code labeling}.
+	 * @param label
+	 *            The label to remove
+	 * @param <T>
+	 *            The type of labels assigned to pixels
+	 *
+	 * @see #paint(ImgLabeling, IterableInterval, Object)
+	 */
+	public static < T > void erase( final ImgLabeling< T, ? > labeling, final IterableInterval< Void > region, final T label )
+	{
+		labeling.paint( region, label, false );
+	}
+
+	/**
+	 * Remove {@code label} from all pixels of {@code mask} in {@code labeling}.
+	 *
+	 * @see #erase(ImgLabeling, IterableInterval, Object)
+	 */
+	public static < T > void erase( final ImgLabeling< T, ? > labeling, final MaskInterval mask, final T label )
+	{
+		erase( labeling, Masks.toIterableRegion( mask ), label );
+	}
 }
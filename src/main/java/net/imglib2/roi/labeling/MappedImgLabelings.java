@@ -0,0 +1,661 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.basictypeaccess.ByteAccess;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.ShortAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.CellImg;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.list.ListImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Save {@link ImgLabeling}s to a directory, and open them again as
+ * memory-mapped {@link ImgLabeling}s.
+ * <p>
+ * The directory contains two files:
+ * <ul>
+ * <li>{@value #INDEX_FILE}: the raw index image, in flat iteration order, as
+ * little-endian values of the index type.</li>
+ * <li>{@value #HEADER_FILE}: the dimensions, the index type, and the label
+ * sets of the {@link LabelingMapping}, written by a {@link DataOutputStream}.
+ * The labels must be {@link Integer}, {@link Long}, {@link Short},
+ * {@link Byte}, {@link Character}, or {@link String}. (Arbitrary objects are
+ * not supported, because deserializing them from a shared file would be
+ * unsafe.)</li>
+ * </ul>
+ * <p>
+ * {@link #open(Path, boolean)} does not read the index image onto the heap.
+ * The index file is memory-mapped in slabs of hyperplanes along the last
+ * dimension, and the slabs are used as cells of a {@link CellImg}. Opening is
+ * therefore fast even for very large labelings, and several processes opening
+ * the same labeling share the pages of the file. A single hyperplane must
+ * contain less than {@code 2^31} bytes.
+ */
+public class MappedImgLabelings
+{
+	static final String INDEX_FILE = "index.raw";
+
+	static final String HEADER_FILE = "labeling.header";
+
+	private static final int FORMAT_VERSION = 2;
+
+	/**
+	 * Maximum number of bytes in a mapped slab.
+	 */
+	private static final long MAX_SLAB_BYTES = 1L << 30;
+
+	private MappedImgLabelings()
+	{}
+
+	/**
+	 * Supported index types, and their codes in the header file.
+	 */
+	private enum IndexType
+	{
+		UINT8( UnsignedByteType.class, 1 ),
+		INT8( ByteType.class, 1 ),
+		UINT16( UnsignedShortType.class, 2 ),
+		INT16( ShortType.class, 2 ),
+		UINT32( UnsignedIntType.class, 4 ),
+		INT32( IntType.class, 4 ),
+		INT64( LongType.class, 8 );
+
+		final Class< ? > typeClass;
+
+		final int bytesPerPixel;
+
+		IndexType( final Class< ? > typeClass, final int bytesPerPixel )
+		{
+			this.typeClass = typeClass;
+			this.bytesPerPixel = bytesPerPixel;
+		}
+
+		static IndexType of( final IntegerType< ? > type )
+		{
+			for ( final IndexType indexType : values() )
+				if ( indexType.typeClass == type.getClass() )
+					return indexType;
+			throw new IllegalArgumentException( "unsupported index type " + type.getClass().getName() );
+		}
+	}
+
+	/**
+	 * Supported label types, and their codes in the header file.
+	 */
+	private enum LabelType
+	{
+		INTEGER( Integer.class ),
+		LONG( Long.class ),
+		SHORT( Short.class ),
+		BYTE( Byte.class ),
+		CHARACTER( Character.class ),
+		STRING( String.class );
+
+		final Class< ? > labelClass;
+
+		LabelType( final Class< ? > labelClass )
+		{
+			this.labelClass = labelClass;
+		}
+
+		static LabelType of( final Object label )
+		{
+			for ( final LabelType labelType : values() )
+				if ( labelType.labelClass == label.getClass() )
+					return labelType;
+			throw new IllegalArgumentException( "unsupported label type " + label.getClass().getName() );
+		}
+
+		void write( final DataOutputStream out, final Object label ) throws IOException
+		{
+			out.writeByte( ordinal() );
+			switch ( this )
+			{
+			case INTEGER:
+				out.writeInt( ( Integer ) label );
+				break;
+			case LONG:
+				out.writeLong( ( Long ) label );
+				break;
+			case SHORT:
+				out.writeShort( ( Short ) label );
+				break;
+			case BYTE:
+				out.writeByte( ( Byte ) label );
+				break;
+			case CHARACTER:
+				out.writeChar( ( Character ) label );
+				break;
+			case STRING:
+				out.writeUTF( ( String ) label );
+				break;
+			}
+		}
+
+		static Object read( final DataInputStream in ) throws IOException
+		{
+			final int code = in.readUnsignedByte();
+			if ( code >= values().length )
+				throw new IOException( "unknown label type " + code );
+			switch ( values()[ code ] )
+			{
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case SHORT:
+				return in.readShort();
+			case BYTE:
+				return in.readByte();
+			case CHARACTER:
+				return in.readChar();
+			case STRING:
+			default:
+				return in.readUTF();
+			}
+		}
+	}
+
+	/**
+	 * Save {@code labeling} to {@code directory}, which is created if it does
+	 * not exist. Existing files are overwritten. The index image must be of
+	 * {@link UnsignedByteType}, {@link ByteType}, {@link UnsignedShortType},
+	 * {@link ShortType}, {@link UnsignedIntType}, {@link IntType}, or
+	 * {@link LongType}. The labels must be {@link Integer}, {@link Long},
+	 * {@link Short}, {@link Byte}, {@link Character}, or {@link String};
+	 * otherwise an {@link IllegalArgumentException} is thrown before anything
+	 * is written.
+	 * <p>
+	 * Do not save into the directory that a labeling was
+	 * {@link #open(Path, boolean) opened} from. To persist new label sets of a
+	 * writable opened labeling, use {@link #saveLabelSets(ImgLabeling, Path)}.
+	 */
+	public static < T, I extends IntegerType< I > > void save( final ImgLabeling< T, I > labeling, final Path directory ) throws IOException
+	{
+		final RandomAccessibleInterval< I > indexImg = labeling.getIndexImg();
+		final IndexType indexType = IndexType.of( Views.iterable( indexImg ).firstElement() );
+
+		Files.createDirectories( directory );
+		writeHeader( directory, Intervals.dimensionsAsLongArray( labeling ), indexType, labeling.getMapping() );
+		try (final FileChannel channel = FileChannel.open( directory.resolve( INDEX_FILE ),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ))
+		{
+			final ByteBuffer buffer = ByteBuffer.allocateDirect( 1 << 20 ).order( ByteOrder.LITTLE_ENDIAN );
+			for ( final I t : Views.flatIterable( indexImg ) )
+			{
+				if ( buffer.remaining() < indexType.bytesPerPixel )
+					flush( buffer, channel );
+				switch ( indexType )
+				{
+				case UINT8:
+				case INT8:
+					buffer.put( ( byte ) t.getInteger() );
+					break;
+				case UINT16:
+				case INT16:
+					buffer.putShort( ( short ) t.getInteger() );
+					break;
+				case UINT32:
+				case INT32:
+					buffer.putInt( t.getInteger() );
+					break;
+				case INT64:
+					buffer.putLong( t.getIntegerLong() );
+					break;
+				}
+			}
+			flush( buffer, channel );
+		}
+	}
+
+	/**
+	 * Update the label sets saved in {@code directory} to the current
+	 * {@link LabelingMapping} of {@code labeling}. This is used to persist
+	 * modifications of a labeling that was {@link #open(Path, boolean) opened}
+	 * writable from {@code directory}. (Modifications of the index image go
+	 * directly to the file.)
+	 */
+	public static < T, I extends IntegerType< I > > void saveLabelSets( final ImgLabeling< T, I > labeling, final Path directory ) throws IOException
+	{
+		final Header header = readHeader( directory );
+		final IndexType indexType = IndexType.of( Views.iterable( labeling.getIndexImg() ).firstElement() );
+		if ( indexType != header.indexType || !Arrays.equals( Intervals.dimensionsAsLongArray( labeling ), header.dimensions ) )
+			throw new IllegalArgumentException( "labeling does not match the labeling saved in " + directory );
+		writeHeader( directory, header.dimensions, indexType, labeling.getMapping() );
+	}
+
+	/**
+	 * Open the labeling saved in {@code directory} read-only. The index image
+	 * is memory-mapped. Trying to modify the labeling throws a
+	 * {@link java.nio.ReadOnlyBufferException}.
+	 */
+	public static < T > ImgLabeling< T, ? > open( final Path directory ) throws IOException
+	{
+		return open( directory, false );
+	}
+
+	/**
+	 * Open the labeling saved in {@code directory}. The index image is
+	 * memory-mapped.
+	 * <p>
+	 * The header is validated when opening, but the index values are not
+	 * (that would require reading the whole index file). If the index file
+	 * contains values that are not label set indices of the header, accessing
+	 * these pixels fails with an {@link IndexOutOfBoundsException}.
+	 *
+	 * @param writable
+	 *            if {@code true}, the index file is mapped read-write, and
+	 *            modifications of the labeling are written to the file. Use
+	 *            {@link #saveLabelSets(ImgLabeling, Path)} to persist new label
+	 *            sets.
+	 */
+	public static < T > ImgLabeling< T, ? > open( final Path directory, final boolean writable ) throws IOException
+	{
+		return open( directory, writable, MAX_SLAB_BYTES );
+	}
+
+	/**
+	 * Open the labeling saved in {@code directory}, mapping slabs of at most
+	 * {@code maxSlabBytes} (but at least one hyperplane).
+	 */
+	static < T > ImgLabeling< T, ? > open( final Path directory, final boolean writable, final long maxSlabBytes ) throws IOException
+	{
+		final Header header = readHeader( directory );
+		final long[] dimensions = header.dimensions;
+		final int n = dimensions.length;
+		final int bytesPerPixel = header.indexType.bytesPerPixel;
+
+		// slabs of hyperplanes along the last dimension
+		long hyperplaneSize = bytesPerPixel;
+		for ( int d = 0; d < n - 1; ++d )
+			hyperplaneSize *= dimensions[ d ];
+		if ( hyperplaneSize > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "hyperplanes of " + directory + " are too large to be mapped" );
+		final int[] cellDimensions = new int[ n ];
+		for ( int d = 0; d < n - 1; ++d )
+			cellDimensions[ d ] = ( int ) dimensions[ d ];
+		cellDimensions[ n - 1 ] = ( int ) Math.max( 1, Math.min( dimensions[ n - 1 ], maxSlabBytes / hyperplaneSize ) );
+		final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+
+		final List< ByteBuffer > buffers = new ArrayList<>();
+		try (final FileChannel channel = FileChannel.open( directory.resolve( INDEX_FILE ),
+				writable
+						? new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE }
+						: new StandardOpenOption[] { StandardOpenOption.READ } ))
+		{
+			final long expectedSize = hyperplaneSize * dimensions[ n - 1 ];
+			if ( channel.size() != expectedSize )
+				throw new IOException( "expected " + expectedSize + " bytes in " + directory.resolve( INDEX_FILE ) + ", found " + channel.size() );
+			final MapMode mode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
+			for ( long z = 0; z < dimensions[ n - 1 ]; z += cellDimensions[ n - 1 ] )
+			{
+				final long size = hyperplaneSize * Math.min( cellDimensions[ n - 1 ], dimensions[ n - 1 ] - z );
+				buffers.add( channel.map( mode, hyperplaneSize * z, size ).order( ByteOrder.LITTLE_ENDIAN ) );
+			}
+		}
+
+		final ImgLabeling< T, ? > labeling = createLabeling( header.indexType, grid, buffers );
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		final List< Set< T > > labelSets = ( List ) header.labelSets;
+		labeling.getMapping().setLabelSets( labelSets );
+		return labeling;
+	}
+
+	private static void flush( final ByteBuffer buffer, final FileChannel channel ) throws IOException
+	{
+		buffer.flip();
+		while ( buffer.hasRemaining() )
+			channel.write( buffer );
+		buffer.clear();
+	}
+
+	private static class Header
+	{
+		final long[] dimensions;
+
+		final IndexType indexType;
+
+		final List< Set< Object > > labelSets;
+
+		Header( final long[] dimensions, final IndexType indexType, final List< Set< Object > > labelSets )
+		{
+			this.dimensions = dimensions;
+			this.indexType = indexType;
+			this.labelSets = labelSets;
+		}
+	}
+
+	/**
+	 * Write the header file. Labels are written once, and label sets as lists
+	 * of label ids.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the mapping contains labels of an unsupported type. In
+	 *             this case, nothing is written.
+	 */
+	private static void writeHeader( final Path directory, final long[] dimensions, final IndexType indexType, final LabelingMapping< ? > mapping ) throws IOException
+	{
+		final List< ? extends Set< ? > > labelSets = mapping.getLabelSets();
+		final Map< Object, Integer > labelIds = new HashMap<>();
+		final List< Object > labels = new ArrayList<>();
+		final List< LabelType > labelTypes = new ArrayList<>();
+		for ( final Set< ? > labelSet : labelSets )
+			for ( final Object label : labelSet )
+				if ( !labelIds.containsKey( label ) )
+				{
+					labelTypes.add( LabelType.of( label ) );
+					labelIds.put( label, labels.size() );
+					labels.add( label );
+				}
+
+		try (final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( directory.resolve( HEADER_FILE ) ) ) ))
+		{
+			out.writeInt( FORMAT_VERSION );
+			out.writeInt( dimensions.length );
+			for ( final long d : dimensions )
+				out.writeLong( d );
+			out.writeUTF( indexType.name() );
+			out.writeInt( labels.size() );
+			for ( int i = 0; i < labels.size(); ++i )
+				labelTypes.get( i ).write( out, labels.get( i ) );
+			out.writeInt( labelSets.size() );
+			for ( final Set< ? > labelSet : labelSets )
+			{
+				out.writeInt( labelSet.size() );
+				for ( final Object label : labelSet )
+					out.writeInt( labelIds.get( label ) );
+			}
+		}
+	}
+
+	private static Header readHeader( final Path directory ) throws IOException
+	{
+		final Path file = directory.resolve( HEADER_FILE );
+		try (final DataInputStream in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file ) ) ))
+		{
+			final int version = in.readInt();
+			if ( version != FORMAT_VERSION )
+				throw new IOException( "unsupported format version " + version + " in " + file );
+			final int n = in.readInt();
+			if ( n < 1 )
+				throw new IOException( "invalid number of dimensions " + n + " in " + file );
+			final long[] dimensions = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				dimensions[ d ] = in.readLong();
+				if ( dimensions[ d ] < 1 )
+					throw new IOException( "invalid dimensions in " + file );
+			}
+			final IndexType indexType = IndexType.valueOf( in.readUTF() );
+			final int numLabels = in.readInt();
+			if ( numLabels < 0 )
+				throw new IOException( "invalid number of labels " + numLabels + " in " + file );
+			final List< Object > labels = new ArrayList<>();
+			for ( int i = 0; i < numLabels; ++i )
+				labels.add( LabelType.read( in ) );
+			final int numSets = in.readInt();
+			if ( numSets < 1 )
+				throw new IOException( "invalid number of label sets " + numSets + " in " + file );
+			final List< Set< Object > > labelSets = new ArrayList<>();
+			final Set< Set< Object > > distinctSets = new HashSet<>();
+			for ( int i = 0; i < numSets; ++i )
+			{
+				final int size = in.readInt();
+				if ( size < 0 || size > numLabels )
+					throw new IOException( "invalid label set size " + size + " in " + file );
+				final Set< Object > labelSet = new HashSet<>();
+				for ( int j = 0; j < size; ++j )
+				{
+					final int id = in.readInt();
+					if ( id < 0 || id >= numLabels )
+						throw new IOException( "invalid label id " + id + " in " + file );
+					labelSet.add( labels.get( id ) );
+				}
+				if ( i == 0 && !labelSet.isEmpty() )
+					throw new IOException( "first label set is not empty in " + file );
+				if ( !distinctSets.add( labelSet ) )
+					throw new IOException( "duplicate label set " + labelSet + " in " + file );
+				labelSets.add( labelSet );
+			}
+			return new Header( dimensions, indexType, labelSets );
+		}
+		catch ( final IllegalArgumentException e )
+		{
+			throw new IOException( "cannot read " + file, e );
+		}
+	}
+
+	private static < T > ImgLabeling< T, ? > createLabeling( final IndexType indexType, final CellGrid grid, final List< ByteBuffer > buffers )
+	{
+		switch ( indexType )
+		{
+		case UINT8:
+		{
+			final CellImg< UnsignedByteType, ByteAccess > img = createImg( grid, buffers, MappedByteAccess::new, new UnsignedByteType() );
+			img.setLinkedType( new UnsignedByteType( img ) );
+			return new ImgLabeling<>( img );
+		}
+		case INT8:
+		{
+			final CellImg< ByteType, ByteAccess > img = createImg( grid, buffers, MappedByteAccess::new, new ByteType() );
+			img.setLinkedType( new ByteType( img ) );
+			return new ImgLabeling<>( img );
+		}
+		case UINT16:
+		{
+			final CellImg< UnsignedShortType, ShortAccess > img = createImg( grid, buffers, MappedShortAccess::new, new UnsignedShortType() );
+			img.setLinkedType( new UnsignedShortType( img ) );
+			return new ImgLabeling<>( img );
+		}
+		case INT16:
+		{
+			final CellImg< ShortType, ShortAccess > img = createImg( grid, buffers, MappedShortAccess::new, new ShortType() );
+			img.setLinkedType( new ShortType( img ) );
+			return new ImgLabeling<>( img );
+		}
+		case UINT32:
+		{
+			final CellImg< UnsignedIntType, IntAccess > img = createImg( grid, buffers, MappedIntAccess::new, new UnsignedIntType() );
+			img.setLinkedType( new UnsignedIntType( img ) );
+			return new ImgLabeling<>( img );
+		}
+		case INT32:
+		{
+			final CellImg< IntType, IntAccess > img = createImg( grid, buffers, MappedIntAccess::new, new IntType() );
+			img.setLinkedType( new IntType( img ) );
+			return new ImgLabeling<>( img );
+		}
+		case INT64:
+		default:
+		{
+			final CellImg< LongType, LongAccess > img = createImg( grid, buffers, MappedLongAccess::new, new LongType() );
+			img.setLinkedType( new LongType( img ) );
+			return new ImgLabeling<>( img );
+		}
+		}
+	}
+
+	/**
+	 * Create a {@link CellImg} with one cell per slab {@code buffer}. The
+	 * linked type must be set by the caller.
+	 */
+	private static < T extends NativeType< T >, A > CellImg< T, A > createImg(
+			final CellGrid grid,
+			final List< ByteBuffer > buffers,
+			final Function< ByteBuffer, ? extends A > createAccess,
+			final T type )
+	{
+		final int n = grid.numDimensions();
+		final int[] cellDimensions = new int[ n ];
+		grid.cellDimensions( cellDimensions );
+		final long[] cellMin = new long[ n ];
+		final int[] cellDims = new int[ n ];
+		final long[] gridPosition = new long[ n ];
+		final List< Cell< A > > cells = new ArrayList<>( buffers.size() );
+		for ( int i = 0; i < buffers.size(); ++i )
+		{
+			gridPosition[ n - 1 ] = i;
+			grid.getCellDimensions( gridPosition, cellMin, cellDims );
+			cells.add( new Cell<>( cellDims.clone(), cellMin.clone(), createAccess.apply( buffers.get( i ) ) ) );
+		}
+		final ListImg< Cell< A > > cellList = new ListImg<>( cells, grid.getGridDimensions() );
+		return new CellImg<>( new CellImgFactory<>( type, cellDimensions ), grid, cellList, new Fraction() );
+	}
+
+	static final class MappedByteAccess implements ByteAccess
+	{
+		private final ByteBuffer buffer;
+
+		MappedByteAccess( final ByteBuffer buffer )
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public byte getValue( final int index )
+		{
+			return buffer.get( index );
+		}
+
+		@Override
+		public void setValue( final int index, final byte value )
+		{
+			buffer.put( index, value );
+		}
+	}
+
+	static final class MappedShortAccess implements ShortAccess
+	{
+		private final ByteBuffer buffer;
+
+		MappedShortAccess( final ByteBuffer buffer )
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public short getValue( final int index )
+		{
+			return buffer.getShort( index << 1 );
+		}
+
+		@Override
+		public void setValue( final int index, final short value )
+		{
+			buffer.putShort( index << 1, value );
+		}
+	}
+
+	static final class MappedIntAccess implements IntAccess
+	{
+		private final ByteBuffer buffer;
+
+		MappedIntAccess( final ByteBuffer buffer )
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int getValue( final int index )
+		{
+			return buffer.getInt( index << 2 );
+		}
+
+		@Override
+		public void setValue( final int index, final int value )
+		{
+			buffer.putInt( index << 2, value );
+		}
+	}
+
+	static final class MappedLongAccess implements LongAccess
+	{
+		private final ByteBuffer buffer;
+
+		MappedLongAccess( final ByteBuffer buffer )
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public long getValue( final int index )
+		{
+			return buffer.getLong( index << 3 );
+		}
+
+		@Override
+		public void setValue( final int index, final long value )
+		{
+			buffer.putLong( index << 3, value );
+		}
+	}
+}
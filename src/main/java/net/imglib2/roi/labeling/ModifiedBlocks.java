@@ -0,0 +1,223 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+
+/**
+ * Records, for each block of an {@link ImgLabeling}, the epoch at which a pixel
+ * in the block was last modified. This allows caches such as
+ * {@link LabelRegions} to find out which parts of the labeling changed since
+ * they were computed: A cache starts a {@link #newEpoch() new epoch} before it
+ * is computed, and later asks for the blocks {@link #getModifiedSince(int)
+ * modified since} that epoch.
+ * <p>
+ * The labeling is divided into blocks of size {@code 2^blockBits} in every
+ * dimension. {@code blockBits} is chosen such that the number of blocks stays
+ * bounded.
+ * <p>
+ * Marking blocks as modified may happen concurrently from multiple threads.
+ * It only reads the shared epoch counter, and only writes a block stamp if it
+ * changes. Concurrently modifying the labeling and querying modified blocks
+ * has undefined results.
+ */
+final class ModifiedBlocks
+{
+	private static final int DEFAULT_BLOCK_BITS = 5;
+
+	private static final long MAX_NUM_BLOCKS = 1 << 22;
+
+	private final int n;
+
+	private final long[] min;
+
+	private final long[] max;
+
+	private final int blockBits;
+
+	private final int[] strides;
+
+	/**
+	 * For each block, the epoch at which it was last modified.
+	 */
+	private final int[] modifiedAt;
+
+	private final AtomicInteger epoch = new AtomicInteger();
+
+	ModifiedBlocks( final Interval interval )
+	{
+		n = interval.numDimensions();
+		min = new long[ n ];
+		max = new long[ n ];
+		interval.min( min );
+		interval.max( max );
+
+		int bits = DEFAULT_BLOCK_BITS;
+		while ( countBlocks( interval, bits ) > MAX_NUM_BLOCKS )
+			++bits;
+		blockBits = bits;
+
+		strides = new int[ n ];
+		int stride = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			strides[ d ] = stride;
+			stride *= ( ( interval.dimension( d ) - 1 ) >> blockBits ) + 1;
+		}
+		modifiedAt = new int[ stride ];
+	}
+
+	private static long countBlocks( final Interval interval, final int blockBits )
+	{
+		long numBlocks = 1;
+		for ( int d = 0; d < interval.numDimensions(); ++d )
+			numBlocks *= ( ( interval.dimension( d ) - 1 ) >> blockBits ) + 1;
+		return numBlocks;
+	}
+
+	/**
+	 * Start a new epoch.
+	 *
+	 * @return the new epoch. Blocks modified after this call are reported by
+	 *         {@link #getModifiedSince(int)} for the returned value.
+	 */
+	int newEpoch()
+	{
+		return epoch.incrementAndGet();
+	}
+
+	/**
+	 * Record that the pixel at {@code position} was modified in the current
+	 * epoch.
+	 */
+	void markModified( final Localizable position )
+	{
+		int i = 0;
+		for ( int d = 0; d < n; ++d )
+			i += ( ( position.getLongPosition( d ) - min[ d ] ) >> blockBits ) * strides[ d ];
+		final int e = epoch.get();
+		if ( modifiedAt[ i ] != e )
+			modifiedAt[ i ] = e;
+	}
+
+	/**
+	 * Record that pixels in {@code interval} were modified in the current
+	 * epoch. All blocks intersecting {@code interval} are marked.
+	 */
+	void markModified( final Interval interval )
+	{
+		final long[] gridMin = new long[ n ];
+		final long[] gridMax = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			gridMin[ d ] = ( Math.max( interval.min( d ), min[ d ] ) - min[ d ] ) >> blockBits;
+			gridMax[ d ] = ( Math.min( interval.max( d ), max[ d ] ) - min[ d ] ) >> blockBits;
+			if ( gridMax[ d ] < gridMin[ d ] )
+				return;
+		}
+		final int e = epoch.get();
+		final long[] gridPos = gridMin.clone();
+		while ( true )
+		{
+			int i = 0;
+			for ( int d = 0; d < n; ++d )
+				i += gridPos[ d ] * strides[ d ];
+			modifiedAt[ i ] = e;
+
+			int d = 0;
+			for ( ; d < n; ++d )
+			{
+				if ( ++gridPos[ d ] <= gridMax[ d ] )
+					break;
+				gridPos[ d ] = gridMin[ d ];
+			}
+			if ( d == n )
+				break;
+		}
+	}
+
+	/**
+	 * Get the number of blocks that were modified in or after the given
+	 * {@code epoch}.
+	 */
+	int numModifiedSince( final int epoch )
+	{
+		int count = 0;
+		for ( final int e : modifiedAt )
+			if ( e - epoch >= 0 )
+				++count;
+		return count;
+	}
+
+	/**
+	 * Get the total number of blocks.
+	 */
+	int numBlocks()
+	{
+		return modifiedAt.length;
+	}
+
+	/**
+	 * Get the intervals of all blocks that were modified in or after the given
+	 * {@code epoch}. Border blocks are clipped to the labeling interval.
+	 */
+	List< Interval > getModifiedSince( final int epoch )
+	{
+		final List< Interval > blocks = new ArrayList<>();
+		final long[] blockMin = new long[ n ];
+		final long[] blockMax = new long[ n ];
+		for ( int i = 0; i < modifiedAt.length; ++i )
+		{
+			if ( modifiedAt[ i ] - epoch >= 0 )
+			{
+				int remainder = i;
+				for ( int d = n - 1; d >= 0; --d )
+				{
+					final long gridPos = remainder / strides[ d ];
+					remainder -= gridPos * strides[ d ];
+					blockMin[ d ] = min[ d ] + ( gridPos << blockBits );
+					blockMax[ d ] = Math.min( max[ d ], blockMin[ d ] + ( 1 << blockBits ) - 1 );
+				}
+				blocks.add( new FinalInterval( blockMin.clone(), blockMax.clone() ) );
+			}
+		}
+		return blocks;
+	}
+}
@@ -0,0 +1,686 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.ByteAccess;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.ShortAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.GenericByteType;
+import net.imglib2.type.numeric.integer.GenericIntType;
+import net.imglib2.type.numeric.integer.GenericLongType;
+import net.imglib2.type.numeric.integer.GenericShortType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Visits all pixels with non-zero index in an interval of an
+ * {@link ImgLabeling}, by reading the primitive arrays (or other
+ * {@link ByteAccess}, {@link ShortAccess}, {@link IntAccess}, or
+ * {@link LongAccess}) backing the index image directly. Runs of background
+ * (index 0) are skipped in tight loops over the arrays, without localizing
+ * pixels or going through {@link IntegerType}. For cell images, cells with
+ * primitive arrays that contain only background are skipped entirely.
+ * <p>
+ * Pixels are visited in flat iteration order.
+ * <p>
+ * Supported index images are {@link ArrayImg}, {@link PlanarImg}, and
+ * {@link AbstractCellImg}s of {@link GenericByteType}, {@link GenericShortType},
+ * {@link GenericIntType}, or {@link GenericLongType}. Use
+ * {@link #forLabeling(RandomAccessibleInterval)} to get a scanner, if the
+ * labeling is supported.
+ */
+abstract class NonZeroIndexScanner
+{
+	/**
+	 * Receives non-zero index values and their positions.
+	 */
+	interface Visitor
+	{
+		void accept( int index, Localizable position );
+	}
+
+	/**
+	 * Get a scanner for the given {@code labeling}.
+	 *
+	 * @return a scanner, or {@code null} if the labeling is not an
+	 *         {@link ImgLabeling} with supported index image.
+	 */
+	static NonZeroIndexScanner forLabeling( final RandomAccessibleInterval< ? > labeling )
+	{
+		if ( !( labeling instanceof ImgLabeling ) )
+			return null;
+
+		final RandomAccessibleInterval< ? extends IntegerType< ? > > img = ( ( ImgLabeling< ?, ? > ) labeling ).getIndexImg();
+		final IntegerType< ? > type = Views.iterable( img ).firstElement();
+		if ( !( type instanceof GenericByteType || type instanceof GenericShortType || type instanceof GenericIntType || type instanceof GenericLongType ) )
+			return null;
+		final boolean signed = type.getMinValue() < 0;
+
+		if ( img instanceof ArrayImg )
+			return new ArrayImgScanner( img, IndexArray.wrap( ( ( ArrayImg< ?, ? > ) img ).update( null ), signed ) );
+		else if ( img instanceof PlanarImg )
+		{
+			final PlanarImg< ?, ? > planarImg = ( PlanarImg< ?, ? > ) img;
+			final IndexArray[] planes = new IndexArray[ planarImg.numSlices() ];
+			for ( int i = 0; i < planes.length; ++i )
+				planes[ i ] = IndexArray.wrap( planarImg.getPlane( i ), signed );
+			return new PlanarImgScanner( img, planes );
+		}
+		else if ( img instanceof AbstractCellImg )
+			return new CellImgScanner( ( AbstractCellImg< ?, ?, ?, ? > ) img, signed );
+
+		return null;
+	}
+
+	/**
+	 * Visit all pixels with non-zero index in {@code interval}, in flat
+	 * iteration order.
+	 */
+	void scan( final Interval interval, final Visitor visitor )
+	{
+		if ( Intervals.isEmpty( interval ) )
+			return;
+
+		final int n = interval.numDimensions();
+		final long[] min = Intervals.minAsLongArray( interval );
+		final long[] max = Intervals.maxAsLongArray( interval );
+		final long[] pos = min.clone();
+		final Point point = Point.wrap( pos );
+		final LineScanner lineScanner = createLineScanner();
+		while ( true )
+		{
+			lineScanner.scanLine( pos, min[ 0 ], max[ 0 ], point, visitor );
+			int d = 1;
+			for ( ; d < n; ++d )
+			{
+				if ( ++pos[ d ] <= max[ d ] )
+					break;
+				pos[ d ] = min[ d ];
+			}
+			if ( d >= n )
+				break;
+		}
+	}
+
+	/**
+	 * Create a {@link LineScanner}. Each {@link #scan} uses its own
+	 * {@link LineScanner}, so that concurrent scans are possible.
+	 */
+	abstract LineScanner createLineScanner();
+
+	interface LineScanner
+	{
+		/**
+		 * Visit all non-zero pixels on the line from {@code minX} to
+		 * {@code maxX} (inclusive) at position {@code pos} in dimensions
+		 * {@code 1..n-1}. {@code point} wraps {@code pos}.
+		 */
+		void scanLine( long[] pos, long minX, long maxX, Localizable point, Visitor visitor );
+	}
+
+	static final class ArrayImgScanner extends NonZeroIndexScanner
+	{
+		private final IndexArray data;
+
+		private final long[] steps;
+
+		ArrayImgScanner( final Interval img, final IndexArray data )
+		{
+			this.data = data;
+			steps = new long[ img.numDimensions() ];
+			long step = 1;
+			for ( int d = 0; d < steps.length; ++d )
+			{
+				steps[ d ] = step;
+				step *= img.dimension( d );
+			}
+		}
+
+		@Override
+		LineScanner createLineScanner()
+		{
+			return ( pos, minX, maxX, point, visitor ) -> {
+				long offset = minX;
+				for ( int d = 1; d < steps.length; ++d )
+					offset += pos[ d ] * steps[ d ];
+				data.scanLine( ( int ) offset, ( int ) ( maxX - minX + 1 ), pos, minX, point, visitor );
+			};
+		}
+	}
+
+	static final class PlanarImgScanner extends NonZeroIndexScanner
+	{
+		private final IndexArray[] planes;
+
+		private final long width;
+
+		private final long[] planeSteps;
+
+		PlanarImgScanner( final Interval img, final IndexArray[] planes )
+		{
+			this.planes = planes;
+			final int n = img.numDimensions();
+			width = img.dimension( 0 );
+			planeSteps = new long[ n ];
+			long step = 1;
+			for ( int d = 2; d < n; ++d )
+			{
+				planeSteps[ d ] = step;
+				step *= img.dimension( d );
+			}
+		}
+
+		@Override
+		LineScanner createLineScanner()
+		{
+			return ( pos, minX, maxX, point, visitor ) -> {
+				final long offset = planeSteps.length > 1 ? minX + pos[ 1 ] * width : minX;
+				long plane = 0;
+				for ( int d = 2; d < planeSteps.length; ++d )
+					plane += pos[ d ] * planeSteps[ d ];
+				planes[ ( int ) plane ].scanLine( ( int ) offset, ( int ) ( maxX - minX + 1 ), pos, minX, point, visitor );
+			};
+		}
+	}
+
+	static final class CellImgScanner extends NonZeroIndexScanner
+	{
+		private final AbstractCellImg< ?, ?, ?, ? > cellImg;
+
+		private final CellGrid grid;
+
+		private final boolean signed;
+
+		CellImgScanner( final AbstractCellImg< ?, ?, ?, ? > cellImg, final boolean signed )
+		{
+			this.cellImg = cellImg;
+			this.grid = cellImg.getCellGrid();
+			this.signed = signed;
+		}
+
+		@Override
+		LineScanner createLineScanner()
+		{
+			return new CellLineScanner();
+		}
+
+		/**
+		 * A cell together with its {@link IndexArray}.
+		 */
+		private static final class ScannedCell
+		{
+			final Cell< ? > cell;
+
+			final IndexArray data;
+
+			ScannedCell( final Cell< ? > cell, final IndexArray data )
+			{
+				this.cell = cell;
+				this.data = data;
+			}
+		}
+
+		/**
+		 * Scans lines cell by cell. Only the cells of the current cell row
+		 * (the cells intersecting the current line) are kept, because lines
+		 * are visited in flat iteration order and never return to a previous
+		 * cell row. This way, cells of a cached {@link AbstractCellImg} can be
+		 * evicted during the scan.
+		 */
+		private final class CellLineScanner implements LineScanner
+		{
+			private final int n = grid.numDimensions();
+
+			private final RandomAccess< ? extends Cell< ? > > cellAccess = cellImg.getCells().randomAccess();
+
+			private final long[] gridDimensions = grid.getGridDimensions();
+
+			private final long[] gridPos = new long[ n ];
+
+			/**
+			 * Grid index of the first cell (in dimension 0) of the current
+			 * cell row, or {@code -1} before the first line.
+			 */
+			private long rowGridIndex0 = -1;
+
+			/**
+			 * Grid position in dimension 0 of {@code rowCells[ 0 ]}.
+			 */
+			private long rowMinGridX;
+
+			/**
+			 * The non-empty cells of the current cell row that were visited
+			 * so far, indexed by grid position in dimension 0 minus
+			 * {@link #rowMinGridX}.
+			 */
+			private ScannedCell[] rowCells = new ScannedCell[ 0 ];
+
+			/**
+			 * Bit {@code i} is set if {@code rowCells[ i ]} contains only
+			 * background.
+			 */
+			private final BitSet rowEmpty = new BitSet();
+
+			@Override
+			public void scanLine( final long[] pos, final long minX, final long maxX, final Localizable point, final Visitor visitor )
+			{
+				long gridIndex0 = 0;
+				for ( int d = n - 1; d > 0; --d )
+				{
+					gridPos[ d ] = pos[ d ] / grid.cellDimension( d );
+					gridIndex0 = gridIndex0 * gridDimensions[ d ] + gridPos[ d ];
+				}
+
+				final int cellWidth = grid.cellDimension( 0 );
+				final long minGridX = minX / cellWidth;
+				final int rowLength = ( int ) ( maxX / cellWidth - minGridX + 1 );
+				if ( gridIndex0 != rowGridIndex0 || minGridX != rowMinGridX || rowLength != rowCells.length )
+				{
+					rowGridIndex0 = gridIndex0;
+					rowMinGridX = minGridX;
+					if ( rowLength == rowCells.length )
+						Arrays.fill( rowCells, null );
+					else
+						rowCells = new ScannedCell[ rowLength ];
+					rowEmpty.clear();
+				}
+
+				long x = minX;
+				while ( x <= maxX )
+				{
+					gridPos[ 0 ] = x / cellWidth;
+					final long segmentMax = Math.min( maxX, ( gridPos[ 0 ] + 1 ) * cellWidth - 1 );
+					final ScannedCell scanned = getScannedCell( ( int ) ( gridPos[ 0 ] - rowMinGridX ) );
+					if ( scanned != null )
+					{
+						pos[ 0 ] = x;
+						final int offset = scanned.cell.globalPositionToIndex( pos );
+						scanned.data.scanLine( offset, ( int ) ( segmentMax - x + 1 ), pos, x, point, visitor );
+					}
+					x = segmentMax + 1;
+				}
+			}
+
+			/**
+			 * Get the cell at {@code rowCells[ i ]} (at {@link #gridPos}),
+			 * or {@code null} if it contains only background.
+			 */
+			private ScannedCell getScannedCell( final int i )
+			{
+				if ( rowEmpty.get( i ) )
+					return null;
+				ScannedCell scanned = rowCells[ i ];
+				if ( scanned == null )
+				{
+					cellAccess.setPosition( gridPos );
+					final Cell< ? > cell = cellAccess.get();
+					final IndexArray data = IndexArray.wrap( cell.getData(), signed );
+					if ( data.isZero() )
+					{
+						rowEmpty.set( i );
+						return null;
+					}
+					scanned = new ScannedCell( cell, data );
+					rowCells[ i ] = scanned;
+				}
+				return scanned;
+			}
+		}
+	}
+
+	/**
+	 * Wraps a primitive array (or typed access) of index values.
+	 */
+	static abstract class IndexArray
+	{
+		/**
+		 * Visit all non-zero values at offsets {@code offset} to
+		 * {@code offset + length - 1}, corresponding to positions {@code x} to
+		 * {@code x + length - 1} in dimension 0.
+		 */
+		abstract void scanLine( int offset, int length, long[] pos, long x, Localizable point, Visitor visitor );
+
+		/**
+		 * Whether all values in the array are known to be zero.
+		 */
+		abstract boolean isZero();
+
+		/**
+		 * Wrap the storage array of {@code access}, if it is an
+		 * {@link ArrayDataAccess}. Otherwise, read through the typed access
+		 * (for example the memory-mapped accesses of
+		 * {@link MappedImgLabelings}, or {@link WideningIntAccess}).
+		 */
+		static IndexArray wrap( final Object access, final boolean signed )
+		{
+			if ( !( access instanceof ArrayDataAccess ) )
+				return wrapAccess( access, signed );
+			final Object array = ( ( ArrayDataAccess< ? > ) access ).getCurrentStorageArray();
+			if ( array instanceof byte[] )
+				return new ByteIndexArray( ( byte[] ) array, signed ? -1 : 0xff );
+			else if ( array instanceof short[] )
+				return new ShortIndexArray( ( short[] ) array, signed ? -1 : 0xffff );
+			else if ( array instanceof int[] )
+				return new IntIndexArray( ( int[] ) array );
+			else if ( array instanceof long[] )
+				return new LongIndexArray( ( long[] ) array );
+			else
+				throw new IllegalArgumentException( "unsupported storage array " + array.getClass() );
+		}
+
+		private static IndexArray wrapAccess( final Object access, final boolean signed )
+		{
+			if ( access instanceof ByteAccess )
+				return new ByteAccessIndexArray( ( ByteAccess ) access, signed ? -1 : 0xff );
+			else if ( access instanceof ShortAccess )
+				return new ShortAccessIndexArray( ( ShortAccess ) access, signed ? -1 : 0xffff );
+			else if ( access instanceof IntAccess )
+				return new IntAccessIndexArray( ( IntAccess ) access );
+			else if ( access instanceof LongAccess )
+				return new LongAccessIndexArray( ( LongAccess ) access );
+			else
+				throw new IllegalArgumentException( "unsupported access " + access.getClass() );
+		}
+	}
+
+	static final class ByteIndexArray extends IndexArray
+	{
+		private final byte[] data;
+
+		private final int mask;
+
+		ByteIndexArray( final byte[] data, final int mask )
+		{
+			this.data = data;
+			this.mask = mask;
+		}
+
+		@Override
+		void scanLine( final int offset, final int length, final long[] pos, final long x, final Localizable point, final Visitor visitor )
+		{
+			for ( int i = 0; i < length; ++i )
+			{
+				final int index = data[ offset + i ] & mask;
+				if ( index != 0 )
+				{
+					pos[ 0 ] = x + i;
+					visitor.accept( index, point );
+				}
+			}
+		}
+
+		@Override
+		boolean isZero()
+		{
+			for ( final byte value : data )
+				if ( value != 0 )
+					return false;
+			return true;
+		}
+	}
+
+	static final class ShortIndexArray extends IndexArray
+	{
+		private final short[] data;
+
+		private final int mask;
+
+		ShortIndexArray( final short[] data, final int mask )
+		{
+			this.data = data;
+			this.mask = mask;
+		}
+
+		@Override
+		void scanLine( final int offset, final int length, final long[] pos, final long x, final Localizable point, final Visitor visitor )
+		{
+			for ( int i = 0; i < length; ++i )
+			{
+				final int index = data[ offset + i ] & mask;
+				if ( index != 0 )
+				{
+					pos[ 0 ] = x + i;
+					visitor.accept( index, point );
+				}
+			}
+		}
+
+		@Override
+		boolean isZero()
+		{
+			for ( final short value : data )
+				if ( value != 0 )
+					return false;
+			return true;
+		}
+	}
+
+	static final class IntIndexArray extends IndexArray
+	{
+		private final int[] data;
+
+		IntIndexArray( final int[] data )
+		{
+			this.data = data;
+		}
+
+		@Override
+		void scanLine( final int offset, final int length, final long[] pos, final long x, final Localizable point, final Visitor visitor )
+		{
+			for ( int i = 0; i < length; ++i )
+			{
+				final int index = data[ offset + i ];
+				if ( index != 0 )
+				{
+					pos[ 0 ] = x + i;
+					visitor.accept( index, point );
+				}
+			}
+		}
+
+		@Override
+		boolean isZero()
+		{
+			for ( final int value : data )
+				if ( value != 0 )
+					return false;
+			return true;
+		}
+	}
+
+	static final class LongIndexArray extends IndexArray
+	{
+		private final long[] data;
+
+		LongIndexArray( final long[] data )
+		{
+			this.data = data;
+		}
+
+		@Override
+		void scanLine( final int offset, final int length, final long[] pos, final long x, final Localizable point, final Visitor visitor )
+		{
+			for ( int i = 0; i < length; ++i )
+			{
+				final long index = data[ offset + i ];
+				if ( index != 0 )
+				{
+					pos[ 0 ] = x + i;
+					visitor.accept( ( int ) index, point );
+				}
+			}
+		}
+
+		@Override
+		boolean isZero()
+		{
+			for ( final long value : data )
+				if ( value != 0 )
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * Base class for {@link IndexArray}s that read through a typed access.
+	 * The size of the access is unknown, so it is never known to be
+	 * {@link #isZero() zero}.
+	 */
+	static abstract class AccessIndexArray extends IndexArray
+	{
+		@Override
+		boolean isZero()
+		{
+			return false;
+		}
+	}
+
+	static final class ByteAccessIndexArray extends AccessIndexArray
+	{
+		private final ByteAccess data;
+
+		private final int mask;
+
+		ByteAccessIndexArray( final ByteAccess data, final int mask )
+		{
+			this.data = data;
+			this.mask = mask;
+		}
+
+		@Override
+		void scanLine( final int offset, final int length, final long[] pos, final long x, final Localizable point, final Visitor visitor )
+		{
+			for ( int i = 0; i < length; ++i )
+			{
+				final int index = data.getValue( offset + i ) & mask;
+				if ( index != 0 )
+				{
+					pos[ 0 ] = x + i;
+					visitor.accept( index, point );
+				}
+			}
+		}
+	}
+
+	static final class ShortAccessIndexArray extends AccessIndexArray
+	{
+		private final ShortAccess data;
+
+		private final int mask;
+
+		ShortAccessIndexArray( final ShortAccess data, final int mask )
+		{
+			this.data = data;
+			this.mask = mask;
+		}
+
+		@Override
+		void scanLine( final int offset, final int length, final long[] pos, final long x, final Localizable point, final Visitor visitor )
+		{
+			for ( int i = 0; i < length; ++i )
+			{
+				final int index = data.getValue( offset + i ) & mask;
+				if ( index != 0 )
+				{
+					pos[ 0 ] = x + i;
+					visitor.accept( index, point );
+				}
+			}
+		}
+	}
+
+	static final class IntAccessIndexArray extends AccessIndexArray
+	{
+		private final IntAccess data;
+
+		IntAccessIndexArray( final IntAccess data )
+		{
+			this.data = data;
+		}
+
+		@Override
+		void scanLine( final int offset, final int length, final long[] pos, final long x, final Localizable point, final Visitor visitor )
+		{
+			for ( int i = 0; i < length; ++i )
+			{
+				final int index = data.getValue( offset + i );
+				if ( index != 0 )
+				{
+					pos[ 0 ] = x + i;
+					visitor.accept( index, point );
+				}
+			}
+		}
+	}
+
+	static final class LongAccessIndexArray extends AccessIndexArray
+	{
+		private final LongAccess data;
+
+		LongAccessIndexArray( final LongAccess data )
+		{
+			this.data = data;
+		}
+
+		@Override
+		void scanLine( final int offset, final int length, final long[] pos, final long x, final Localizable point, final Visitor visitor )
+		{
+			for ( int i = 0; i < length; ++i )
+			{
+				final long index = data.getValue( offset + i );
+				if ( index != 0 )
+				{
+					pos[ 0 ] = x + i;
+					visitor.accept( ( int ) index, point );
+				}
+			}
+		}
+	}
+}
@@ -35,82 +35,126 @@ package net.imglib2.roi.labeling;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
-import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImgs;
-import net.imglib2.loops.LoopBuilder;
-import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.position.FunctionRandomAccessible;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.real.DoubleType;
-import net.imglib2.util.Util;
-import net.imglib2.view.IntervalView;
 import net.imglib2.view.Views;
 
+/**
+ * Co-occurrence of labels in a labeling: For each pair of labels, the number
+ * of pixels having both labels.
+ * <p>
+ * The co-occurrences are stored sparsely, only for pairs of labels that
+ * actually overlap. The dense (normalized) co-occurrence matrices are provided
+ * as views that are computed on demand.
+ */
 public class OverlappingLabels< T extends Comparable< T > >
 {
+	private final List< T > labelList;
 
-	private Img< UnsignedIntType > overlapMatrix;
+	/**
+	 * Maps labels to their index in {@link #labelList}.
+	 */
+	private final TObjectIntHashMap< T > labelToIndex;
 
-	private List< T > labelList;
+	/**
+	 * Maps pairs of label indices {@code (i, j)} with {@code i <= j} (see
+	 * {@link IndexPairs#key(int, int)}) to the number of overlapping pixels.
+	 * Only non-zero entries are stored.
+	 */
+	private final TLongLongHashMap overlaps;
 
-	private Img< LongType > labelSizeImg;
+	/**
+	 * Number of pixels of each label (by index).
+	 */
+	private final long[] labelSizes;
 
-	private Img< DoubleType > relativeOverlapMatrix;
+	private final RandomAccessibleInterval< UnsignedIntType > overlapMatrix;
 
-	public OverlappingLabels( RandomAccessibleInterval< LabelingType< T > > labeling )
-	{
+	private final RandomAccessibleInterval< DoubleType > relativeOverlapMatrix;
 
-		FragmentLabelRegions labelRegions = new FragmentLabelRegions( labeling );
+	public OverlappingLabels( final RandomAccessibleInterval< LabelingType< T > > labeling )
+	{
+		final LabelingMapping< T > labelingMapping = Labelings.getLabelingMapping( labeling );
+		final long[] fragmentSizes = countIndices( labeling, labelingMapping.numSets() );
 
 		// List of existing labels
-		// NB: this triggers labelRegions computation
-		labelList = new ArrayList<>( labelRegions.getExistingLabels() );
+		final Set< T > existingLabels = new HashSet<>();
+		for ( int i = 1; i < fragmentSizes.length; i++ )
+			if ( fragmentSizes[ i ] > 0 )
+				existingLabels.addAll( labelingMapping.labelsAtIndex( i ) );
+		labelList = new ArrayList<>( existingLabels );
 		Collections.sort( labelList );
 
-		// Create 2D matrix image
-		FinalInterval matrixDims = new FinalInterval( labelList.size(), labelList.size() );
-		overlapMatrix = Util.getSuitableImgFactory( matrixDims, new UnsignedIntType() ).create( matrixDims );
+		labelToIndex = new TObjectIntHashMap<>( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1 );
+		for ( int i = 0; i < labelList.size(); i++ )
+			labelToIndex.put( labelList.get( i ), i );
 
 		// Sum up sizes of single fragments
-		RandomAccess< UnsignedIntType > randomAccess = overlapMatrix.randomAccess();
-		UnsignedIntType sizeType = new UnsignedIntType();
-		LabelingMapping< T > labelingMapping = Labelings.getLabelingMapping( labeling );
-		for ( int i = 0; i < labelingMapping.numSets(); i++ )
+		overlaps = new TLongLongHashMap();
+		labelSizes = new long[ labelList.size() ];
+		for ( int i = 1; i < fragmentSizes.length; i++ )
 		{
-			Set< T > currentLabels = labelingMapping.labelsAtIndex( i );
-			long size = labelRegions.getFragmentSizeForIndex( i );
+			final long size = fragmentSizes[ i ];
 			if ( size > 0 )
 			{
-				sizeType.set( size );
-				for ( T a : currentLabels )
+				final Set< T > currentLabels = labelingMapping.labelsAtIndex( i );
+				final int[] indices = new int[ currentLabels.size() ];
+				int k = 0;
+				for ( final T label : currentLabels )
+					indices[ k++ ] = labelToIndex.get( label );
+				for ( int a = 0; a < indices.length; a++ )
 				{
-					randomAccess.setPosition( labelList.indexOf( a ), 0 );
-					for ( T b : currentLabels )
-					{
-						randomAccess.setPosition( labelList.indexOf( b ), 1 );
-						randomAccess.get().add( sizeType );
-					}
+					labelSizes[ indices[ a ] ] += size;
+					for ( int b = a; b < indices.length; b++ )
+						overlaps.adjustOrPutValue( IndexPairs.key( indices[ a ], indices[ b ] ), size, size );
 				}
 			}
 		}
 
-		labelSizeImg = ArrayImgs.longs( labelList.size() );
-		Cursor< LongType > cursor = labelSizeImg.localizingCursor();
-		while ( cursor.hasNext() )
+		final FinalInterval matrixDims = new FinalInterval( labelList.size(), labelList.size() );
+		overlapMatrix = Views.interval( new FunctionRandomAccessible<>( 2,
+				( pos, t ) -> t.set( getPixelOverlapForIndex( pos.getIntPosition( 0 ), pos.getIntPosition( 1 ) ) ),
+				UnsignedIntType::new ), matrixDims );
+		relativeOverlapMatrix = Views.interval( new FunctionRandomAccessible<>( 2,
+				( pos, t ) -> t.set( getPartialOverlapForIndex( pos.getIntPosition( 0 ), pos.getIntPosition( 1 ) ) ),
+				DoubleType::new ), matrixDims );
+	}
+
+	/**
+	 * Count the pixels for each index value of the labeling.
+	 */
+	private static long[] countIndices( final RandomAccessibleInterval< ? extends LabelingType< ? > > labeling, final int numSets )
+	{
+		final long[] counts = new long[ numSets ];
+		final NonZeroIndexScanner indexScanner = NonZeroIndexScanner.forLabeling( labeling );
+		if ( indexScanner != null )
+			indexScanner.scan( labeling, ( index, position ) -> ++counts[ index ] );
+		else
 		{
-			cursor.next().set( labelRegions.getLabelRegion( labelList.get( cursor.getIntPosition( 0 ) ) ).size() );
+			final Cursor< ? extends LabelingType< ? > > c = Views.iterable( labeling ).cursor();
+			while ( c.hasNext() )
+				++counts[ c.next().getIndex().getInteger() ];
 		}
+		return counts;
+	}
 
-		relativeOverlapMatrix = Util.getSuitableImgFactory( matrixDims, new DoubleType() ).create( matrixDims );
-		IntervalView< LongType > divisor = Views.addDimension( labelSizeImg, 0, labelList.size() - 1 );
-
-		LoopBuilder.setImages( overlapMatrix, divisor, relativeOverlapMatrix ).forEachPixel( ( a, b, c ) -> c.set( ( double ) a.get() / b.get() ) );
+	private int indexOf( final T label )
+	{
+		final int index = labelToIndex.get( label );
+		if ( index < 0 )
+			throw new IllegalArgumentException( "label " + label + " does not occur in the labeling" );
+		return index;
 	}
 
 	/**
@@ -119,6 +163,8 @@ public class OverlappingLabels< T extends Comparable< T > >
 	 * Values indicate the number of pixels that are in common between the label
 	 * at position x and the label at position y. For the mapping of dimension
 	 * indices to labels, see {@link OverlappingLabels#getIndexedLabels()}.
+	 * <p>
+	 * The matrix is a view, its values are computed on demand.
 	 * 
 	 * @return the co-occurrence matrix
 	 */
@@ -133,6 +179,8 @@ public class OverlappingLabels< T extends Comparable< T > >
 	 * Values indicate the proportion of the label at position x that is
 	 * co-occurring with the label at position y. For the mapping of dimension
 	 * indices to labels, see {@link OverlappingLabels#getIndexedLabels()}.
+	 * <p>
+	 * The matrix is a view, its values are computed on demand.
 	 * 
 	 * @return the normalized co-occurrence matrix
 	 */
@@ -162,7 +210,7 @@ public class OverlappingLabels< T extends Comparable< T > >
 	 */
 	public long getPixelOverlap( T label1, T label2 )
 	{
-		return getPixelOverlapForIndex( labelList.indexOf( label1 ), labelList.indexOf( label2 ) );
+		return getPixelOverlapForIndex( indexOf( label1 ), indexOf( label2 ) );
 	}
 
 	/**
@@ -177,7 +225,7 @@ public class OverlappingLabels< T extends Comparable< T > >
 	 */
 	public long getPixelOverlapForIndex( int index1, int index2 )
 	{
-		return overlapMatrix.getAt( index1, index2 ).get();
+		return overlaps.get( IndexPairs.key( index1, index2 ) );
 	}
 
 	/**
@@ -193,7 +241,7 @@ public class OverlappingLabels< T extends Comparable< T > >
 	 */
 	public double getPartialOverlap( T ofLabel, T overlappingLabel )
 	{
-		return getPartialOverlapForIndex( labelList.indexOf( ofLabel ), labelList.indexOf( overlappingLabel ) );
+		return getPartialOverlapForIndex( indexOf( ofLabel ), indexOf( overlappingLabel ) );
 	}
 
 	/**
@@ -208,20 +256,6 @@ public class OverlappingLabels< T extends Comparable< T > >
 	 */
 	public double getPartialOverlapForIndex( int ofLabelIndex, int overlappingLabelIndex )
 	{
-		return relativeOverlapMatrix.getAt( ofLabelIndex, overlappingLabelIndex ).get();
-	}
-
-	private class FragmentLabelRegions extends LabelRegions< T >
-	{
-
-		public FragmentLabelRegions( RandomAccessibleInterval< LabelingType< T > > labeling )
-		{
-			super( labeling );
-		}
-
-		public long getFragmentSizeForIndex( int index )
-		{
-			return indexToFragmentProperties.get( index ).getSize();
-		}
+		return ( double ) getPixelOverlapForIndex( ofLabelIndex, overlappingLabelIndex ) / labelSizes[ ofLabelIndex ];
 	}
 }
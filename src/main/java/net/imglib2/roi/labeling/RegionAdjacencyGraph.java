@@ -0,0 +1,331 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.iterator.TLongLongIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converters;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
+import net.imglib2.roi.boundary.Boundary.StructuringElement;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+/**
+ * Adjacency of labels in a labeling: For each pair of labels, the number of
+ * contacts, i.e., pairs of neighboring pixels where one pixel has the first
+ * label (but not the second) and the other pixel has the second label (but not
+ * the first).
+ * <p>
+ * Which pixels are neighbors is given by a {@link StructuringElement}:
+ * {@code FOUR_CONNECTED} means pixels differing by 1 in exactly one dimension
+ * (4-neighborhood in 2D, 6-neighborhood in 3D), {@code EIGHT_CONNECTED} means
+ * pixels differing by at most 1 in every dimension (8-neighborhood in 2D,
+ * 26-neighborhood in 3D).
+ * <p>
+ * The graph is built in one pass over the labeling. Contacts are first counted
+ * for pairs of label sets (index values of the {@link LabelingMapping}), and
+ * then combined into contacts of labels. The labeling is split into slabs
+ * along the last dimension, which are processed in parallel if the graph is
+ * created within {@link Parallelization#runMultiThreaded(Runnable)}.
+ * <p>
+ * The graph is a snapshot. It does not reflect later changes to the labeling.
+ *
+ * @param <T>
+ *            the label type
+ */
+public class RegionAdjacencyGraph< T >
+{
+	private final List< T > labelList;
+
+	/**
+	 * Maps labels to their index in {@link #labelList}.
+	 */
+	private final TObjectIntHashMap< T > labelToIndex;
+
+	/**
+	 * Maps pairs of label indices (see {@link IndexPairs#key(int, int)}) to
+	 * the number of contacts. Only non-zero entries are stored.
+	 */
+	private final TLongLongHashMap contacts;
+
+	/**
+	 * Indices of the neighbors of each label (by index).
+	 */
+	private final TIntArrayList[] neighbors;
+
+	public RegionAdjacencyGraph( final RandomAccessibleInterval< LabelingType< T > > labeling )
+	{
+		this( labeling, StructuringElement.FOUR_CONNECTED );
+	}
+
+	public RegionAdjacencyGraph( final RandomAccessibleInterval< LabelingType< T > > labeling, final StructuringElement se )
+	{
+		final LabelingMapping< T > mapping = Labelings.getLabelingMapping( labeling );
+		final int numSets = mapping.numSets();
+		final RandomAccessibleInterval< ? extends IntegerType< ? > > indices = labeling instanceof ImgLabeling
+				? ( ( ImgLabeling< T, ? > ) labeling ).getIndexImg()
+				: Converters.convert( labeling, ( in, out ) -> out.set( in.getIndex().getInteger() ), new IntType() );
+		final NonZeroIndexScanner indexScanner = NonZeroIndexScanner.forLabeling( labeling );
+		final long[][] offsets = ConnectedComponents.backwardOffsets( labeling.numDimensions(), se );
+
+		// count contacts of pairs of label sets
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final List< Interval > slabs = LabelRegions.splitIntoSlabs( labeling, taskExecutor.suggestNumberOfTasks() );
+		final List< SlabContacts > slabContacts = slabs.size() == 1
+				? Collections.singletonList( scanSlab( indices, indexScanner, offsets, slabs.get( 0 ), numSets ) )
+				: taskExecutor.forEachApply( slabs, slab -> scanSlab( indices, indexScanner, offsets, slab, numSets ) );
+		final SlabContacts setContacts = slabContacts.get( 0 );
+		for ( int i = 1; i < slabContacts.size(); ++i )
+			setContacts.add( slabContacts.get( i ) );
+
+		// List of existing labels
+		labelList = new ArrayList<>();
+		labelToIndex = new TObjectIntHashMap<>( Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1 );
+		for ( int i = 1; i < numSets; ++i )
+			if ( setContacts.occurs[ i ] )
+				for ( final T label : mapping.labelsAtIndex( i ) )
+					if ( labelToIndex.putIfAbsent( label, labelList.size() ) == -1 )
+						labelList.add( label );
+
+		// combine contacts of label sets into contacts of labels
+		contacts = new TLongLongHashMap();
+		neighbors = new TIntArrayList[ labelList.size() ];
+		for ( int i = 0; i < neighbors.length; ++i )
+			neighbors[ i ] = new TIntArrayList();
+		for ( final TLongLongIterator it = setContacts.contacts.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			final Set< T > labels1 = mapping.labelsAtIndex( IndexPairs.first( it.key() ) );
+			final Set< T > labels2 = mapping.labelsAtIndex( IndexPairs.second( it.key() ) );
+			final long count = it.value();
+			for ( final T label1 : labels1 )
+			{
+				if ( labels2.contains( label1 ) )
+					continue;
+				final int index1 = labelToIndex.get( label1 );
+				for ( final T label2 : labels2 )
+				{
+					if ( labels1.contains( label2 ) )
+						continue;
+					final int index2 = labelToIndex.get( label2 );
+					if ( contacts.adjustOrPutValue( IndexPairs.key( index1, index2 ), count, count ) == count )
+					{
+						neighbors[ index1 ].add( index2 );
+						neighbors[ index2 ].add( index1 );
+					}
+				}
+			}
+		}
+		for ( final TIntArrayList n : neighbors )
+		{
+			n.trimToSize();
+			n.sort();
+		}
+	}
+
+	private static SlabContacts scanSlab(
+			final RandomAccessibleInterval< ? extends IntegerType< ? > > indices,
+			final NonZeroIndexScanner indexScanner,
+			final long[][] offsets,
+			final Interval slab,
+			final int numSets )
+	{
+		final SlabContacts slabContacts = new SlabContacts( indices, offsets, numSets );
+		if ( indexScanner != null )
+			indexScanner.scan( slab, slabContacts::add );
+		else
+		{
+			final Cursor< ? extends IntegerType< ? > > c = Views.flatIterable( Views.interval( indices, slab ) ).localizingCursor();
+			while ( c.hasNext() )
+			{
+				final int index = c.next().getInteger();
+				if ( index > 0 )
+					slabContacts.add( index, c );
+			}
+		}
+		return slabContacts;
+	}
+
+	/**
+	 * Contacts between pairs of label sets, and which label sets occur, for
+	 * one slab.
+	 */
+	private static class SlabContacts
+	{
+		final TLongLongHashMap contacts;
+
+		final boolean[] occurs;
+
+		private final RandomAccess< ? extends IntegerType< ? > > access;
+
+		private final long[][] offsets;
+
+		private final long[] min;
+
+		private final long[] max;
+
+		private final long[] pos;
+
+		SlabContacts( final RandomAccessibleInterval< ? extends IntegerType< ? > > indices, final long[][] offsets, final int numSets )
+		{
+			contacts = new TLongLongHashMap();
+			occurs = new boolean[ numSets ];
+			access = indices.randomAccess();
+			this.offsets = offsets;
+			final int n = indices.numDimensions();
+			min = new long[ n ];
+			max = new long[ n ];
+			pos = new long[ n ];
+			indices.min( min );
+			indices.max( max );
+		}
+
+		/**
+		 * Add contacts of the pixel at {@code position} with label set
+		 * {@code index} to its (preceding) neighbors.
+		 */
+		void add( final int index, final Localizable position )
+		{
+			occurs[ index ] = true;
+			A: for ( final long[] offset : offsets )
+			{
+				for ( int d = 0; d < pos.length; ++d )
+				{
+					pos[ d ] = position.getLongPosition( d ) + offset[ d ];
+					if ( pos[ d ] < min[ d ] || pos[ d ] > max[ d ] )
+						continue A;
+				}
+				access.setPosition( pos );
+				final int neighbor = access.get().getInteger();
+				if ( neighbor != 0 && neighbor != index )
+					contacts.adjustOrPutValue( IndexPairs.key( index, neighbor ), 1, 1 );
+			}
+		}
+
+		void add( final SlabContacts other )
+		{
+			for ( final TLongLongIterator it = other.contacts.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				contacts.adjustOrPutValue( it.key(), it.value(), it.value() );
+			}
+			for ( int i = 0; i < occurs.length; ++i )
+				occurs[ i ] |= other.occurs[ i ];
+		}
+	}
+
+	private int indexOf( final T label )
+	{
+		final int index = labelToIndex.get( label );
+		if ( index < 0 )
+			throw new IllegalArgumentException( "label " + label + " does not occur in the labeling" );
+		return index;
+	}
+
+	/**
+	 * Get the list of labels occurring in the labeling. The index of a label in
+	 * this list is used by the {@code ...ForIndex} methods.
+	 *
+	 * @return the list of labels in order of their indices
+	 */
+	public List< T > getIndexedLabels()
+	{
+		return labelList;
+	}
+
+	/**
+	 * Get the labels that are adjacent to {@code label}.
+	 */
+	public List< T > getNeighbors( final T label )
+	{
+		final TIntArrayList indices = neighbors[ indexOf( label ) ];
+		final List< T > list = new ArrayList<>( indices.size() );
+		for ( int i = 0; i < indices.size(); ++i )
+			list.add( labelList.get( indices.get( i ) ) );
+		return list;
+	}
+
+	/**
+	 * Get the indices of the labels that are adjacent to the label at
+	 * {@code index}, in ascending order.
+	 */
+	public int[] getNeighborsForIndex( final int index )
+	{
+		return neighbors[ index ].toArray();
+	}
+
+	/**
+	 * The number of contacts between two labels. This is the size of the
+	 * interface between the labels, in pairs of neighboring pixels.
+	 *
+	 * @return the number of contacts, or 0 if the labels are not adjacent.
+	 */
+	public long getContacts( final T label1, final T label2 )
+	{
+		return getContactsForIndex( indexOf( label1 ), indexOf( label2 ) );
+	}
+
+	/**
+	 * The number of contacts between the labels at the specified indices.
+	 *
+	 * @return the number of contacts, or 0 if the labels are not adjacent.
+	 */
+	public long getContactsForIndex( final int index1, final int index2 )
+	{
+		return contacts.get( IndexPairs.key( index1, index2 ) );
+	}
+
+	/**
+	 * Get the number of pairs of adjacent labels.
+	 */
+	public int numEdges()
+	{
+		return contacts.size();
+	}
+}
@@ -0,0 +1,166 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Fraction;
+import net.imglib2.util.Intervals;
+
+/**
+ * An {@link IntAccess} that uses 1 byte per element as long as all values are
+ * smaller than 256, and grows block by block when larger values are written.
+ * <p>
+ * The lowest 8 bits of all elements are stored in one {@code byte[]} array.
+ * The elements are partitioned into blocks of {@link #BLOCK_SIZE} consecutive
+ * elements. For each block, arrays storing bits 8 to 15, and bits 16 to 31 of
+ * its elements are allocated when the first value that requires them is
+ * written. Therefore, blocks containing only small values use 1 byte per
+ * element, blocks containing values smaller than 65536 use 2 bytes per
+ * element, and only blocks containing larger values use 4 bytes per element.
+ * Existing values are never moved, so growing is safe while other threads read
+ * or write (different) elements.
+ */
+final class WideningIntAccess implements IntAccess
+{
+	private static final int BLOCK_BITS = 12;
+
+	private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	/**
+	 * Bits 0 to 7 of all elements.
+	 */
+	private final byte[] bits0;
+
+	/**
+	 * Bits 8 to 15 of the elements of each block, or {@code null} if these
+	 * bits are zero for all elements of the block.
+	 */
+	private final AtomicReferenceArray< byte[] > bits8;
+
+	/**
+	 * Bits 16 to 31 of the elements of each block, or {@code null} if these
+	 * bits are zero for all elements of the block. Only allocated for blocks
+	 * for which {@link #bits8} is allocated.
+	 */
+	private final AtomicReferenceArray< short[] > bits16;
+
+	WideningIntAccess( final int size )
+	{
+		bits0 = new byte[ size ];
+		final int numBlocks = ( int ) ( ( size + ( long ) BLOCK_MASK ) >>> BLOCK_BITS );
+		bits8 = new AtomicReferenceArray<>( numBlocks );
+		bits16 = new AtomicReferenceArray<>( numBlocks );
+	}
+
+	@Override
+	public int getValue( final int index )
+	{
+		final int value = bits0[ index ] & 0xff;
+		final int block = index >>> BLOCK_BITS;
+		final byte[] b8 = bits8.get( block );
+		if ( b8 == null )
+			return value;
+		final int i = index & BLOCK_MASK;
+		final short[] b16 = bits16.get( block );
+		if ( b16 == null )
+			return value | ( b8[ i ] & 0xff ) << 8;
+		return value | ( b8[ i ] & 0xff ) << 8 | b16[ i ] << 16;
+	}
+
+	@Override
+	public void setValue( final int index, final int value )
+	{
+		bits0[ index ] = ( byte ) value;
+		final int block = index >>> BLOCK_BITS;
+		final int i = index & BLOCK_MASK;
+
+		final int v8 = value >>> 8;
+		byte[] b8 = bits8.get( block );
+		if ( b8 == null )
+		{
+			if ( v8 == 0 )
+				return;
+			bits8.compareAndSet( block, null, new byte[ BLOCK_SIZE ] );
+			b8 = bits8.get( block );
+		}
+		b8[ i ] = ( byte ) v8;
+
+		final int v16 = value >>> 16;
+		short[] b16 = bits16.get( block );
+		if ( b16 == null )
+		{
+			if ( v16 == 0 )
+				return;
+			bits16.compareAndSet( block, null, new short[ BLOCK_SIZE ] );
+			b16 = bits16.get( block );
+		}
+		b16[ i ] = ( short ) v16;
+	}
+
+	/**
+	 * Get the number of bytes occupied by the value arrays.
+	 */
+	long sizeInBytes()
+	{
+		long size = bits0.length;
+		for ( int block = 0; block < bits8.length(); ++block )
+		{
+			if ( bits8.get( block ) != null )
+				size += BLOCK_SIZE;
+			if ( bits16.get( block ) != null )
+				size += 2 * BLOCK_SIZE;
+		}
+		return size;
+	}
+
+	/**
+	 * Create an {@link ArrayImg} of {@link IntType} with the given
+	 * {@code dimensions}, backed by a {@link WideningIntAccess}.
+	 */
+	static ArrayImg< IntType, WideningIntAccess > createImg( final long... dimensions )
+	{
+		final long numElements = Intervals.numElements( dimensions );
+		if ( numElements > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "number of elements (" + numElements + ") exceeds Integer.MAX_VALUE" );
+		final ArrayImg< IntType, WideningIntAccess > img = new ArrayImg<>( new WideningIntAccess( ( int ) numElements ), dimensions, new Fraction() );
+		img.setLinkedType( new IntType( img ) );
+		return img;
+	}
+}
@@ -0,0 +1,329 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.util.iterationcode;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * An {@link IterationCode} number sequence (see
+ * {@link IterationCode#getItcode()}), stored compactly as a {@code byte[]}.
+ * <p>
+ * The header {@code [o0, p1, ..., pn]} is stored as is. Every raster stretch
+ * {@code [p0min, p0max]}, together with the line change
+ * {@code [-dim, p1, ..., p(dim)]} preceding it (if any), is stored as a
+ * record:
+ *
+ * <pre>
+ * {@code
+ * [tag]                  0: no line change,
+ *                        1: line change [-1, p1 + 1] (next line),
+ *                        dim + 1: line change [-dim, p1, ..., p(dim)].
+ * [dp1, ..., dp(dim)]    (only if tag > 1) differences to the current
+ *                        starting position in dimensions 1, ..., dim.
+ * [dmin]                 difference p0min - p0min of the previous stretch.
+ * [length]               p0max - p0min.
+ * }
+ * </pre>
+ *
+ * All numbers are stored as variable-length integers (7 bits per byte), signed
+ * numbers are zig-zag encoded. Typically, a record takes 3 bytes instead of
+ * the 8 or 16 bytes in a {@link TIntArrayList}.
+ * <p>
+ * {@link Reader} decodes the compact representation on the fly, producing the
+ * original number sequence.
+ */
+public final class CompactIterationCode
+{
+	private static final CompactIterationCode EMPTY = new CompactIterationCode( 0, new byte[ 0 ] );
+
+	private final int n;
+
+	private final byte[] data;
+
+	private CompactIterationCode( final int n, final byte[] data )
+	{
+		this.n = n;
+		this.data = data;
+	}
+
+	/**
+	 * Encode the number sequence {@code itcode} of an {@code n}-dimensional
+	 * {@link IterationCode}.
+	 */
+	public static CompactIterationCode encode( final TIntArrayList itcode, final int n )
+	{
+		if ( itcode.isEmpty() )
+			return EMPTY;
+
+		final Encoder out = new Encoder( itcode.size() );
+		final long[] position = new long[ n ];
+		int i = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			position[ d ] = itcode.get( i++ );
+			out.writeSigned( position[ d ] );
+		}
+		long prevMinX = 0;
+		while ( i < itcode.size() )
+		{
+			int minX = itcode.get( i++ );
+			if ( minX < 0 )
+			{
+				final int dim = -minX;
+				if ( dim == 1 && itcode.get( i ) == position[ 1 ] + 1 )
+				{
+					out.writeUnsigned( 1 );
+					++position[ 1 ];
+					++i;
+				}
+				else
+				{
+					out.writeUnsigned( dim + 1 );
+					for ( int d = 1; d <= dim; ++d )
+					{
+						final int p = itcode.get( i++ );
+						out.writeSigned( p - position[ d ] );
+						position[ d ] = p;
+					}
+				}
+				minX = itcode.get( i++ );
+			}
+			else
+				out.writeUnsigned( 0 );
+			final int maxX = itcode.get( i++ );
+			out.writeSigned( minX - prevMinX );
+			out.writeUnsigned( maxX - minX );
+			prevMinX = minX;
+		}
+		return new CompactIterationCode( n, out.toByteArray() );
+	}
+
+	/**
+	 * Decode into the original {@link IterationCode} number sequence.
+	 */
+	public TIntArrayList decode()
+	{
+		final TIntArrayList itcode = new TIntArrayList();
+		for ( final Reader reader = reader(); reader.hasNext(); )
+			itcode.add( reader.next() );
+		return itcode;
+	}
+
+	public boolean isEmpty()
+	{
+		return data.length == 0;
+	}
+
+	/**
+	 * Get the number of bytes used to store the code.
+	 */
+	public int sizeInBytes()
+	{
+		return data.length;
+	}
+
+	/**
+	 * Get a {@link Reader} positioned at the start of the sequence.
+	 */
+	public Reader reader()
+	{
+		return new Reader( this );
+	}
+
+	/**
+	 * Reads the original {@link IterationCode} number sequence, decoding one
+	 * record at a time.
+	 */
+	public static final class Reader
+	{
+		private final CompactIterationCode code;
+
+		/**
+		 * Position in {@code code.data}.
+		 */
+		private int pos;
+
+		/**
+		 * Current starting position in dimensions 1, ..., n-1.
+		 */
+		private final long[] position;
+
+		private long prevMinX;
+
+		/**
+		 * Decoded numbers that were not yet returned.
+		 */
+		private final int[] buf;
+
+		private int bufPos;
+
+		private int bufLen;
+
+		private Reader( final CompactIterationCode code )
+		{
+			this.code = code;
+			final int n = code.n;
+			position = new long[ Math.max( n, 1 ) ];
+			buf = new int[ n + 3 ];
+			pos = 0;
+			prevMinX = 0;
+			bufPos = 0;
+			bufLen = 0;
+			if ( !code.isEmpty() )
+			{
+				for ( int d = 0; d < n; ++d )
+				{
+					position[ d ] = readSigned();
+					buf[ bufLen++ ] = ( int ) position[ d ];
+				}
+			}
+		}
+
+		private Reader( final Reader other )
+		{
+			code = other.code;
+			pos = other.pos;
+			position = other.position.clone();
+			prevMinX = other.prevMinX;
+			buf = other.buf.clone();
+			bufPos = other.bufPos;
+			bufLen = other.bufLen;
+		}
+
+		public Reader copy()
+		{
+			return new Reader( this );
+		}
+
+		public boolean hasNext()
+		{
+			return bufPos < bufLen || pos < code.data.length;
+		}
+
+		public int next()
+		{
+			if ( bufPos == bufLen )
+				decodeRecord();
+			return buf[ bufPos++ ];
+		}
+
+		private void decodeRecord()
+		{
+			bufPos = 0;
+			bufLen = 0;
+			final int tag = ( int ) readUnsigned();
+			if ( tag == 1 )
+			{
+				buf[ bufLen++ ] = -1;
+				buf[ bufLen++ ] = ( int ) ++position[ 1 ];
+			}
+			else if ( tag > 1 )
+			{
+				final int dim = tag - 1;
+				buf[ bufLen++ ] = -dim;
+				for ( int d = 1; d <= dim; ++d )
+				{
+					position[ d ] += readSigned();
+					buf[ bufLen++ ] = ( int ) position[ d ];
+				}
+			}
+			final long minX = prevMinX + readSigned();
+			buf[ bufLen++ ] = ( int ) minX;
+			buf[ bufLen++ ] = ( int ) ( minX + readUnsigned() );
+			prevMinX = minX;
+		}
+
+		private long readUnsigned()
+		{
+			final byte[] data = code.data;
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do
+			{
+				b = data[ pos++ ];
+				value |= ( long ) ( b & 0x7f ) << shift;
+				shift += 7;
+			}
+			while ( b < 0 );
+			return value;
+		}
+
+		private long readSigned()
+		{
+			final long zigzag = readUnsigned();
+			return ( zigzag >>> 1 ) ^ -( zigzag & 1 );
+		}
+	}
+
+	/**
+	 * Growable {@code byte[]} for writing variable-length integers.
+	 */
+	private static final class Encoder
+	{
+		private byte[] data;
+
+		private int size;
+
+		Encoder( final int initialCapacity )
+		{
+			data = new byte[ Math.max( 16, initialCapacity ) ];
+			size = 0;
+		}
+
+		void writeUnsigned( long value )
+		{
+			if ( size + 10 > data.length )
+				data = Arrays.copyOf( data, 2 * data.length + 10 );
+			while ( ( value & ~0x7fL ) != 0 )
+			{
+				data[ size++ ] = ( byte ) ( ( value & 0x7f ) | 0x80 );
+				value >>>= 7;
+			}
+			data[ size++ ] = ( byte ) value;
+		}
+
+		void writeSigned( final long value )
+		{
+			writeUnsigned( ( value << 1 ) ^ ( value >> 63 ) );
+		}
+
+		byte[] toByteArray()
+		{
+			return Arrays.copyOf( data, size );
+		}
+	}
+}
@@ -64,6 +64,11 @@ public class IterationCodeBuilder extends AbstractEuclideanSpace implements Iter
 
 	private long rasterBegin;
 
+	/**
+	 * Created on demand by {@link #getSkipIndex()}.
+	 */
+	private IterationCodeSkipIndex skipIndex;
+
 	public IterationCodeBuilder( final int numDimensions, final long minX )
 	{
 		super( numDimensions );
@@ -152,10 +157,71 @@ public class IterationCodeBuilder extends AbstractEuclideanSpace implements Iter
 			itcode.add( ( int ) ( prev[ 0 ] - itcodeOffsetX ) );
 		}
 		itcode.trimToSize();
+		skipIndex = null;
 		prev = null;
 		curr = null;
 	}
 
+	/**
+	 * Append the {@link IterationCode} built by {@code other} to this one.
+	 * Both builders must be {@link #finish() finished}, must have been created
+	 * with the same {@code minX}, and all positions accumulated by
+	 * {@code other} must lie on lines (in dimension {@code n-1}) after those
+	 * accumulated by this builder. This is used to stitch codes that were built
+	 * independently for consecutive slabs of an image. The result is the same
+	 * as if all positions had been {@link #add(Localizable) added} to this
+	 * builder in flat iteration order.
+	 *
+	 * @param other
+	 *            finished builder for the following slab
+	 */
+	public void append( final IterationCodeBuilder other )
+	{
+		if ( other.n != n || other.itcodeOffsetX != itcodeOffsetX )
+			throw new IllegalArgumentException( "incompatible IterationCodes" );
+
+		if ( other.size == 0 )
+			return;
+
+		final TIntArrayList otherItcode = other.itcode;
+		if ( size == 0 )
+			itcode.addAll( otherItcode );
+		else
+		{
+			if ( n < 2 )
+				throw new IllegalArgumentException( "cannot append IterationCodes in 1D" );
+
+			// the header [o0, p1, ..., pn] of the other code becomes a
+			// [-(n-1), p1, ..., pn] record, followed by its raster stretches.
+			itcode.add( -( n - 1 ) );
+			final int otherSize = otherItcode.size();
+			for ( int i = 1; i < otherSize; ++i )
+				itcode.add( otherItcode.get( i ) );
+		}
+		itcode.trimToSize();
+		skipIndex = null;
+
+		size += other.size;
+		for ( int d = 0; d < n; d++ )
+		{
+			if ( other.bbmin[ d ] < bbmin[ d ] )
+				bbmin[ d ] = other.bbmin[ d ];
+			if ( other.bbmax[ d ] > bbmax[ d ] )
+				bbmax[ d ] = other.bbmax[ d ];
+		}
+	}
+
+	/**
+	 * Get the {@link IterationCodeSkipIndex} for the {@link IterationCode}
+	 * built by this (finished) builder. The index is built on the first call.
+	 */
+	public synchronized IterationCodeSkipIndex getSkipIndex()
+	{
+		if ( skipIndex == null )
+			skipIndex = IterationCodeSkipIndex.build( itcode, n );
+		return skipIndex;
+	}
+
 	@Override
 	public TIntArrayList getItcode()
 	{
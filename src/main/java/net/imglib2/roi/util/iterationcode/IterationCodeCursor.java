@@ -58,14 +58,25 @@ public class IterationCodeCursor extends AbstractLocalizable implements Cursor<
 	}
 
 	public IterationCodeCursor( final TIntArrayList itcode, final long[] offset )
+	{
+		this( itcode, null, offset );
+	}
+
+	/**
+	 * @param skipIndex
+	 *            if not {@code null}, the {@link IterationCodeSkipIndex} for
+	 *            {@code itcode}, which is used to {@link #jumpFwd(long) jump}
+	 *            in logarithmic time.
+	 */
+	public IterationCodeCursor( final TIntArrayList itcode, final IterationCodeSkipIndex skipIndex, final long[] offset )
 	{
 		super( offset.length );
-		iter = new IterationCodeIterator<>( itcode, offset, Point.wrap( position ) );
+		iter = new IterationCodeIterator<>( itcode, skipIndex, offset, Point.wrap( position ) );
 	}
 
 	protected IterationCodeCursor( final IterationCodeCursor c )
 	{
-		super( c.position );
+		super( c.position.clone() );
 		iter = new IterationCodeIterator<>( c.iter, Point.wrap( position ) );
 	}
 
@@ -54,6 +54,8 @@ public class IterationCodeIterator< P extends Positionable & Localizable > exten
 {
 	private final TIntArrayList itcode;
 
+	private final IterationCodeSkipIndex skipIndex;
+
 	private final long[] offset;
 
 	private final P position;
@@ -62,8 +64,15 @@ public class IterationCodeIterator< P extends Positionable & Localizable > exten
 
 	private int itcodeOffsetX;
 
+	private long minX;
+
 	private long maxX;
 
+	/**
+	 * Number of positions before the current raster stretch.
+	 */
+	private long stretchIndex;
+
 	private boolean hasNextRaster;
 
 	public IterationCodeIterator( final IterationCode iterationCode, final long[] offset, final P position )
@@ -72,10 +81,22 @@ public class IterationCodeIterator< P extends Positionable & Localizable > exten
 	}
 
 	public IterationCodeIterator( final TIntArrayList itcode, final long[] offset, final P position )
+	{
+		this( itcode, null, offset, position );
+	}
+
+	/**
+	 * @param skipIndex
+	 *            if not {@code null}, the {@link IterationCodeSkipIndex} for
+	 *            {@code itcode}, which is used to {@link #jumpFwd(long) jump}
+	 *            in logarithmic time.
+	 */
+	public IterationCodeIterator( final TIntArrayList itcode, final IterationCodeSkipIndex skipIndex, final long[] offset, final P position )
 	{
 		super( position.numDimensions() );
 		this.position = position;
 		this.itcode = itcode;
+		this.skipIndex = skipIndex;
 		this.offset = offset;
 		reset();
 	}
@@ -84,17 +105,21 @@ public class IterationCodeIterator< P extends Positionable & Localizable > exten
 	{
 		super( position.numDimensions() );
 		this.itcode = copyFrom.itcode;
+		this.skipIndex = copyFrom.skipIndex;
 		this.offset = copyFrom.offset;
 		this.position = position;
 		this.position.setPosition( copyFrom.position );
 		this.itcodeIndex = copyFrom.itcodeIndex;
 		this.itcodeOffsetX = copyFrom.itcodeOffsetX;
+		this.minX = copyFrom.minX;
 		this.maxX = copyFrom.maxX;
+		this.stretchIndex = copyFrom.stretchIndex;
 		this.hasNextRaster = copyFrom.hasNextRaster;
 	}
 
 	private void nextRasterStretch()
 	{
+		stretchIndex += maxX - minX + 1;
 		int minItcodeX = itcode.get( itcodeIndex++ );
 		if ( minItcodeX < 0 )
 		{
@@ -102,16 +127,54 @@ public class IterationCodeIterator< P extends Positionable & Localizable > exten
 				position.setPosition( itcode.get( itcodeIndex++ ) + offset[ d ], d );
 			minItcodeX = itcode.get( itcodeIndex++ );
 		}
-		position.setPosition( minItcodeX + itcodeOffsetX + offset[ 0 ], 0 );
+		minX = minItcodeX + itcodeOffsetX + offset[ 0 ];
+		position.setPosition( minX, 0 );
 		maxX = itcode.get( itcodeIndex++ ) + itcodeOffsetX + offset[ 0 ];
 		hasNextRaster = itcodeIndex < itcode.size();
 	}
 
+	/**
+	 * Move to the raster stretch of entry {@code e} of the {@link #skipIndex}.
+	 */
+	private void seek( final int e )
+	{
+		itcodeIndex = skipIndex.itcodeIndex( e );
+		for ( int d = 1; d < n; ++d )
+			position.setPosition( skipIndex.position( e, d ) + offset[ d ], d );
+		stretchIndex = skipIndex.count( e );
+		minX = 0;
+		maxX = -1;
+		nextRasterStretch();
+	}
+
+	/**
+	 * Move {@code steps} positions forward. Whole raster stretches are skipped
+	 * at once. If a {@link IterationCodeSkipIndex} is available, this takes
+	 * time logarithmic in the number of raster stretches.
+	 */
 	@Override
 	public void jumpFwd( final long steps )
 	{
-		for ( long j = 0; j < steps; ++j )
-			fwd();
+		long x = position.getLongPosition( 0 );
+		long remaining = steps;
+		if ( skipIndex != null && x + remaining > maxX )
+		{
+			final long target = stretchIndex + x - minX + remaining;
+			final int e = skipIndex.find( target );
+			if ( e >= 0 && skipIndex.count( e ) > stretchIndex )
+			{
+				seek( e );
+				x = minX;
+				remaining = target - stretchIndex;
+			}
+		}
+		while ( x + remaining > maxX )
+		{
+			remaining -= maxX - x + 1;
+			nextRasterStretch();
+			x = minX;
+		}
+		position.setPosition( x + remaining, 0 );
 	}
 
 	@Override
@@ -126,6 +189,9 @@ public class IterationCodeIterator< P extends Positionable & Localizable > exten
 	public void reset()
 	{
 		itcodeIndex = 0;
+		stretchIndex = 0;
+		minX = 0;
+		maxX = -1;
 		if ( !itcode.isEmpty() )
 		{
 			itcodeOffsetX = itcode.get( itcodeIndex++ );
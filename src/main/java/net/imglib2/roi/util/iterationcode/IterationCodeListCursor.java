@@ -58,14 +58,31 @@ public class IterationCodeListCursor extends AbstractLocalizable implements Curs
 	private final IterationCodeListIterator< Point > iter;
 
 	public IterationCodeListCursor( final ArrayList< TIntArrayList > itcodesList, final long[] offset )
+	{
+		this( itcodesList, null, offset );
+	}
+
+	/**
+	 * @param skipIndices
+	 *            if not {@code null}, the {@link IterationCodeSkipIndex} for
+	 *            each code in {@code itcodesList}, which are used to
+	 *            {@link #jumpFwd(long) jump} in logarithmic time.
+	 */
+	public IterationCodeListCursor( final ArrayList< TIntArrayList > itcodesList, final IterationCodeSkipIndex[] skipIndices, final long[] offset )
+	{
+		super( offset.length );
+		iter = new IterationCodeListIterator<>( itcodesList, skipIndices, offset, Point.wrap( position ) );
+	}
+
+	public IterationCodeListCursor( final CompactIterationCode[] compactItcodes, final long[] offset )
 	{
 		super( offset.length );
-		iter = new IterationCodeListIterator<>( itcodesList, offset, Point.wrap( position ) );
+		iter = new IterationCodeListIterator<>( compactItcodes, offset, Point.wrap( position ) );
 	}
 
 	protected IterationCodeListCursor( final IterationCodeListCursor c )
 	{
-		super( c.position );
+		super( c.position.clone() );
 		iter = new IterationCodeListIterator<>( c.iter, Point.wrap( position ) );
 	}
 
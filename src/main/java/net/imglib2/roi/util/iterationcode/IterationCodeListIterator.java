@@ -58,27 +58,74 @@ public class IterationCodeListIterator< P extends Positionable & Localizable > e
 {
 	private final List< TIntArrayList > itcodesList;
 
+	private final IterationCodeSkipIndex[] skipIndices;
+
+	private final CompactIterationCode[] compactItcodes;
+
 	private final long[] offset;
 
 	private final P position;
 
 	private int itcodesListIndex;
 
+	/**
+	 * Index of the current code in the list.
+	 */
+	private int currentItcode;
+
 	private TIntArrayList itcode;
 
 	private int itcodeIndex;
 
+	private CompactIterationCode.Reader reader;
+
 	private int itcodeOffsetX;
 
+	private long minX;
+
 	private long maxX;
 
+	/**
+	 * Number of positions of the current code before the current raster
+	 * stretch.
+	 */
+	private long stretchIndex;
+
 	private boolean hasNextRaster;
 
 	public IterationCodeListIterator( final List< TIntArrayList  > itcodesList, final long[] offset, final P position )
+	{
+		this( itcodesList, null, offset, position );
+	}
+
+	/**
+	 * @param skipIndices
+	 *            if not {@code null}, the {@link IterationCodeSkipIndex} for
+	 *            each code in {@code itcodesList}, which are used to
+	 *            {@link #jumpFwd(long) jump} in logarithmic time.
+	 */
+	public IterationCodeListIterator( final List< TIntArrayList  > itcodesList, final IterationCodeSkipIndex[] skipIndices, final long[] offset, final P position )
 	{
 		super( position.numDimensions() );
 		this.position = position;
 		this.itcodesList = itcodesList;
+		this.skipIndices = skipIndices;
+		this.compactItcodes = null;
+		this.offset = offset;
+		reset();
+	}
+
+	/**
+	 * Iterate the union of {@link CompactIterationCode}s, decoding them on the
+	 * fly.
+	 */
+	public IterationCodeListIterator( final CompactIterationCode[] compactItcodes, final long[] offset, final P position )
+	{
+		super( position.numDimensions() );
+		this.position = position;
+		this.itcodesList = null;
+		this.skipIndices = null;
+		this.compactItcodes = compactItcodes;
 		this.offset = offset;
 		reset();
 	}
@@ -87,22 +134,48 @@ public class IterationCodeListIterator< P extends Positionable & Localizable > e
 	{
 		super( position.numDimensions() );
 		this.itcodesList = copyFrom.itcodesList;
+		this.skipIndices = copyFrom.skipIndices;
+		this.compactItcodes = copyFrom.compactItcodes;
 		this.offset = copyFrom.offset;
 		this.position = position;
 		this.position.setPosition( copyFrom.position );
 		this.itcodesListIndex = copyFrom.itcodesListIndex;
+		this.currentItcode = copyFrom.currentItcode;
 		this.itcode = copyFrom.itcode;
 		this.itcodeIndex = copyFrom.itcodeIndex;
+		this.reader = copyFrom.reader == null ? null : copyFrom.reader.copy();
 		this.itcodeOffsetX = copyFrom.itcodeOffsetX;
+		this.minX = copyFrom.minX;
 		this.maxX = copyFrom.maxX;
+		this.stretchIndex = copyFrom.stretchIndex;
 		this.hasNextRaster = copyFrom.hasNextRaster;
 	}
 
+	private int numItcodes()
+	{
+		return compactItcodes == null ? itcodesList.size() : compactItcodes.length;
+	}
+
+	private boolean isEmptyItcode( final int i )
+	{
+		return compactItcodes == null ? itcodesList.get( i ).isEmpty() : compactItcodes[ i ].isEmpty();
+	}
+
+	private boolean hasNextInt()
+	{
+		return reader == null ? itcodeIndex < itcode.size() : reader.hasNext();
+	}
+
+	private int nextInt()
+	{
+		return reader == null ? itcode.get( itcodeIndex++ ) : reader.next();
+	}
+
 	private boolean probeNextItcode()
 	{
-		while ( itcodesListIndex < itcodesList.size() )
+		while ( itcodesListIndex < numItcodes() )
 		{
-			if ( itcodesList.get( itcodesListIndex ).isEmpty() )
+			if ( isEmptyItcode( itcodesListIndex ) )
 				++itcodesListIndex;
 			else
 				return true;
@@ -112,38 +185,102 @@ public class IterationCodeListIterator< P extends Positionable & Localizable > e
 
 	private void initNextItcode()
 	{
-		itcode = itcodesList.get( itcodesListIndex++ );
-		itcodeIndex = 0;
-		itcodeOffsetX = itcode.get( itcodeIndex++ );
+		probeNextItcode();
+		currentItcode = itcodesListIndex++;
+		if ( compactItcodes == null )
+		{
+			itcode = itcodesList.get( currentItcode );
+			itcodeIndex = 0;
+		}
+		else
+			reader = compactItcodes[ currentItcode ].reader();
+		itcodeOffsetX = nextInt();
 		for ( int d = 1; d < n; ++d )
-			position.setPosition( itcode.get( itcodeIndex++ ) + offset[ d ], d );
+			position.setPosition( nextInt() + offset[ d ], d );
+		stretchIndex = 0;
+		minX = 0;
+		maxX = -1;
 		nextRasterStretch();
 	}
 
 	private void nextRasterStretch()
 	{
-		if ( itcodeIndex >= itcode.size() )
+		if ( !hasNextInt() )
 			initNextItcode();
 		else
 		{
-			int minItcodeX = itcode.get( itcodeIndex++ );
+			stretchIndex += maxX - minX + 1;
+			int minItcodeX = nextInt();
 			if ( minItcodeX < 0 )
 			{
 				for ( int d = 1; d <= -minItcodeX; ++d )
-					position.setPosition( itcode.get( itcodeIndex++ ) + offset[ d ], d );
-				minItcodeX = itcode.get( itcodeIndex++ );
+					position.setPosition( nextInt() + offset[ d ], d );
+				minItcodeX = nextInt();
 			}
-			position.setPosition( minItcodeX + itcodeOffsetX + offset[ 0 ], 0 );
-			maxX = itcode.get( itcodeIndex++ ) + itcodeOffsetX + offset[ 0 ];
-			hasNextRaster = ( itcodeIndex < itcode.size() ) || probeNextItcode();
+			minX = minItcodeX + itcodeOffsetX + offset[ 0 ];
+			position.setPosition( minX, 0 );
+			maxX = nextInt() + itcodeOffsetX + offset[ 0 ];
+			hasNextRaster = hasNextInt() || probeNextItcode();
 		}
 	}
 
+	/**
+	 * Move to the raster stretch of entry {@code e} of the
+	 * {@link IterationCodeSkipIndex} of the current code.
+	 */
+	private void seek( final IterationCodeSkipIndex skipIndex, final int e )
+	{
+		itcodeIndex = skipIndex.itcodeIndex( e );
+		for ( int d = 1; d < n; ++d )
+			position.setPosition( skipIndex.position( e, d ) + offset[ d ], d );
+		stretchIndex = skipIndex.count( e );
+		minX = 0;
+		maxX = -1;
+		nextRasterStretch();
+	}
+
+	/**
+	 * Move {@code steps} positions forward. Whole raster stretches are skipped
+	 * at once. If {@link IterationCodeSkipIndex}s are available, whole codes
+	 * are skipped at once, and skipping within a code takes time logarithmic
+	 * in the number of its raster stretches.
+	 */
 	@Override
 	public void jumpFwd( final long steps )
 	{
-		for ( long j = 0; j < steps; ++j )
-			fwd();
+		long x = position.getLongPosition( 0 );
+		long remaining = steps;
+		if ( skipIndices != null && x + remaining > maxX )
+		{
+			long target = stretchIndex + x - minX + remaining;
+			IterationCodeSkipIndex skipIndex = skipIndices[ currentItcode ];
+			if ( target >= skipIndex.size() )
+			{
+				do
+				{
+					target -= skipIndex.size();
+					initNextItcode();
+					skipIndex = skipIndices[ currentItcode ];
+				}
+				while ( target >= skipIndex.size() );
+				x = minX;
+				remaining = target;
+			}
+			final int e = skipIndex.find( target );
+			if ( e >= 0 && skipIndex.count( e ) > stretchIndex )
+			{
+				seek( skipIndex, e );
+				x = minX;
+				remaining = target - stretchIndex;
+			}
+		}
+		while ( x + remaining > maxX )
+		{
+			remaining -= maxX - x + 1;
+			nextRasterStretch();
+			x = minX;
+		}
+		position.setPosition( x + remaining, 0 );
 	}
 
 	@Override
@@ -167,6 +304,7 @@ public class IterationCodeListIterator< P extends Positionable & Localizable > e
 		{
 			hasNextRaster = false;
 			position.setPosition( 0, 0 );
+			minX = 0;
 			maxX = 0;
 		}
 	}
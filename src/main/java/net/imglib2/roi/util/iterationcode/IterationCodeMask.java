@@ -0,0 +1,438 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.util.iterationcode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import net.imglib2.AbstractInterval;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.Point;
+import net.imglib2.roi.IterableRegion;
+import net.imglib2.roi.KnownConstant;
+import net.imglib2.roi.MaskInterval;
+import net.imglib2.type.logic.BoolType;
+
+/**
+ * A {@link MaskInterval} for the bitmask encoded by a list of (disjoint)
+ * {@link IterationCode}s, which does not depend on the source of the codes.
+ * <p>
+ * The raster stretches of the codes are stored as sorted intervals of flat
+ * indices into the bounding box, where touching stretches on the same line
+ * are merged. {@link #test(Localizable)} computes the flat index of the
+ * position and finds the stretch containing it by binary search, that is, in
+ * time logarithmic in the number of raster stretches.
+ * <p>
+ * Union, intersection, difference, and symmetric difference of two
+ * {@code IterationCodeMask}s ({@link #or(IterationCodeMask)},
+ * {@link #and(IterationCodeMask)}, {@link #minus(IterationCodeMask)},
+ * {@link #xor(IterationCodeMask)}) are computed by merging the raster
+ * stretches, in time proportional to the number of stretches. The result is
+ * again an {@code IterationCodeMask}, which is also an {@link IterationCode}
+ * and can be iterated as an {@link IterableRegion} (see
+ * {@link #toIterableRegion()}).
+ */
+public class IterationCodeMask extends AbstractInterval implements MaskInterval, IterationCode
+{
+	private final long[] strides;
+
+	/**
+	 * Flat index of the first position of each stretch, sorted.
+	 */
+	private final long[] starts;
+
+	/**
+	 * Flat index of the last position of each stretch, sorted.
+	 */
+	private final long[] ends;
+
+	private final long size;
+
+	/**
+	 * {@link IterationCode} number sequence. Created on demand by
+	 * {@link #getItcode()}.
+	 */
+	private TIntArrayList itcode;
+
+	/**
+	 * Create a mask for the bitmask encoded by {@code iterationCode}.
+	 */
+	public IterationCodeMask( final IterationCode iterationCode )
+	{
+		this( Collections.singletonList( iterationCode.getItcode() ),
+				iterationCode.getBoundingBoxMin(),
+				iterationCode.getBoundingBoxMax(),
+				new long[ iterationCode.numDimensions() ] );
+	}
+
+	/**
+	 * Create a mask for the union of the bitmasks encoded by {@code itcodes},
+	 * shifted by {@code offset}.
+	 *
+	 * @param itcodes
+	 *            number sequences of disjoint {@link IterationCode}s.
+	 * @param bbmin
+	 *            minimum of the bounding box of the union (before shifting).
+	 * @param bbmax
+	 *            maximum of the bounding box of the union (before shifting).
+	 * @param offset
+	 *            the offset by which the bitmask is shifted. (This is copied.)
+	 */
+	public IterationCodeMask( final List< TIntArrayList > itcodes, final long[] bbmin, final long[] bbmax, final long[] offset )
+	{
+		super( shifted( bbmin, bbmax, offset ) );
+		strides = strides( this );
+
+		final TLongArrayList startList = new TLongArrayList();
+		final TLongArrayList endList = new TLongArrayList();
+		for ( final TIntArrayList itcode : itcodes )
+		{
+			if ( itcode.isEmpty() )
+				continue;
+			int i = 0;
+			final long offsetX = itcode.get( i++ ) - bbmin[ 0 ];
+			long line = 0;
+			final long[] position = new long[ n ];
+			for ( int d = 1; d < n; ++d )
+			{
+				position[ d ] = itcode.get( i++ ) - bbmin[ d ];
+				line += position[ d ] * strides[ d ];
+			}
+			while ( i < itcode.size() )
+			{
+				int minX = itcode.get( i++ );
+				if ( minX < 0 )
+				{
+					for ( int d = 1; d <= -minX; ++d )
+					{
+						final long p = itcode.get( i++ ) - bbmin[ d ];
+						line += ( p - position[ d ] ) * strides[ d ];
+						position[ d ] = p;
+					}
+					minX = itcode.get( i++ );
+				}
+				final int maxX = itcode.get( i++ );
+				startList.add( line + minX + offsetX );
+				endList.add( line + maxX + offsetX );
+			}
+		}
+
+		// The stretches are disjoint, therefore the i-th smallest start and
+		// the i-th smallest end belong to the same stretch.
+		final long[] s = startList.toArray();
+		final long[] e = endList.toArray();
+		Arrays.sort( s );
+		Arrays.sort( e );
+
+		// merge stretches that touch on the same line
+		final long lineLength = n > 1 ? strides[ 1 ] : Long.MAX_VALUE;
+		int numStretches = 0;
+		long size = 0;
+		for ( int i = 0; i < s.length; ++i )
+		{
+			if ( numStretches > 0 && s[ i ] == e[ numStretches - 1 ] + 1 && s[ i ] % lineLength != 0 )
+				e[ numStretches - 1 ] = e[ i ];
+			else
+			{
+				s[ numStretches ] = s[ i ];
+				e[ numStretches ] = e[ i ];
+				++numStretches;
+			}
+			size += e[ i ] - s[ i ] + 1;
+		}
+		starts = Arrays.copyOf( s, numStretches );
+		ends = Arrays.copyOf( e, numStretches );
+		this.size = size;
+	}
+
+	/**
+	 * Create a mask with the given bounding box and (sorted, disjoint)
+	 * stretches of flat indices into the bounding box.
+	 */
+	IterationCodeMask( final Interval interval, final long[] starts, final long[] ends )
+	{
+		super( interval );
+		strides = strides( this );
+		this.starts = starts;
+		this.ends = ends;
+		long size = 0;
+		for ( int i = 0; i < starts.length; ++i )
+			size += ends[ i ] - starts[ i ] + 1;
+		this.size = size;
+	}
+
+	private static FinalInterval shifted( final long[] bbmin, final long[] bbmax, final long[] offset )
+	{
+		final int n = offset.length;
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = bbmin[ d ] + offset[ d ];
+			max[ d ] = bbmax[ d ] + offset[ d ];
+		}
+		return new FinalInterval( min, max );
+	}
+
+	private static long[] strides( final Interval interval )
+	{
+		final int n = interval.numDimensions();
+		final long[] strides = new long[ n ];
+		strides[ 0 ] = 1;
+		for ( int d = 1; d < n; ++d )
+			strides[ d ] = strides[ d - 1 ] * Math.max( 0, interval.dimension( d - 1 ) );
+		return strides;
+	}
+
+	@Override
+	public boolean test( final Localizable localizable )
+	{
+		long index = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final long p = localizable.getLongPosition( d );
+			if ( p < min[ d ] || p > max[ d ] )
+				return false;
+			index += ( p - min[ d ] ) * strides[ d ];
+		}
+		final int i = Arrays.binarySearch( starts, index );
+		if ( i >= 0 )
+			return true;
+		final int j = -i - 2;
+		return j >= 0 && index <= ends[ j ];
+	}
+
+	@Override
+	public KnownConstant knownConstant()
+	{
+		return starts.length == 0 ? KnownConstant.ALL_FALSE : KnownConstant.UNKNOWN;
+	}
+
+	/**
+	 * Get the number of (merged) raster stretches.
+	 */
+	public int numStretches()
+	{
+		return starts.length;
+	}
+
+	/**
+	 * Get the number of positions in the mask.
+	 */
+	@Override
+	public long getSize()
+	{
+		return size;
+	}
+
+	@Override
+	public long[] getBoundingBoxMin()
+	{
+		return min.clone();
+	}
+
+	@Override
+	public long[] getBoundingBoxMax()
+	{
+		return max.clone();
+	}
+
+	/**
+	 * Get the {@link IterationCode} number sequence of the mask. It is created
+	 * on the first call.
+	 */
+	@Override
+	public synchronized TIntArrayList getItcode()
+	{
+		if ( itcode == null )
+		{
+			final TIntArrayList code = new TIntArrayList();
+			final long[] position = new long[ n ];
+			final long[] previous = new long[ n ];
+			for ( int i = 0; i < starts.length; ++i )
+			{
+				localize( starts[ i ], position );
+				if ( i == 0 )
+				{
+					code.add( ( int ) min[ 0 ] );
+					for ( int d = 1; d < n; ++d )
+						code.add( ( int ) position[ d ] );
+				}
+				else
+				{
+					int dim = n - 1;
+					while ( dim > 0 && position[ dim ] == previous[ dim ] )
+						--dim;
+					if ( dim > 0 )
+					{
+						code.add( -dim );
+						for ( int d = 1; d <= dim; ++d )
+							code.add( ( int ) position[ d ] );
+					}
+				}
+				code.add( ( int ) ( position[ 0 ] - min[ 0 ] ) );
+				code.add( ( int ) ( position[ 0 ] + ends[ i ] - starts[ i ] - min[ 0 ] ) );
+				System.arraycopy( position, 0, previous, 0, n );
+			}
+			code.trimToSize();
+			itcode = code;
+		}
+		return itcode;
+	}
+
+	/**
+	 * Get an {@link IterableRegion} that iterates the positions in the mask
+	 * (using {@link #getItcode()}).
+	 */
+	public IterableRegion< BoolType > toIterableRegion()
+	{
+		return new IterationCodeRegion( this );
+	}
+
+	/**
+	 * Get the intersection of this mask and {@code other}, computed by merging
+	 * their raster stretches.
+	 */
+	public IterationCodeMask and( final IterationCodeMask other )
+	{
+		return IterationCodeMaskOperations.apply( this, other, IterationCodeMaskOperations.AND );
+	}
+
+	/**
+	 * Get the union of this mask and {@code other}, computed by merging their
+	 * raster stretches.
+	 */
+	public IterationCodeMask or( final IterationCodeMask other )
+	{
+		return IterationCodeMaskOperations.apply( this, other, IterationCodeMaskOperations.OR );
+	}
+
+	/**
+	 * Get the difference of this mask and {@code other}, computed by merging
+	 * their raster stretches.
+	 */
+	public IterationCodeMask minus( final IterationCodeMask other )
+	{
+		return IterationCodeMaskOperations.apply( this, other, IterationCodeMaskOperations.MINUS );
+	}
+
+	/**
+	 * Get the symmetric difference of this mask and {@code other}, computed by
+	 * merging their raster stretches.
+	 */
+	public IterationCodeMask xor( final IterationCodeMask other )
+	{
+		return IterationCodeMaskOperations.apply( this, other, IterationCodeMaskOperations.XOR );
+	}
+
+	/**
+	 * Get the positions of this mask that satisfy {@code predicate}. The
+	 * predicate is tested for each position of this mask (but not for other
+	 * positions of the bounding box). For example, the intersection with an
+	 * arbitrary {@link MaskInterval} {@code m} is {@code filter( m )} and the
+	 * difference is {@code filter( m.negate() )}.
+	 */
+	public IterationCodeMask filter( final Predicate< ? super Localizable > predicate )
+	{
+		final TLongArrayList startList = new TLongArrayList();
+		final TLongArrayList endList = new TLongArrayList();
+		final Point position = new Point( n );
+		final long[] pos = new long[ n ];
+		for ( int i = 0; i < starts.length; ++i )
+		{
+			localize( starts[ i ], pos );
+			position.setPosition( pos );
+			boolean inside = false;
+			for ( long index = starts[ i ]; index <= ends[ i ]; ++index )
+			{
+				final boolean test = predicate.test( position );
+				if ( test && !inside )
+					startList.add( index );
+				else if ( !test && inside )
+					endList.add( index - 1 );
+				inside = test;
+				position.fwd( 0 );
+			}
+			if ( inside )
+				endList.add( ends[ i ] );
+		}
+		return new IterationCodeMask( this, startList.toArray(), endList.toArray() );
+	}
+
+	/**
+	 * Compute the position of the given flat index into the bounding box.
+	 */
+	void localize( final long index, final long[] position )
+	{
+		long i = index;
+		for ( int d = n - 1; d > 0; --d )
+		{
+			position[ d ] = min[ d ] + i / strides[ d ];
+			i %= strides[ d ];
+		}
+		position[ 0 ] = min[ 0 ] + i;
+	}
+
+	long[] starts()
+	{
+		return starts;
+	}
+
+	long[] ends()
+	{
+		return ends;
+	}
+
+	@Override
+	public boolean equals( final Object obj )
+	{
+		if ( !( obj instanceof IterationCodeMask ) )
+			return false;
+		final IterationCodeMask other = ( IterationCodeMask ) obj;
+		return Arrays.equals( min, other.min ) && Arrays.equals( max, other.max )
+				&& Arrays.equals( starts, other.starts ) && Arrays.equals( ends, other.ends );
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31 * Arrays.hashCode( min ) + Arrays.hashCode( starts );
+	}
+}
@@ -0,0 +1,264 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.util.iterationcode;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TLongArrayList;
+import net.imglib2.FinalInterval;
+
+/**
+ * Set operations on {@link IterationCodeMask}s, computed by merging their
+ * raster stretches line by line.
+ */
+final class IterationCodeMaskOperations
+{
+	private IterationCodeMaskOperations()
+	{}
+
+	interface Operation
+	{
+		boolean test( boolean inA, boolean inB );
+	}
+
+	static final Operation AND = ( a, b ) -> a && b;
+
+	static final Operation OR = ( a, b ) -> a || b;
+
+	static final Operation MINUS = ( a, b ) -> a && !b;
+
+	static final Operation XOR = ( a, b ) -> a != b;
+
+	/**
+	 * Compute the set of positions {@code x} for which
+	 * {@code operation.test( a.test( x ), b.test( x ) )}. The operation must
+	 * be {@code false} for positions in neither {@code a} nor {@code b}.
+	 */
+	static IterationCodeMask apply( final IterationCodeMask a, final IterationCodeMask b, final Operation operation )
+	{
+		final int n = a.numDimensions();
+		if ( b.numDimensions() != n )
+			throw new IllegalArgumentException( "masks must have the same number of dimensions" );
+
+		final StretchReader ra = new StretchReader( a );
+		final StretchReader rb = new StretchReader( b );
+		final Output out = new Output( n );
+
+		final long[] line = new long[ n ];
+		final TLongArrayList boundsA = new TLongArrayList();
+		final TLongArrayList boundsB = new TLongArrayList();
+		boolean hasA = ra.next();
+		boolean hasB = rb.next();
+		while ( hasA || hasB )
+		{
+			final long[] current = !hasB || ( hasA && compareLines( ra.position, rb.position ) <= 0 )
+					? ra.position
+					: rb.position;
+			System.arraycopy( current, 1, line, 1, n - 1 );
+
+			// Collect the boundaries of the stretches of a and b on the
+			// current line. Each boundary toggles containment.
+			boundsA.resetQuick();
+			while ( hasA && compareLines( ra.position, line ) == 0 )
+			{
+				boundsA.add( ra.position[ 0 ] );
+				boundsA.add( ra.maxX + 1 );
+				hasA = ra.next();
+			}
+			boundsB.resetQuick();
+			while ( hasB && compareLines( rb.position, line ) == 0 )
+			{
+				boundsB.add( rb.position[ 0 ] );
+				boundsB.add( rb.maxX + 1 );
+				hasB = rb.next();
+			}
+
+			boolean inA = false;
+			boolean inB = false;
+			boolean inResult = false;
+			int i = 0;
+			int j = 0;
+			while ( i < boundsA.size() || j < boundsB.size() )
+			{
+				final long x = Math.min(
+						i < boundsA.size() ? boundsA.getQuick( i ) : Long.MAX_VALUE,
+						j < boundsB.size() ? boundsB.getQuick( j ) : Long.MAX_VALUE );
+				while ( i < boundsA.size() && boundsA.getQuick( i ) == x )
+				{
+					inA = !inA;
+					++i;
+				}
+				while ( j < boundsB.size() && boundsB.getQuick( j ) == x )
+				{
+					inB = !inB;
+					++j;
+				}
+				final boolean result = operation.test( inA, inB );
+				if ( result && !inResult )
+					line[ 0 ] = x;
+				else if ( !result && inResult )
+					out.add( line, x - 1 );
+				inResult = result;
+			}
+		}
+		return out.toMask();
+	}
+
+	/**
+	 * Compare the lines (dimensions 1, ..., n-1) of two positions in flat
+	 * iteration order.
+	 */
+	private static int compareLines( final long[] p1, final long[] p2 )
+	{
+		for ( int d = p1.length - 1; d > 0; --d )
+		{
+			final int c = Long.compare( p1[ d ], p2[ d ] );
+			if ( c != 0 )
+				return c;
+		}
+		return 0;
+	}
+
+	/**
+	 * Iterates the stretches of a {@link IterationCodeMask}.
+	 */
+	private static final class StretchReader
+	{
+		private final IterationCodeMask mask;
+
+		private final long[] starts;
+
+		private final long[] ends;
+
+		private int i;
+
+		/**
+		 * Position of the first pixel of the current stretch.
+		 */
+		final long[] position;
+
+		/**
+		 * X coordinate of the last pixel of the current stretch.
+		 */
+		long maxX;
+
+		StretchReader( final IterationCodeMask mask )
+		{
+			this.mask = mask;
+			starts = mask.starts();
+			ends = mask.ends();
+			position = new long[ mask.numDimensions() ];
+			i = 0;
+		}
+
+		boolean next()
+		{
+			if ( i >= starts.length )
+				return false;
+			mask.localize( starts[ i ], position );
+			maxX = position[ 0 ] + ends[ i ] - starts[ i ];
+			++i;
+			return true;
+		}
+	}
+
+	/**
+	 * Collects the resulting stretches (in flat iteration order) and their
+	 * bounding box.
+	 */
+	private static final class Output
+	{
+		private final int n;
+
+		/**
+		 * For each stretch, the position of its first pixel followed by the
+		 * X coordinate of its last pixel.
+		 */
+		private final TLongArrayList stretches;
+
+		private final long[] min;
+
+		private final long[] max;
+
+		Output( final int n )
+		{
+			this.n = n;
+			stretches = new TLongArrayList();
+			min = new long[ n ];
+			max = new long[ n ];
+			Arrays.fill( min, Long.MAX_VALUE );
+			Arrays.fill( max, Long.MIN_VALUE );
+		}
+
+		void add( final long[] position, final long maxX )
+		{
+			stretches.add( position );
+			stretches.add( maxX );
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = Math.min( min[ d ], position[ d ] );
+				max[ d ] = Math.max( max[ d ], d == 0 ? maxX : position[ d ] );
+			}
+		}
+
+		IterationCodeMask toMask()
+		{
+			final int numStretches = stretches.size() / ( n + 1 );
+			if ( numStretches == 0 )
+			{
+				final long[] emptyMax = new long[ n ];
+				Arrays.fill( emptyMax, -1 );
+				return new IterationCodeMask( new FinalInterval( new long[ n ], emptyMax ), new long[ 0 ], new long[ 0 ] );
+			}
+
+			final long[] strides = new long[ n ];
+			strides[ 0 ] = 1;
+			for ( int d = 1; d < n; ++d )
+				strides[ d ] = strides[ d - 1 ] * ( max[ d - 1 ] - min[ d - 1 ] + 1 );
+
+			final long[] starts = new long[ numStretches ];
+			final long[] ends = new long[ numStretches ];
+			for ( int i = 0; i < numStretches; ++i )
+			{
+				final int k = i * ( n + 1 );
+				long index = 0;
+				for ( int d = 0; d < n; ++d )
+					index += ( stretches.getQuick( k + d ) - min[ d ] ) * strides[ d ];
+				starts[ i ] = index;
+				ends[ i ] = index + stretches.getQuick( k + n ) - stretches.getQuick( k );
+			}
+			return new IterationCodeMask( new FinalInterval( min, max ), starts, ends );
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.util.iterationcode;
+
+import java.util.Arrays;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+/**
+ * Skip index for an {@link IterationCode}, to {@link IterationCodeIterator#jumpFwd(long)
+ * jump} to the {@code k}-th position of the bitmask in time logarithmic in the
+ * number of raster stretches.
+ * <p>
+ * For every {@link #STRIDE}-th raster stretch of the code, the index stores
+ * the number of positions before the stretch, the index in the
+ * {@link IterationCode#getItcode() number sequence} where the stretch (or the
+ * line change preceding it) starts, and the current starting position in
+ * dimensions 1, ..., n-1 at that point. To jump, the last entry before the
+ * target position is found by binary search, and at most {@link #STRIDE}
+ * stretches are skipped from there.
+ */
+public final class IterationCodeSkipIndex
+{
+	/**
+	 * Every {@code STRIDE}-th raster stretch is indexed.
+	 */
+	public static final int STRIDE = 16;
+
+	private final int n;
+
+	private final long size;
+
+	private final long[] counts;
+
+	private final int[] itcodeIndices;
+
+	private final int[] positions;
+
+	private IterationCodeSkipIndex( final int n, final long size, final long[] counts, final int[] itcodeIndices, final int[] positions )
+	{
+		this.n = n;
+		this.size = size;
+		this.counts = counts;
+		this.itcodeIndices = itcodeIndices;
+		this.positions = positions;
+	}
+
+	/**
+	 * Build the skip index for the number sequence {@code itcode} of an
+	 * {@code n}-dimensional {@link IterationCode}.
+	 */
+	public static IterationCodeSkipIndex build( final TIntArrayList itcode, final int n )
+	{
+		final TLongArrayList counts = new TLongArrayList();
+		final TIntArrayList itcodeIndices = new TIntArrayList();
+		final TIntArrayList positions = new TIntArrayList();
+
+		final int[] position = new int[ n ];
+		int i = 0;
+		if ( !itcode.isEmpty() )
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = itcode.get( i++ );
+
+		long count = 0;
+		for ( int stretch = 0; i < itcode.size(); ++stretch )
+		{
+			if ( stretch % STRIDE == 0 )
+			{
+				counts.add( count );
+				itcodeIndices.add( i );
+				for ( int d = 1; d < n; ++d )
+					positions.add( position[ d ] );
+			}
+			int minX = itcode.get( i++ );
+			if ( minX < 0 )
+			{
+				for ( int d = 1; d <= -minX; ++d )
+					position[ d ] = itcode.get( i++ );
+				minX = itcode.get( i++ );
+			}
+			final int maxX = itcode.get( i++ );
+			count += maxX - minX + 1;
+		}
+		return new IterationCodeSkipIndex( n, count, counts.toArray(), itcodeIndices.toArray(), positions.toArray() );
+	}
+
+	/**
+	 * Get the number of positions in the bitmask.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Find the last entry that starts at or before the {@code k}-th position
+	 * (counting from 0) of the bitmask.
+	 *
+	 * @return index of the entry, or -1 if there is none.
+	 */
+	public int find( final long k )
+	{
+		final int i = Arrays.binarySearch( counts, k );
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Get the number of positions before the raster stretch of entry
+	 * {@code e}.
+	 */
+	public long count( final int e )
+	{
+		return counts[ e ];
+	}
+
+	/**
+	 * Get the index in the {@link IterationCode#getItcode() number sequence}
+	 * where the raster stretch of entry {@code e} (or the line change
+	 * preceding it) starts.
+	 */
+	public int itcodeIndex( final int e )
+	{
+		return itcodeIndices[ e ];
+	}
+
+	/**
+	 * Get the starting position in dimension {@code d} (for
+	 * {@code 1 <= d < n}) before the raster stretch of entry {@code e}. (This
+	 * does not include the line change preceding the stretch, if any.)
+	 */
+	public int position( final int e, final int d )
+	{
+		return positions[ e * ( n - 1 ) + d - 1 ];
+	}
+}
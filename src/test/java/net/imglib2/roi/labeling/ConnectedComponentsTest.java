@@ -0,0 +1,239 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.roi.BoundaryType;
+import net.imglib2.roi.KnownConstant;
+import net.imglib2.roi.boundary.Boundary.StructuringElement;
+import net.imglib2.roi.mask.integer.DefaultMaskInterval;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class ConnectedComponentsTest
+{
+	@Test
+	public void test2D()
+	{
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			final Img< BitType > mask = createRandomMask( 1, 0.5, 60, 45 );
+			assertLabelingEqualsFloodFill( mask, se, 1 );
+			assertLabelingEqualsFloodFill( mask, se, 4 );
+		}
+	}
+
+	@Test
+	public void test3D()
+	{
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			final Img< BitType > mask = createRandomMask( 2, 0.3, 20, 15, 12 );
+			assertLabelingEqualsFloodFill( mask, se, 1 );
+			assertLabelingEqualsFloodFill( mask, se, 5 );
+		}
+	}
+
+	@Test
+	public void testSummaries()
+	{
+		final Img< BitType > mask = createRandomMask( 3, 0.6, 50, 40 );
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( new CellImgFactory<>( new IntType(), 16 ).create( 50, 40 ) );
+		final LabelRegionSummaries< Integer > summaries = Parallelization.runWithNumThreads( 3,
+				() -> ConnectedComponents.labelAllConnectedComponents( mask, labeling, StructuringElement.FOUR_CONNECTED ) );
+
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		assertEquals( regions.getExistingLabels(), summaries.getExistingLabels() );
+		for ( final LabelRegion< Integer > region : regions )
+		{
+			final LabelRegionSummary< Integer > summary = summaries.getSummary( region.getLabel() );
+			assertEquals( region.size(), summary.size() );
+			assertArrayEquals( Intervals.minAsLongArray( region ), Intervals.minAsLongArray( summary ) );
+			assertArrayEquals( Intervals.maxAsLongArray( region ), Intervals.maxAsLongArray( summary ) );
+			for ( int d = 0; d < 2; ++d )
+				assertEquals( region.getCenterOfMass().getDoublePosition( d ), summary.getCenterOfMass().getDoublePosition( d ), 1e-9 );
+		}
+
+		// summaries are recomputed if the labeling changes
+		for ( final LabelingType< Integer > t : Views.interval( labeling, Intervals.createMinMax( 0, 0, 9, 9 ) ) )
+			t.add( 1 );
+		assertEquals( regions.getLabelRegion( 1 ).size(), summaries.getSummary( 1 ).size() );
+	}
+
+	@Test
+	public void testMaskInterval()
+	{
+		final FinalInterval interval = Intervals.createMinMax( -5, 3, 14, 12 );
+		final DefaultMaskInterval mask = new DefaultMaskInterval( interval, BoundaryType.UNSPECIFIED,
+				l -> l.getLongPosition( 0 ) % 5 != 0, KnownConstant.UNKNOWN );
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( Views.translate( ArrayImgs.ints( 20, 10 ), -5, 3 ) );
+		final LabelRegionSummaries< Integer > summaries = ConnectedComponents.labelAllConnectedComponents( mask, labeling, StructuringElement.EIGHT_CONNECTED );
+		assertEquals( 4, summaries.getExistingLabels().size() );
+		assertEquals( 40, summaries.getSummary( 1 ).size() );
+		assertEquals( -4, summaries.getSummary( 1 ).min( 0 ) );
+		assertEquals( -1, summaries.getSummary( 1 ).max( 0 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testNonEmptyLabeling()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 1, 20, 20 );
+		ConnectedComponents.labelAllConnectedComponents( ArrayImgs.bits( 20, 20 ), labeling, StructuringElement.FOUR_CONNECTED );
+	}
+
+	private static Img< BitType > createRandomMask( final long seed, final double density, final long... dimensions )
+	{
+		final Img< BitType > mask = ArrayImgs.bits( dimensions );
+		final Random random = new Random( seed );
+		for ( final BitType t : mask )
+			t.set( random.nextDouble() < density );
+		return mask;
+	}
+
+	private static void assertLabelingEqualsFloodFill( final Img< BitType > mask, final StructuringElement se, final int numThreads )
+	{
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( ArrayImgs.ints( Intervals.dimensionsAsLongArray( mask ) ) );
+		final LabelRegionSummaries< Integer > summaries = Parallelization.runWithNumThreads( numThreads,
+				() -> ConnectedComponents.labelAllConnectedComponents( mask, labeling, se ) );
+		final Img< IntType > expected = floodFill( mask, se );
+
+		final Cursor< IntType > ec = expected.cursor();
+		final RandomAccess< IntType > ara = labeling.getIndexImg().randomAccess();
+		int numComponents = 0;
+		while ( ec.hasNext() )
+		{
+			final int label = ec.next().get();
+			ara.setPosition( ec );
+			assertEquals( label, ara.get().get() );
+			if ( label != 0 )
+				assertEquals( Integer.valueOf( label ), labeling.getMapping().labelsAtIndex( label ).iterator().next() );
+			numComponents = Math.max( numComponents, label );
+		}
+		assertEquals( numComponents, summaries.getExistingLabels().size() );
+	}
+
+	/**
+	 * Reference labeling: flood fill components in order of their first pixel.
+	 */
+	private static Img< IntType > floodFill( final Img< BitType > mask, final StructuringElement se )
+	{
+		final Img< IntType > labels = ArrayImgs.ints( Intervals.dimensionsAsLongArray( mask ) );
+		final RandomAccess< BitType > mra = mask.randomAccess();
+		final RandomAccess< IntType > lra = labels.randomAccess();
+		final Cursor< BitType > c = Views.flatIterable( mask ).localizingCursor();
+		int label = 0;
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			lra.setPosition( c );
+			if ( !c.get().get() || lra.get().get() != 0 )
+				continue;
+			++label;
+			lra.get().set( label );
+			final ArrayDeque< long[] > queue = new ArrayDeque<>();
+			final long[] start = new long[ mask.numDimensions() ];
+			c.localize( start );
+			queue.add( start );
+			while ( !queue.isEmpty() )
+			{
+				final long[] p = queue.poll();
+				for ( final long[] q : neighbors( p, se ) )
+				{
+					if ( !Intervals.contains( mask, new Point( q ) ) )
+						continue;
+					mra.setPosition( q );
+					lra.setPosition( q );
+					if ( mra.get().get() && lra.get().get() == 0 )
+					{
+						lra.get().set( label );
+						queue.add( q );
+					}
+				}
+			}
+		}
+		return labels;
+	}
+
+	private static List< long[] > neighbors( final long[] p, final StructuringElement se )
+	{
+		final int n = p.length;
+		final List< long[] > neighbors = new ArrayList<>();
+		final long[] o = new long[ n ];
+		Arrays.fill( o, -1 );
+		while ( true )
+		{
+			int nonZero = 0;
+			for ( int d = 0; d < n; ++d )
+				if ( o[ d ] != 0 )
+					++nonZero;
+			if ( nonZero == 1 || ( nonZero > 1 && se == StructuringElement.EIGHT_CONNECTED ) )
+			{
+				final long[] q = p.clone();
+				for ( int d = 0; d < n; ++d )
+					q[ d ] += o[ d ];
+				neighbors.add( q );
+			}
+			int d = 0;
+			for ( ; d < n; ++d )
+			{
+				if ( ++o[ d ] <= 1 )
+					break;
+				o[ d ] = -1;
+			}
+			if ( d == n )
+				break;
+		}
+		return neighbors;
+	}
+}
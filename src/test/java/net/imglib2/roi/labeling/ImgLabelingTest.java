@@ -34,23 +34,34 @@
 package net.imglib2.roi.labeling;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.list.ListImgFactory;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.integer.IntType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
 import org.junit.Test;
@@ -119,6 +130,73 @@ public class ImgLabelingTest
 		final ImgLabeling< String, UnsignedIntType > labeling = ImgLabeling.fromImageAndLabels( image, Arrays.asList( "1", "1" ) );
 	}
 
+	@Test
+	public void testCreateFromImageAndLabelsLazy()
+	{
+		final Img< UnsignedIntType > image = ArrayImgs.unsignedInts( new int[] { 3 }, 1 );
+		final List< String > labels = Arrays.asList( "a", "b", "c", "d", "e", "f", "g" );
+		final ImgLabeling< String, UnsignedIntType > labeling = ImgLabeling.fromImageAndLabels( image, labels, true );
+		assertTrue( labeling.getMapping().hasCompactLabelSets() );
+		assertEquals( 8, labeling.getMapping().numSets() );
+		final LabelingType< String > t = labeling.firstElement();
+		assertEquals( asSet( "c" ), t );
+		t.add( "a" );
+		assertEquals( asSet( "a", "c" ), t );
+		assertEquals( 8, t.getIndex().getInteger() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testCreatedImgLabelingLazyRepeatingLabel()
+	{
+		final Img< UnsignedIntType > image = ArrayImgs.unsignedInts( new int[] { 2 }, 1 );
+		final ImgLabeling< String, UnsignedIntType > labeling = ImgLabeling.fromImageAndLabels( image, Arrays.asList( "1", "1" ), true );
+		// duplicates are detected when labels are first looked up
+		labeling.firstElement().add( "2" );
+	}
+
+	@Test
+	public void testFromLabelImage()
+	{
+		final int[] data = { 0, 3, 2, 3, 1 };
+		final Img< UnsignedIntType > image = ArrayImgs.unsignedInts( data, 5 );
+		final ImgLabeling< Integer, UnsignedIntType > labeling = ImgLabeling.fromLabelImage( image, 1000 );
+		final LabelingMapping< Integer > mapping = labeling.getMapping();
+		assertEquals( 1001, mapping.numSets() );
+		assertEquals( asSet(), mapping.labelsAtIndex( 0 ) );
+		assertEquals( asSet( 1000 ), mapping.labelsAtIndex( 1000 ) );
+
+		final RandomAccess< LabelingType< Integer > > ra = labeling.randomAccess();
+		ra.setPosition( 1, 0 );
+		assertEquals( asSet( 3 ), ra.get() );
+		assertTrue( ra.get().contains( 3 ) );
+		assertFalse( ra.get().contains( 2 ) );
+		assertFalse( ra.get().contains( "3" ) );
+
+		// existing (implicit) label sets are reused
+		ra.get().remove( 3 );
+		ra.get().add( 2 );
+		assertEquals( 2, data[ 1 ] );
+		assertEquals( 1001, mapping.numSets() );
+		assertEquals( mapping.intern( asSet( 2 ) ), ra.get() );
+		assertEquals( 2, mapping.intern( asSet( 2 ) ).index );
+
+		// new label sets are created after the implicit ones
+		ra.get().add( 5 );
+		assertEquals( 1001, data[ 1 ] );
+		assertEquals( asSet( 2, 5 ), ra.get() );
+		ra.setPosition( 4, 0 );
+		ra.get().add( 2000 );
+		assertEquals( asSet( 1, 2000 ), ra.get() );
+		ra.get().remove( 1 );
+		assertEquals( asSet( 2000 ), ra.get() );
+		assertEquals( 1004, mapping.numSets() );
+
+		final List< Set< Integer > > labelSets = mapping.getLabelSets();
+		assertEquals( asSet( 7 ), labelSets.get( 7 ) );
+		assertEquals( asSet( 2, 5 ), labelSets.get( 1001 ) );
+		assertTrue( mapping.getLabels().contains( 2000 ) );
+	}
+
 	@Test
 	public void testBackedByListImgRandomAccess()
 	{
@@ -174,4 +252,224 @@ public class ImgLabelingTest
 		assertTrue( pixel.equals( expected ) );
 		assertEquals( expected.hashCode(), pixel.hashCode() );
 	}
+
+	@Test
+	public void testConcurrentPainting()
+	{
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( ArrayImgs.ints( 30, 20, 16 ) );
+		final int generation = labeling.firstElement().getGeneration();
+		paintSlicesConcurrently( labeling );
+		assertSlicesPainted( labeling );
+		assertEquals( generation + 3 * 30 * 20 * 16, labeling.firstElement().getGeneration() );
+	}
+
+	/**
+	 * Paint the z-slices of {@code labeling} in parallel, adding labels
+	 * {@code x % 7}, {@code 10 + y % 5}, and {@code 20 + z} to each pixel.
+	 */
+	private static void paintSlicesConcurrently( final ImgLabeling< Integer, ? > labeling )
+	{
+		final List< Integer > slices = new ArrayList<>();
+		for ( int z = 0; z < labeling.dimension( 2 ); ++z )
+			slices.add( z );
+
+		Parallelization.runWithNumThreads( 8, () -> Parallelization.getTaskExecutor().forEach( slices, z -> {
+			final Cursor< LabelingType< Integer > > c = Views.hyperSlice( labeling, 2, z ).localizingCursor();
+			while ( c.hasNext() )
+			{
+				final LabelingType< Integer > t = c.next();
+				t.add( c.getIntPosition( 0 ) % 7 );
+				t.add( 10 + c.getIntPosition( 1 ) % 5 );
+				t.add( 20 + z );
+			}
+		} ) );
+	}
+
+	private void assertSlicesPainted( final ImgLabeling< Integer, ? > labeling )
+	{
+		final Cursor< LabelingType< Integer > > c = labeling.localizingCursor();
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > t = c.next();
+			assertEquals( asSet( c.getIntPosition( 0 ) % 7, 10 + c.getIntPosition( 1 ) % 5, 20 + c.getIntPosition( 2 ) ), t );
+		}
+	}
+
+	@Test
+	public void testCompactLabelSets()
+	{
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( ArrayImgs.ints( 30, 20, 16 ), true );
+		final LabelingMapping< Integer > mapping = labeling.getMapping();
+		assertTrue( mapping.hasCompactLabelSets() );
+
+		// paint concurrently, creating more label sets than the initial capacity
+		paintSlicesConcurrently( labeling );
+		assertSlicesPainted( labeling );
+
+		// all combinations of partial and full label sets occur
+		final int numFullSets = 7 * 5 * 16;
+		assertTrue( mapping.numSets() > numFullSets );
+
+		// interning yields equal sets with the same index
+		final Set< Integer > set = asSet( 3, 12, 25 );
+		final LabelingMapping.InternedSet< Integer > a = mapping.intern( set );
+		final LabelingMapping.InternedSet< Integer > b = mapping.intern( new HashSet<>( set ) );
+		assertEquals( a.index, b.index );
+		assertEquals( a, b );
+		assertEquals( set, a );
+		assertEquals( set.hashCode(), a.hashCode() );
+		assertEquals( set, mapping.labelsAtIndex( a.index ) );
+		assertTrue( mapping.emptySet().isEmpty() );
+
+		// the mapping can be copied to a non-compact mapping and back
+		final List< Set< Integer > > labelSets = mapping.getLabelSets();
+		final ImgLabeling< Integer, IntType > copy = ImgLabeling.fromImageAndLabelSets( labeling.getIndexImg(), labelSets );
+		assertEquals( labelSets, copy.getMapping().getLabelSets() );
+		mapping.setLabelSets( copy.getMapping().getLabelSets() );
+		assertEquals( labelSets, mapping.getLabelSets() );
+	}
+
+	@Test
+	public void testWideningIndexImg()
+	{
+		final ImgLabeling< Integer, IntType > labeling = ImgLabeling.withWideningIndexImg( 64, 64, 8 );
+		final WideningIntAccess access = ( ( ArrayImg< IntType, WideningIntAccess > ) labeling.getIndexImg() ).update( null );
+		assertEquals( 64 * 64 * 8, access.sizeInBytes() );
+
+		// more than 256 label sets, but only in the last slice (which is one block)
+		final Cursor< LabelingType< Integer > > c = labeling.localizingCursor();
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > t = c.next();
+			if ( c.getIntPosition( 2 ) < 7 )
+				t.add( 0 );
+			else
+				t.add( 1 + ( c.getIntPosition( 0 ) + 64 * c.getIntPosition( 1 ) ) % 1000 );
+		}
+		assertTrue( labeling.getMapping().numSets() > 256 );
+		assertEquals( 64 * 64 * 8 + 64 * 64, access.sizeInBytes() );
+
+		c.reset();
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > t = c.next();
+			if ( c.getIntPosition( 2 ) < 7 )
+				assertEquals( asSet( 0 ), t );
+			else
+				assertEquals( asSet( 1 + ( c.getIntPosition( 0 ) + 64 * c.getIntPosition( 1 ) ) % 1000 ), t );
+		}
+
+		// values that require 4 bytes
+		final RandomAccess< IntType > ra = labeling.getIndexImg().randomAccess();
+		final int[] values = { 0, 255, 256, 65535, 65536, 1 << 20, Integer.MAX_VALUE, 3 };
+		for ( int i = 0; i < values.length; ++i )
+		{
+			ra.setPosition( new long[] { i, 0, 0 } );
+			ra.get().set( values[ i ] );
+		}
+		for ( int i = 0; i < values.length; ++i )
+		{
+			ra.setPosition( new long[] { i, 0, 0 } );
+			assertEquals( values[ i ], ra.get().get() );
+		}
+		assertEquals( 64 * 64 * 8 + 2 * 64 * 64 + 2 * 64 * 64, access.sizeInBytes() );
+	}
+
+	@Test
+	public void testConcurrentPaintingWideningIndexImg()
+	{
+		final ImgLabeling< Integer, IntType > labeling = ImgLabeling.withWideningIndexImg( 30, 20, 16 );
+		paintSlicesConcurrently( labeling );
+		assertTrue( labeling.getMapping().numSets() > 256 );
+		assertSlicesPainted( labeling );
+	}
+
+	@Test
+	public void testRemoveUnusedLabelSets()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 7, 40, 30, 8 );
+		LabelRegionsTest.paintBox( labeling, 42, Intervals.createMinMax( 0, 0, 0, 39, 29, 3 ) );
+		LabelRegionsTest.paintBox( labeling, 43, Intervals.createMinMax( 0, 0, 4, 39, 29, 4 ) );
+		final LabelingMapping< Integer > mapping = labeling.getMapping();
+
+		// create caches before removing label sets
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		assertTrue( regions.getExistingLabels().contains( 43 ) );
+		final Map< Integer, RandomAccess< BoolType > > regionAccesses = new HashMap<>();
+		final Map< Integer, Interval > regionIntervals = new HashMap<>();
+		for ( final LabelRegion< Integer > region : regions )
+		{
+			regionAccesses.put( region.getLabel(), region.randomAccess() );
+			regionIntervals.put( region.getLabel(), new FinalInterval( region ) );
+		}
+		final RandomAccessibleInterval< BoolType > filtered = Labelings.filter( labeling, s -> s.contains( 42 ) );
+		final RandomAccessibleInterval< IntType > sizes = Labelings.convertToInts( labeling, Set::size );
+
+		// erase label 42 and 43 everywhere
+		for ( final LabelingType< Integer > t : labeling )
+		{
+			t.remove( 42 );
+			t.remove( 43 );
+		}
+		final List< Set< Integer > > expected = new ArrayList<>();
+		for ( final LabelingType< Integer > t : labeling )
+			expected.add( new HashSet<>( t ) );
+		final int numSets = mapping.numSets();
+
+		final int removed = Parallelization.runWithNumThreads( 4, labeling::removeUnusedLabelSets );
+		assertTrue( removed > 0 );
+		assertEquals( numSets - removed, mapping.numSets() );
+		assertEquals( 0, labeling.removeUnusedLabelSets() );
+		assertFalse( mapping.getLabels().contains( 42 ) );
+		assertFalse( mapping.getLabels().contains( 43 ) );
+
+		// all remaining label sets are used
+		final boolean[] used = new boolean[ mapping.numSets() ];
+		used[ 0 ] = true;
+		for ( final IntType i : Views.iterable( labeling.getIndexImg() ) )
+			used[ i.get() ] = true;
+		for ( final boolean u : used )
+			assertTrue( u );
+
+		// pixels have the same labels as before
+		final Iterator< Set< Integer > > e = expected.iterator();
+		for ( final LabelingType< Integer > t : labeling )
+			assertEquals( e.next(), t );
+
+		// caches are updated
+		for ( final Map.Entry< Integer, RandomAccess< BoolType > > entry : regionAccesses.entrySet() )
+		{
+			// region random accesses created before removing label sets
+			final Integer label = entry.getKey();
+			final RandomAccess< BoolType > ra = entry.getValue();
+			final Cursor< LabelingType< Integer > > rc = Views.interval( labeling, regionIntervals.get( label ) ).localizingCursor();
+			while ( rc.hasNext() )
+			{
+				final boolean expectedContains = rc.next().contains( label );
+				ra.setPosition( rc );
+				assertEquals( expectedContains, ra.get().get() );
+			}
+		}
+		assertFalse( regions.getExistingLabels().contains( 43 ) );
+		final LabelRegions< Integer > expectedRegions = new LabelRegions<>( labeling );
+		assertEquals( expectedRegions.getExistingLabels(), regions.getExistingLabels() );
+		for ( final Integer label : expectedRegions.getExistingLabels() )
+			assertEquals( expectedRegions.getLabelRegion( label ).size(), regions.getLabelRegion( label ).size() );
+		final Cursor< LabelingType< Integer > > c = labeling.localizingCursor();
+		final RandomAccess< BoolType > f = filtered.randomAccess();
+		final RandomAccess< IntType > s = sizes.randomAccess();
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > t = c.next();
+			f.setPosition( c );
+			s.setPosition( c );
+			assertFalse( f.get().get() );
+			assertEquals( t.size(), s.get().get() );
+		}
+
+		// the labeling can be modified after removing label sets
+		labeling.firstElement().add( 42 );
+		assertTrue( labeling.firstElement().contains( 42 ) );
+		assertTrue( mapping.getLabels().contains( 42 ) );
+	}
 }
@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.Random;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.roi.Regions;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class LabelIntensityStatisticsTest
+{
+	@Test
+	public void testArrayImgLabeling()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 5, 100, 80, 20 );
+		final Img< FloatType > img = createRandomImg( 6, 100, 80, 20 );
+		assertStatisticsEqualSampled( labeling, img, LabelIntensityStatistics.compute( labeling, img ) );
+		assertStatisticsEqualSampled( labeling, img, LabelIntensityStatistics.compute( Views.interval( labeling, labeling ), img ) );
+		assertStatisticsEqualSampled( labeling, img, Parallelization.runWithNumThreads( 4, () -> LabelIntensityStatistics.compute( labeling, img ) ) );
+	}
+
+	@Test
+	public void testCellImgLabeling()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 7, new CellImgFactory<>( new IntType(), 16 ).create( 60, 50, 30 ) );
+		final RandomAccessibleInterval< FloatType > img = Views.translate( createRandomImg( 8, 70, 50, 30 ), -5, 0, 0 );
+		assertStatisticsEqualSampled( labeling, img, LabelIntensityStatistics.compute( labeling, img ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testImgMustContainLabeling()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 5, 20, 20 );
+		LabelIntensityStatistics.compute( labeling, ArrayImgs.floats( 20, 19 ) );
+	}
+
+	private static Img< FloatType > createRandomImg( final long seed, final long... dimensions )
+	{
+		final Img< FloatType > img = ArrayImgs.floats( dimensions );
+		final Random random = new Random( seed );
+		for ( final FloatType t : img )
+			t.set( 1000 + random.nextFloat() * 100 );
+		return img;
+	}
+
+	private static void assertStatisticsEqualSampled(
+			final ImgLabeling< Integer, IntType > labeling,
+			final RandomAccessibleInterval< FloatType > img,
+			final Map< Integer, LabelIntensityStatistics< Integer > > statistics )
+	{
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		assertEquals( regions.getExistingLabels(), statistics.keySet() );
+		for ( final LabelRegion< Integer > region : regions )
+		{
+			final LabelIntensityStatistics< Integer > s = statistics.get( region.getLabel() );
+			assertEquals( region.getLabel(), s.getLabel() );
+			assertEquals( region.size(), s.size() );
+
+			double sum = 0;
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for ( final FloatType t : Regions.sample( region, img ) )
+			{
+				final double v = t.getRealDouble();
+				sum += v;
+				min = Math.min( min, v );
+				max = Math.max( max, v );
+			}
+			final double mean = sum / region.size();
+			double m2 = 0;
+			for ( final FloatType t : Regions.sample( region, img ) )
+				m2 += ( t.getRealDouble() - mean ) * ( t.getRealDouble() - mean );
+
+			assertEquals( sum, s.getSum(), 1e-9 * Math.abs( sum ) );
+			assertEquals( mean, s.getMean(), 1e-9 );
+			assertEquals( m2 / ( region.size() - 1 ), s.getVariance(), 1e-6 );
+			assertEquals( min, s.getMin(), 0 );
+			assertEquals( max, s.getMax(), 0 );
+		}
+	}
+}
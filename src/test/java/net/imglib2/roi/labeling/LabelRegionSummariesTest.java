@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class LabelRegionSummariesTest
+{
+	@Test
+	public void testArrayImgLabeling()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 5, 100, 80, 20 );
+		assertSummariesEqual( new LabelRegions<>( labeling ), new LabelRegionSummaries<>( labeling ) );
+		assertSummariesEqual( new LabelRegions<>( labeling ), new LabelRegionSummaries<>( labeling, 7, 13, 5 ) );
+		assertSummariesEqual( new LabelRegions<>( labeling ), new LabelRegionSummaries<>( Views.interval( labeling, labeling ) ) );
+	}
+
+	@Test
+	public void testCellImgLabeling()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 6, new CellImgFactory<>( new IntType(), 16, 12, 8 ).create( 100, 80, 20 ) );
+		final LabelRegionSummaries< Integer > summaries = new LabelRegionSummaries<>( labeling );
+		Parallelization.runWithNumThreads( 4, () -> summaries.getExistingLabels() );
+		assertSummariesEqual( new LabelRegions<>( labeling ), summaries );
+
+		// modifications are reflected
+		LabelRegionsTest.paintBox( labeling, 3, Intervals.createMinMax( 0, 0, 0, 99, 3, 19 ) );
+		assertSummariesEqual( new LabelRegions<>( labeling ), summaries );
+	}
+
+	private static void assertSummariesEqual( final LabelRegions< Integer > expected, final LabelRegionSummaries< Integer > actual )
+	{
+		assertEquals( expected.getExistingLabels(), actual.getExistingLabels() );
+		for ( final Integer label : expected.getExistingLabels() )
+		{
+			final LabelRegion< Integer > e = expected.getLabelRegion( label );
+			final LabelRegionSummary< Integer > a = actual.getSummary( label );
+			assertEquals( label, a.getLabel() );
+			assertEquals( e.size(), a.size() );
+			assertArrayEquals( Intervals.minAsLongArray( e ), Intervals.minAsLongArray( a ) );
+			assertArrayEquals( Intervals.maxAsLongArray( e ), Intervals.maxAsLongArray( a ) );
+			for ( int d = 0; d < e.numDimensions(); ++d )
+				assertEquals( e.getCenterOfMass().getDoublePosition( d ), a.getCenterOfMass().getDoublePosition( d ), 1e-10 );
+		}
+	}
+}
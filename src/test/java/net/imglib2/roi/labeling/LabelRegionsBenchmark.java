@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Compares computing {@link LabelRegions} by scanning the index image directly
+ * (skipping background) against scanning with a {@link Cursor}, for labelings
+ * with different fractions of labeled pixels and different index image
+ * storage (including {@link MappedImgLabelings memory-mapped} and
+ * {@link ImgLabeling#withWideningIndexImg(long...) widening} index images).
+ */
+@State( value = Scope.Benchmark )
+public class LabelRegionsBenchmark
+{
+	@Param( { "0.001", "0.01", "0.1", "0.5" } )
+	public double density;
+
+	@Param( { "array", "planar", "cell", "widening", "mapped" } )
+	public String storage;
+
+	ImgLabeling< Integer, ? > imgLabeling;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		final long[] dimensions = { 200, 200, 50 };
+		switch ( storage )
+		{
+		case "planar":
+			imgLabeling = new ImgLabeling<>( new PlanarImgFactory<>( new IntType() ).create( dimensions ) );
+			break;
+		case "cell":
+			imgLabeling = new ImgLabeling<>( new CellImgFactory<>( new IntType(), 32 ).create( dimensions ) );
+			break;
+		case "widening":
+			imgLabeling = ImgLabeling.withWideningIndexImg( dimensions );
+			break;
+		default:
+			imgLabeling = new ImgLabeling<>( new ArrayImgFactory<>( new IntType() ).create( dimensions ) );
+		}
+
+		// sparse blobs of 8 consecutive pixels with random labels
+		final Random random = new Random( 1 );
+		final Cursor< LabelingType< Integer > > cursor = imgLabeling.cursor();
+		while ( cursor.hasNext() )
+		{
+			final LabelingType< Integer > t = cursor.next();
+			if ( random.nextDouble() < density / 8 )
+			{
+				final Integer label = random.nextInt( 100 ) + 1;
+				t.add( label );
+				for ( int i = 1; i < 8 && cursor.hasNext(); ++i )
+					cursor.next().add( label );
+			}
+		}
+
+		if ( storage.equals( "mapped" ) )
+		{
+			final Path directory = Files.createTempDirectory( "labeling" );
+			directory.toFile().deleteOnExit();
+			MappedImgLabelings.save( imgLabeling, directory );
+			directory.resolve( MappedImgLabelings.INDEX_FILE ).toFile().deleteOnExit();
+			directory.resolve( MappedImgLabelings.HEADER_FILE ).toFile().deleteOnExit();
+			imgLabeling = MappedImgLabelings.open( directory );
+		}
+	}
+
+	@Benchmark
+	public void benchmarkIndexScan( final Blackhole bh )
+	{
+		bh.consume( new LabelRegions<>( imgLabeling ).getExistingLabels() );
+	}
+
+	@Benchmark
+	public void benchmarkCursorScan( final Blackhole bh )
+	{
+		// wrapping the labeling in a view forces scanning with a Cursor
+		bh.consume( new LabelRegions<>( Views.interval( imgLabeling, imgLabeling ) ).getExistingLabels() );
+	}
+
+	public static void main( final String... args ) throws RunnerException
+	{
+		final Options opt = new OptionsBuilder()
+				.include( LabelRegionsBenchmark.class.getSimpleName() )
+				.forks( 0 )
+				.warmupIterations( 4 )
+				.measurementIterations( 8 )
+				.warmupTime( TimeValue.milliseconds( 100 ) )
+				.measurementTime( TimeValue.milliseconds( 100 ) )
+				.build();
+		new Runner( opt ).run();
+	}
+}
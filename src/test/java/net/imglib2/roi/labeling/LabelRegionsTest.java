@@ -0,0 +1,547 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.roi.MaskInterval;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class LabelRegionsTest
+{
+	@Test
+	public void testRegions()
+	{
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( ArrayImgs.ints( 5, 4 ) );
+		paintBox( labeling, 1, Intervals.createMinMax( 1, 1, 2, 2 ) );
+		paintBox( labeling, 2, Intervals.createMinMax( 2, 2, 4, 3 ) );
+
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		assertEquals( 2, regions.getExistingLabels().size() );
+
+		final LabelRegion< Integer > region1 = regions.getLabelRegion( 1 );
+		assertEquals( 4, region1.size() );
+		assertArrayEquals( new long[] { 1, 1 }, Intervals.minAsLongArray( region1 ) );
+		assertArrayEquals( new long[] { 2, 2 }, Intervals.maxAsLongArray( region1 ) );
+		assertEquals( 1.5, region1.getCenterOfMass().getDoublePosition( 0 ), 0 );
+		assertEquals( 1.5, region1.getCenterOfMass().getDoublePosition( 1 ), 0 );
+
+		final LabelRegion< Integer > region2 = regions.getLabelRegion( 2 );
+		assertEquals( 6, region2.size() );
+		assertArrayEquals( new long[] { 2, 2 }, Intervals.minAsLongArray( region2 ) );
+		assertArrayEquals( new long[] { 4, 3 }, Intervals.maxAsLongArray( region2 ) );
+	}
+
+	@Test
+	public void testMultiThreadedUpdate()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 42, 40, 30, 20 );
+
+		final LabelRegions< Integer > expected = new LabelRegions<>( labeling );
+		expected.getExistingLabels();
+
+		final LabelRegions< Integer > actual = new LabelRegions<>( labeling );
+		Parallelization.runWithNumThreads( 4, () -> {
+			actual.getExistingLabels();
+		} );
+
+		assertRegionsEqual( expected, actual );
+	}
+
+	@Test
+	public void testIncrementalUpdate()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 7, 200, 160, 10 );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		final LabelRegion< Integer > region3 = regions.getLabelRegion( 3 );
+
+		final Random random = new Random( 13 );
+		for ( int i = 0; i < 10; ++i )
+		{
+			final long x = random.nextInt( 190 );
+			final long y = random.nextInt( 150 );
+			final long z = random.nextInt( 10 );
+			final Interval box = Intervals.createMinMax( x, y, z, x + 9, y + 9, z );
+			final Integer label = random.nextInt( 25 ) + 1;
+			if ( random.nextBoolean() )
+				paintBox( labeling, label, box );
+			else
+				for ( final LabelingType< Integer > t : Views.interval( labeling, box ) )
+					t.remove( label );
+
+			assertRegionsEqual( new LabelRegions<>( labeling ), regions );
+		}
+
+		if ( regions.getExistingLabels().contains( 3 ) )
+			assertSame( region3, regions.getLabelRegion( 3 ) );
+	}
+
+	@Test
+	public void testIndexImgModified()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 8, 200, 160, 10 );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		regions.getExistingLabels();
+
+		// write an existing label set index directly into the index image
+		final int index = labeling.getMapping().numSets() - 1;
+		final Interval box = Intervals.createMinMax( 10, 20, 3, 29, 39, 4 );
+		for ( final IntType t : Views.interval( labeling.getIndexImg(), box ) )
+			t.set( index );
+		labeling.indexImgModified( box );
+
+		assertRegionsEqual( new LabelRegions<>( labeling ), regions );
+	}
+
+	@Test
+	public void testRandomAccess()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 11, 40, 30 );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		final LabelRegion< Integer > region = regions.getLabelRegion( 5 );
+		final RandomAccess< BoolType > before = region.randomAccess();
+
+		// creates label sets that are not in the lookup table of "before"
+		paintBox( labeling, 5, Intervals.createMinMax( 0, 0, 39, 3 ) );
+		paintBox( labeling, 21, Intervals.createMinMax( 10, 0, 12, 29 ) );
+		final RandomAccess< BoolType > after = region.randomAccess();
+
+		final Cursor< LabelingType< Integer > > c = labeling.localizingCursor();
+		while ( c.hasNext() )
+		{
+			final boolean expected = c.next().contains( 5 );
+			before.setPosition( c );
+			after.setPosition( c );
+			assertEquals( expected, before.get().get() );
+			assertEquals( expected, after.get().get() );
+		}
+	}
+
+	@Test
+	public void testToMask()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 12, 40, 30, 6 );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		final LabelRegions< Integer > compactRegions = new LabelRegions<>( labeling, false, true );
+
+		final LabelRegion< Integer > region = regions.getLabelRegion( 5 );
+		final MaskInterval mask5 = region.toMask();
+		final MaskInterval mask7 = compactRegions.getLabelRegion( 7 ).toMask();
+		assertEquals( mask5, compactRegions.getLabelRegion( 5 ).toMask() );
+		final MaskInterval and = mask5.and( mask7 );
+		final MaskInterval or = mask5.or( mask7 );
+
+		final Interval interval = Intervals.expand( labeling, 1 );
+		final Cursor< LabelingType< Integer > > c = Views.interval( Views.extendValue( labeling, labeling.firstElement().createVariable() ), interval ).localizingCursor();
+		final List< Point > positions = new ArrayList<>();
+		final List< Boolean > expected = new ArrayList<>();
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > t = c.next();
+			assertEquals( t.contains( 5 ), mask5.test( c ) );
+			assertEquals( t.contains( 7 ), mask7.test( c ) );
+			assertEquals( t.contains( 5 ) && t.contains( 7 ), and.test( c ) );
+			assertEquals( t.contains( 5 ) || t.contains( 7 ), or.test( c ) );
+			positions.add( new Point( c ) );
+			expected.add( t.contains( 5 ) );
+		}
+
+		// the mask is detached from the labeling
+		paintBox( labeling, 5, labeling );
+		for ( int i = 0; i < positions.size(); ++i )
+			assertEquals( expected.get( i ), mask5.test( positions.get( i ) ) );
+
+		// the mask is at the current position of the region
+		region.setPosition( new long[] { 3, -2, 1 } );
+		final MaskInterval moved = region.toMask();
+		final RandomAccess< BoolType > ra = region.randomAccess();
+		for ( final Localizable pos : Views.iterable( Intervals.positions( Intervals.expand( region, 1 ) ) ) )
+		{
+			final boolean inside = Intervals.contains( region, pos );
+			if ( inside )
+				ra.setPosition( pos );
+			assertEquals( inside && ra.get().get(), moved.test( pos ) );
+		}
+	}
+
+	@Test
+	public void testSecondOrderMoments()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 17, 60, 50, 8 );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling, true );
+		assertCovarianceEqualsCursorCovariance( regions );
+
+		// incremental updates must keep the moments consistent
+		paintBox( labeling, 4, Intervals.createMinMax( 3, 5, 0, 12, 9, 2 ) );
+		for ( final LabelingType< Integer > t : Views.interval( labeling, Intervals.createMinMax( 20, 20, 3, 40, 30, 5 ) ) )
+			t.remove( 7 );
+		assertCovarianceEqualsCursorCovariance( regions );
+
+		// multi-threaded scan
+		final LabelRegions< Integer > parallel = new LabelRegions<>( labeling, true );
+		Parallelization.runWithNumThreads( 4, () -> assertCovarianceEqualsCursorCovariance( parallel ) );
+	}
+
+	@Test( expected = IllegalStateException.class )
+	public void testCovarianceRequiresSecondOrderMoments()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 17, 20, 20 );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		regions.getLabelRegion( regions.getExistingLabels().iterator().next() ).getCovariance();
+	}
+
+	private static void assertCovarianceEqualsCursorCovariance( final LabelRegions< Integer > regions )
+	{
+		for ( final LabelRegion< Integer > region : regions )
+		{
+			final int n = region.numDimensions();
+			final double[] mean = new double[ n ];
+			final Cursor< Void > c = region.cursor();
+			while ( c.hasNext() )
+			{
+				c.fwd();
+				for ( int d = 0; d < n; ++d )
+					mean[ d ] += c.getDoublePosition( d );
+			}
+			for ( int d = 0; d < n; ++d )
+				mean[ d ] /= region.size();
+
+			final double[][] expected = new double[ n ][ n ];
+			c.reset();
+			while ( c.hasNext() )
+			{
+				c.fwd();
+				for ( int d1 = 0; d1 < n; ++d1 )
+					for ( int d2 = 0; d2 < n; ++d2 )
+						expected[ d1 ][ d2 ] += ( c.getDoublePosition( d1 ) - mean[ d1 ] ) * ( c.getDoublePosition( d2 ) - mean[ d2 ] );
+			}
+
+			final double[][] actual = region.getCovariance();
+			for ( int d1 = 0; d1 < n; ++d1 )
+			{
+				assertEquals( mean[ d1 ], region.getCenterOfMass().getDoublePosition( d1 ), 1e-9 );
+				for ( int d2 = 0; d2 < n; ++d2 )
+					assertEquals( expected[ d1 ][ d2 ] / region.size(), actual[ d1 ][ d2 ], 1e-9 );
+			}
+		}
+	}
+
+	@Test
+	public void testLabelsIntersecting()
+	{
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( ArrayImgs.ints( 200, 150, 10 ) );
+		final Random random = new Random( 19 );
+		for ( int label = 1; label <= 1000; ++label )
+		{
+			final long x = random.nextInt( 190 );
+			final long y = random.nextInt( 140 );
+			final long z = random.nextInt( 10 );
+			paintBox( labeling, label, Intervals.createMinMax( x, y, z, x + random.nextInt( 10 ), y + random.nextInt( 10 ), z ) );
+		}
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+		assertLabelsIntersectingEqualsBruteForce( regions, random );
+
+		// the index is rebuilt after modifications
+		paintBox( labeling, 1001, Intervals.createMinMax( 0, 0, 0, 199, 0, 9 ) );
+		for ( final LabelingType< Integer > t : labeling )
+			t.remove( 500 );
+		assertLabelsIntersectingEqualsBruteForce( regions, random );
+	}
+
+	private static void assertLabelsIntersectingEqualsBruteForce( final LabelRegions< Integer > regions, final Random random )
+	{
+		for ( int i = 0; i < 100; ++i )
+		{
+			final long x = random.nextInt( 200 );
+			final long y = random.nextInt( 150 );
+			final long z = random.nextInt( 10 );
+			final Interval query = Intervals.createMinMax( x, y, z, x + random.nextInt( 30 ), y + random.nextInt( 30 ), z + random.nextInt( 3 ) );
+			final Set< Integer > expectedIntersecting = new HashSet<>();
+			final Set< Integer > expectedContaining = new HashSet<>();
+			for ( final LabelRegion< Integer > region : regions )
+			{
+				if ( !Intervals.isEmpty( Intervals.intersect( region, query ) ) )
+					expectedIntersecting.add( region.getLabel() );
+				if ( Intervals.contains( region, new Point( x, y, z ) ) )
+					expectedContaining.add( region.getLabel() );
+			}
+			final List< Integer > intersecting = regions.labelsIntersecting( query );
+			assertEquals( expectedIntersecting, new HashSet<>( intersecting ) );
+			assertEquals( expectedIntersecting.size(), intersecting.size() );
+			assertEquals( expectedContaining, new HashSet<>( regions.labelsContaining( new Point( x, y, z ) ) ) );
+		}
+	}
+
+	@Test
+	public void testParallelStream() throws Exception
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 23, 80, 60, 10 );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+
+		final Map< Integer, Long > expected = new HashMap<>();
+		for ( final LabelRegion< Integer > region : regions )
+			expected.put( region.getLabel(), region.size() );
+
+		// count pixels by iterating the regions concurrently
+		final ForkJoinPool pool = new ForkJoinPool( 4 );
+		final Map< Integer, Long > actual = pool.submit( () -> regions.parallelStream().collect( Collectors.toConcurrentMap(
+				LabelRegion::getLabel,
+				region -> {
+					long count = 0;
+					for ( final Cursor< Void > c = region.cursor(); c.hasNext(); c.fwd() )
+						++count;
+					return count;
+				} ) ) ).get();
+		pool.shutdown();
+		assertEquals( expected, actual );
+
+		regions.stream().forEach( region -> assertSame( regions.getLabelRegion( region.getLabel() ), region ) );
+	}
+
+	@Test
+	public void testSpliteratorBalancesSizes()
+	{
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( ArrayImgs.ints( 100, 100 ) );
+		paintBox( labeling, 1, Intervals.createMinMax( 0, 0, 99, 49 ) );
+		for ( int label = 2; label <= 51; ++label )
+			paintBox( labeling, label, Intervals.createMinMax( label, 50, label, 99 ) );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
+
+		final Spliterator< LabelRegion< Integer > > suffix = regions.spliterator();
+		assertEquals( 51, suffix.estimateSize() );
+		final Spliterator< LabelRegion< Integer > > prefix = suffix.trySplit();
+		final List< Long > sizes = new ArrayList<>();
+		prefix.forEachRemaining( region -> sizes.add( region.size() ) );
+		final int numPrefix = sizes.size();
+		suffix.forEachRemaining( region -> sizes.add( region.size() ) );
+		assertEquals( 51, sizes.size() );
+
+		// the split is the most balanced (by number of pixels) for this order
+		final long total = sizes.stream().mapToLong( Long::longValue ).sum();
+		assertEquals( 7500, total );
+		long bestImbalance = Long.MAX_VALUE;
+		long imbalance = 0;
+		for ( int i = 1, prefixSize = 0; i < sizes.size(); ++i )
+		{
+			prefixSize += sizes.get( i - 1 );
+			bestImbalance = Math.min( bestImbalance, Math.abs( total - 2 * prefixSize ) );
+			if ( i == numPrefix )
+				imbalance = Math.abs( total - 2 * prefixSize );
+		}
+		assertEquals( bestImbalance, imbalance );
+	}
+
+	@Test
+	public void testCompactIterationCodes()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 7, 200, 160, 10 );
+		final LabelRegions< Integer > regions = new LabelRegions<>( labeling, false, true );
+		Parallelization.runWithNumThreads( 4, () -> {
+			assertRegionsEqual( new LabelRegions<>( labeling ), regions );
+		} );
+
+		final Random random = new Random( 17 );
+		for ( int i = 0; i < 5; ++i )
+		{
+			final long x = random.nextInt( 190 );
+			final long y = random.nextInt( 150 );
+			final long z = random.nextInt( 10 );
+			final Interval box = Intervals.createMinMax( x, y, z, x + 9, y + 9, z );
+			paintBox( labeling, random.nextInt( 25 ) + 1, box );
+			assertRegionsEqual( new LabelRegions<>( labeling ), regions );
+		}
+
+		// copies of a partially iterated cursor continue independently
+		final LabelRegion< Integer > largest = regions.stream().max( Comparator.comparingLong( LabelRegion::size ) ).get();
+		final LabelRegionCursor c = largest.cursor();
+		c.jumpFwd( largest.size() / 2 );
+		final LabelRegionCursor copy = c.copy();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			copy.fwd();
+			assertArrayEquals( positionOf( c ), positionOf( copy ) );
+		}
+		assertEquals( c.hasNext(), copy.hasNext() );
+	}
+
+	@Test
+	public void testJumpFwd()
+	{
+		final ImgLabeling< Integer, IntType > labeling = createRandomLabeling( 3, 60, 50, 40 );
+		assertJumpFwdEqualsFwd( new LabelRegions<>( labeling ) );
+		assertJumpFwdEqualsFwd( new LabelRegions<>( labeling, false, true ) );
+	}
+
+	private static void assertJumpFwdEqualsFwd( final LabelRegions< Integer > regions )
+	{
+		for ( final LabelRegion< Integer > region : regions )
+		{
+			for ( final long step : new long[] { 1, 7, 100, 1001, region.size() / 3 + 1 } )
+			{
+				final Cursor< ? > expected = region.cursor();
+				final Cursor< ? > actual = region.cursor();
+				for ( long i = step; i <= region.size(); i += step )
+				{
+					for ( long j = 0; j < step; ++j )
+						expected.fwd();
+					actual.jumpFwd( step );
+					assertArrayEquals( positionOf( expected ), positionOf( actual ) );
+					assertEquals( expected.hasNext(), actual.hasNext() );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testIndexScan()
+	{
+		assertIndexScanEqualsCursorScan( createRandomLabeling( 1, ArrayImgs.unsignedBytes( 30, 20, 10 ) ) );
+		assertIndexScanEqualsCursorScan( createRandomLabeling( 2, ArrayImgs.longs( 30, 20, 10 ) ) );
+		assertIndexScanEqualsCursorScan( createRandomLabeling( 3, PlanarImgs.shorts( 30, 20 ) ) );
+		assertIndexScanEqualsCursorScan( createRandomLabeling( 4, PlanarImgs.unsignedShorts( 30, 20, 4, 3 ) ) );
+		assertIndexScanEqualsCursorScan( createRandomLabeling( 5, new CellImgFactory<>( new IntType(), 7 ).create( 30, 20, 10 ) ) );
+		assertIndexScanEqualsCursorScan( createRandomLabeling( 6, new CellImgFactory<>( new IntType(), 5, 30, 3 ).create( 2000, 20, 10 ) ) );
+		assertIndexScanEqualsCursorScan( createRandomLabeling( 7, WideningIntAccess.createImg( 30, 20, 10 ) ) );
+	}
+
+	private static void assertIndexScanEqualsCursorScan( final ImgLabeling< Integer, ? > labeling )
+	{
+		// wrapping the labeling in a view forces scanning with a Cursor
+		final LabelRegions< Integer > expected = new LabelRegions<>( Views.interval( labeling, labeling ) );
+		final LabelRegions< Integer > actual = new LabelRegions<>( labeling );
+		assertRegionsEqual( expected, actual );
+	}
+
+	static ImgLabeling< Integer, IntType > createRandomLabeling( final long seed, final long... dimensions )
+	{
+		return createRandomLabeling( seed, ArrayImgs.ints( dimensions ) );
+	}
+
+	static < I extends IntegerType< I > > ImgLabeling< Integer, I > createRandomLabeling( final long seed, final Img< I > indexImg )
+	{
+		final ImgLabeling< Integer, I > labeling = new ImgLabeling<>( indexImg );
+		final Random random = new Random( seed );
+		final long[] dimensions = Intervals.dimensionsAsLongArray( indexImg );
+		final int n = dimensions.length;
+		for ( int label = 1; label <= 20; ++label )
+		{
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = random.nextInt( ( int ) dimensions[ d ] );
+				max[ d ] = Math.min( dimensions[ d ] - 1, min[ d ] + random.nextInt( ( int ) dimensions[ d ] / 2 + 1 ) );
+			}
+			paintBox( labeling, label, Intervals.createMinMax( concat( min, max ) ) );
+		}
+		return labeling;
+	}
+
+	static void paintBox( final RandomAccessibleInterval< LabelingType< Integer > > labeling, final Integer label, final Interval box )
+	{
+		for ( final LabelingType< Integer > t : Views.interval( labeling, box ) )
+			t.add( label );
+	}
+
+	static void assertRegionsEqual( final LabelRegions< Integer > expected, final LabelRegions< Integer > actual )
+	{
+		assertEquals( expected.getExistingLabels(), actual.getExistingLabels() );
+		for ( final Integer label : expected.getExistingLabels() )
+		{
+			final LabelRegion< Integer > e = expected.getLabelRegion( label );
+			final LabelRegion< Integer > a = actual.getLabelRegion( label );
+			assertEquals( e.size(), a.size() );
+			assertArrayEquals( Intervals.minAsLongArray( e ), Intervals.minAsLongArray( a ) );
+			assertArrayEquals( Intervals.maxAsLongArray( e ), Intervals.maxAsLongArray( a ) );
+			for ( int d = 0; d < e.numDimensions(); ++d )
+				assertEquals( e.getCenterOfMass().getDoublePosition( d ), a.getCenterOfMass().getDoublePosition( d ), 0 );
+			final Cursor< ? > ec = e.cursor();
+			final Cursor< ? > ac = a.cursor();
+			while ( ec.hasNext() )
+			{
+				ec.fwd();
+				ac.fwd();
+				assertArrayEquals( positionOf( ec ), positionOf( ac ) );
+			}
+			assertEquals( ec.hasNext(), ac.hasNext() );
+		}
+	}
+
+	private static long[] positionOf( final Cursor< ? > c )
+	{
+		final long[] position = new long[ c.numDimensions() ];
+		c.localize( position );
+		return position;
+	}
+
+	private static long[] concat( final long[] min, final long[] max )
+	{
+		final long[] minmax = new long[ min.length + max.length ];
+		System.arraycopy( min, 0, minmax, 0, min.length );
+		System.arraycopy( max, 0, minmax, min.length, max.length );
+		return minmax;
+	}
+}
@@ -41,12 +41,24 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 
+import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.roi.MaskInterval;
+import net.imglib2.roi.Regions;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
 
 import org.junit.Test;
 
@@ -162,4 +174,135 @@ public class LabelingsTest
 		return new TreeSet<>( Arrays.asList( values ) );
 	}
 
+
+	@Test
+	public void testPaintAndErase()
+	{
+		final ImgLabeling< Integer, IntType > expected = LabelRegionsTest.createRandomLabeling( 3, 60, 50, 10 );
+		final ImgLabeling< Integer, IntType > actual = LabelRegionsTest.createRandomLabeling( 3, 60, 50, 10 );
+		final LabelRegions< Integer > actualRegions = new LabelRegions<>( actual );
+		final LabelRegion< Integer > region = new LabelRegions<>( expected ).getLabelRegion( 4 );
+
+		for ( final LabelingType< Integer > t : Regions.sample( region, expected ) )
+			t.add( 42 );
+		final int generation = actual.firstElement().getGeneration();
+		Labelings.paint( actual, region, 42 );
+		assertTrue( generation != actual.firstElement().getGeneration() );
+		assertLabelingsEqual( expected, actual );
+		LabelRegionsTest.assertRegionsEqual( new LabelRegions<>( actual ), actualRegions );
+
+		for ( final LabelingType< Integer > t : Regions.sample( region, expected ) )
+			t.remove( 7 );
+		Parallelization.runWithNumThreads( 4, () -> Labelings.erase( actual, region, 7 ) );
+		assertLabelingsEqual( expected, actual );
+		LabelRegionsTest.assertRegionsEqual( new LabelRegions<>( actual ), actualRegions );
+	}
+
+	@Test
+	public void testPaintAndEraseParallel()
+	{
+		// regions large enough to be split into several slabs
+		final ImgLabeling< Integer, IntType > expected = LabelRegionsTest.createRandomLabeling( 4, 100, 80, 20 );
+		final ImgLabeling< Integer, IntType > actual = LabelRegionsTest.createRandomLabeling( 4, 100, 80, 20 );
+		final ImgLabeling< Integer, IntType > source = LabelRegionsTest.createRandomLabeling( 5, 100, 80, 20 );
+		LabelRegionsTest.paintBox( source, 100, Intervals.createMinMax( 10, 5, 2, 89, 74, 17 ) );
+		final MaskInterval mask = Labelings.filterMask( source, s -> s.contains( 2 ) );
+		final LabelRegion< Integer > region = new LabelRegions<>( source ).getLabelRegion( 100 );
+		final LabelRegions< Integer > actualRegions = new LabelRegions<>( actual );
+
+		for ( final LabelingType< Integer > t : Regions.sample( mask, expected ) )
+			t.add( 42 );
+		Parallelization.runWithNumThreads( 4, () -> Labelings.paint( actual, mask, 42 ) );
+		assertLabelingsEqual( expected, actual );
+		LabelRegionsTest.assertRegionsEqual( new LabelRegions<>( actual ), actualRegions );
+
+		for ( final LabelingType< Integer > t : Regions.sample( region, expected ) )
+			t.remove( 42 );
+		Parallelization.runWithNumThreads( 4, () -> Labelings.erase( actual, region, 42 ) );
+		assertLabelingsEqual( expected, actual );
+		LabelRegionsTest.assertRegionsEqual( new LabelRegions<>( actual ), actualRegions );
+	}
+
+	@Test
+	public void testFilter()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 5, 40, 30, 8 );
+		final Predicate< Set< Integer > > predicate = s -> s.contains( 3 ) && !s.contains( 5 );
+		final RandomAccessibleInterval< BoolType > filtered = Labelings.filter( labeling, predicate );
+		// wrapping the labeling in a view uses the LabelingType path
+		final RandomAccessibleInterval< BoolType > filteredView = Labelings.filter( Views.interval( labeling, labeling ), predicate );
+		final MaskInterval mask = Labelings.filterMask( labeling, predicate );
+		assertFilterEquals( labeling, predicate, filtered, filteredView, mask );
+
+		// label sets created after the views are looked up too
+		LabelRegionsTest.paintBox( labeling, 3, Intervals.createMinMax( 0, 0, 0, 39, 4, 7 ) );
+		LabelRegionsTest.paintBox( labeling, 42, Intervals.createMinMax( 0, 0, 0, 9, 29, 7 ) );
+		assertFilterEquals( labeling, predicate, filtered, filteredView, mask );
+	}
+
+	@Test
+	public void testConvertToInts()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 5, 40, 30, 8 );
+		final ToIntFunction< Set< Integer > > function = s -> s.stream().mapToInt( Integer::intValue ).sum();
+		final RandomAccessibleInterval< IntType > converted = Labelings.convertToInts( labeling, function );
+		// wrapping the labeling in a view uses the LabelingType path
+		final RandomAccessibleInterval< IntType > convertedView = Labelings.convertToInts( Views.interval( labeling, labeling ), function );
+		final RandomAccessibleInterval< LongType > longs = Labelings.convertToLongs( labeling, s -> s.size() );
+		final RandomAccessibleInterval< ARGBType > argb = Labelings.convertToARGB( labeling, s -> s.isEmpty() ? 0 : 0xff00ff00 );
+
+		// label sets created after the views are looked up too
+		LabelRegionsTest.paintBox( labeling, 42, Intervals.createMinMax( 0, 0, 0, 9, 29, 7 ) );
+
+		final Img< IntType > materialized = Parallelization.runWithNumThreads( 4, () -> Labelings.materialize( converted ) );
+		final Cursor< LabelingType< Integer > > c = labeling.localizingCursor();
+		final RandomAccess< IntType > a = converted.randomAccess();
+		final RandomAccess< IntType > b = convertedView.randomAccess();
+		final RandomAccess< IntType > m = materialized.randomAccess();
+		final RandomAccess< LongType > l = longs.randomAccess();
+		final RandomAccess< ARGBType > r = argb.randomAccess();
+		while ( c.hasNext() )
+		{
+			final Set< Integer > set = c.next();
+			a.setPosition( c );
+			b.setPosition( c );
+			m.setPosition( c );
+			l.setPosition( c );
+			r.setPosition( c );
+			assertEquals( function.applyAsInt( set ), a.get().get() );
+			assertEquals( function.applyAsInt( set ), b.get().get() );
+			assertEquals( function.applyAsInt( set ), m.get().get() );
+			assertEquals( set.size(), l.get().get() );
+			assertEquals( set.isEmpty() ? 0 : 0xff00ff00, r.get().get() );
+		}
+	}
+
+	private static void assertFilterEquals(
+			final ImgLabeling< Integer, ? > labeling,
+			final Predicate< Set< Integer > > predicate,
+			final RandomAccessibleInterval< BoolType > filtered,
+			final RandomAccessibleInterval< BoolType > filteredView,
+			final MaskInterval mask )
+	{
+		final Cursor< LabelingType< Integer > > c = labeling.localizingCursor();
+		final RandomAccess< BoolType > a = filtered.randomAccess();
+		final RandomAccess< BoolType > b = filteredView.randomAccess();
+		while ( c.hasNext() )
+		{
+			final boolean expected = predicate.test( c.next() );
+			a.setPosition( c );
+			b.setPosition( c );
+			assertEquals( expected, a.get().get() );
+			assertEquals( expected, b.get().get() );
+			assertEquals( expected, mask.test( c ) );
+		}
+	}
+
+	private static void assertLabelingsEqual( final ImgLabeling< Integer, ? > expected, final ImgLabeling< Integer, ? > actual )
+	{
+		final Cursor< LabelingType< Integer > > e = expected.cursor();
+		final Cursor< LabelingType< Integer > > a = actual.cursor();
+		while ( e.hasNext() )
+			assertEquals( e.next(), a.next() );
+	}
 }
@@ -0,0 +1,209 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.Intervals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedImgLabelingsTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSaveAndOpen() throws IOException
+	{
+		assertSaveAndOpen( ArrayImgs.unsignedBytes( 30, 20, 10 ) );
+		assertSaveAndOpen( ArrayImgs.bytes( 30, 20, 10 ) );
+		assertSaveAndOpen( ArrayImgs.unsignedShorts( 30, 20 ) );
+		assertSaveAndOpen( ArrayImgs.shorts( 30, 20, 10 ) );
+		assertSaveAndOpen( ArrayImgs.unsignedInts( 30, 20, 10 ) );
+		assertSaveAndOpen( ArrayImgs.ints( 30, 20, 10, 2 ) );
+		assertSaveAndOpen( ArrayImgs.longs( 30, 20, 10 ) );
+	}
+
+	private < I extends IntegerType< I > > void assertSaveAndOpen( final Img< I > indexImg ) throws IOException
+	{
+		final ImgLabeling< Integer, I > labeling = LabelRegionsTest.createRandomLabeling( 1, indexImg );
+		final Path directory = folder.newFolder().toPath();
+		MappedImgLabelings.save( labeling, directory );
+
+		final ImgLabeling< Integer, ? > opened = MappedImgLabelings.open( directory );
+		assertArrayEquals( Intervals.dimensionsAsLongArray( labeling ), Intervals.dimensionsAsLongArray( opened ) );
+		assertEquals( labeling.getMapping().getLabelSets(), opened.getMapping().getLabelSets() );
+		assertLabelingsEqual( labeling, opened );
+		LabelRegionsTest.assertRegionsEqual( new LabelRegions<>( labeling ), new LabelRegions<>( opened ) );
+
+		// map in slabs of 3 hyperplanes
+		final long hyperplaneBytes = Intervals.numElements( labeling ) / labeling.dimension( labeling.numDimensions() - 1 ) * indexImg.firstElement().getBitsPerPixel() / 8;
+		assertLabelingsEqual( labeling, MappedImgLabelings.open( directory, false, 3 * hyperplaneBytes ) );
+	}
+
+	@Test( expected = ReadOnlyBufferException.class )
+	public void testReadOnly() throws IOException
+	{
+		final Path directory = folder.newFolder().toPath();
+		MappedImgLabelings.save( LabelRegionsTest.createRandomLabeling( 2, 10, 10 ), directory );
+		final ImgLabeling< Integer, ? > opened = MappedImgLabelings.open( directory );
+		opened.firstElement().add( 100 );
+	}
+
+	@Test
+	public void testWritable() throws IOException
+	{
+		final ImgLabeling< Integer, ? > labeling = LabelRegionsTest.createRandomLabeling( 3, 40, 30, 5 );
+		final Path directory = folder.newFolder().toPath();
+		MappedImgLabelings.save( labeling, directory );
+
+		final ImgLabeling< Integer, ? > opened = MappedImgLabelings.open( directory, true );
+		LabelRegionsTest.paintBox( labeling, 100, Intervals.createMinMax( 3, 4, 1, 20, 10, 3 ) );
+		LabelRegionsTest.paintBox( opened, 100, Intervals.createMinMax( 3, 4, 1, 20, 10, 3 ) );
+		MappedImgLabelings.saveLabelSets( opened, directory );
+
+		final ImgLabeling< Integer, ? > reopened = MappedImgLabelings.open( directory );
+		assertLabelingsEqual( labeling, reopened );
+		assertTrue( reopened.getMapping().getLabels().contains( 100 ) );
+	}
+
+	@Test
+	public void testStringLabels() throws IOException
+	{
+		final ImgLabeling< String, ? > labeling = new ImgLabeling<>( ArrayImgs.unsignedShorts( 10, 10 ) );
+		labeling.firstElement().add( "a" );
+		labeling.firstElement().add( "b" );
+		labeling.randomAccess().setPositionAndGet( 5, 5 ).add( "b" );
+		final Path directory = folder.newFolder().toPath();
+		MappedImgLabelings.save( labeling, directory );
+
+		final ImgLabeling< String, ? > opened = MappedImgLabelings.open( directory );
+		assertEquals( labeling.getMapping().getLabelSets(), opened.getMapping().getLabelSets() );
+		assertEquals( labeling.firstElement(), opened.firstElement() );
+	}
+
+	@Test
+	public void testUnsupportedLabels() throws IOException
+	{
+		final ImgLabeling< Object, ? > labeling = new ImgLabeling<>( ArrayImgs.unsignedShorts( 10, 10 ) );
+		labeling.firstElement().add( new Object() );
+		final Path directory = folder.newFolder().toPath();
+		try
+		{
+			MappedImgLabelings.save( labeling, directory );
+			fail();
+		}
+		catch ( final IllegalArgumentException e )
+		{
+			assertFalse( Files.exists( directory.resolve( MappedImgLabelings.INDEX_FILE ) ) );
+			assertFalse( Files.exists( directory.resolve( MappedImgLabelings.HEADER_FILE ) ) );
+		}
+	}
+
+	@Test
+	public void testInvalidLabelSets() throws IOException
+	{
+		// first label set not empty
+		assertOpenFails( new int[][] { { 0 }, {} } );
+		// duplicate label sets
+		assertOpenFails( new int[][] { {}, { 0 }, { 0 } } );
+		// label id out of bounds
+		assertOpenFails( new int[][] { {}, { 1 } } );
+	}
+
+	/**
+	 * Write a header with one Integer label and the given label sets (as
+	 * label ids) and check that opening fails with an {@link IOException}.
+	 */
+	private void assertOpenFails( final int[][] labelSets ) throws IOException
+	{
+		final Path directory = folder.newFolder().toPath();
+		try (final DataOutputStream out = new DataOutputStream( Files.newOutputStream( directory.resolve( MappedImgLabelings.HEADER_FILE ) ) ))
+		{
+			out.writeInt( 2 );
+			out.writeInt( 1 );
+			out.writeLong( 4 );
+			out.writeUTF( "UINT8" );
+			out.writeInt( 1 );
+			out.writeByte( 0 );
+			out.writeInt( 42 );
+			out.writeInt( labelSets.length );
+			for ( final int[] labelSet : labelSets )
+			{
+				out.writeInt( labelSet.length );
+				for ( final int id : labelSet )
+					out.writeInt( id );
+			}
+		}
+		Files.write( directory.resolve( MappedImgLabelings.INDEX_FILE ), new byte[ 4 ] );
+		try
+		{
+			MappedImgLabelings.open( directory );
+			fail();
+		}
+		catch ( final IOException e )
+		{
+			// expected
+		}
+	}
+
+	private static void assertLabelingsEqual( final ImgLabeling< Integer, ? > expected, final ImgLabeling< Integer, ? > actual )
+	{
+		final Cursor< LabelingType< Integer > > e = expected.localizingCursor();
+		final Cursor< LabelingType< Integer > > a = actual.localizingCursor();
+		while ( e.hasNext() )
+		{
+			assertEquals( e.next(), a.next() );
+			for ( int d = 0; d < e.numDimensions(); ++d )
+				assertEquals( e.getLongPosition( d ), a.getLongPosition( d ) );
+		}
+	}
+}
@@ -47,6 +47,7 @@ import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.real.DoubleType;
@@ -116,6 +117,38 @@ public class OverlappingLabelsTest
 		assertEquals( 0.25, overlap.getPartialOverlapForIndex( 2, 1 ), 0.0 );
 	}
 
+	@Test
+	public void testManyLabels()
+	{
+		// pixel (i, 0) has label i, pixel (i, 1) has labels i and i + 1
+		final int numLabels = 50000;
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( ArrayImgs.ints( numLabels, 2 ) );
+		final RandomAccess< LabelingType< Integer > > labelingRa = labeling.randomAccess();
+		for ( int i = 0; i < numLabels; ++i )
+		{
+			labelingRa.setPosition( new int[] { i, 0 } );
+			labelingRa.get().add( i );
+			labelingRa.setPosition( new int[] { i, 1 } );
+			labelingRa.get().add( i );
+			if ( i + 1 < numLabels )
+				labelingRa.get().add( i + 1 );
+		}
+
+		final OverlappingLabels< Integer > overlap = new OverlappingLabels<>( labeling );
+		assertEquals( numLabels, overlap.getIndexedLabels().size() );
+		assertEquals( 3, overlap.getPixelOverlap( 100, 100 ) );
+		assertEquals( 1, overlap.getPixelOverlap( 100, 101 ) );
+		assertEquals( 1, overlap.getPixelOverlap( 101, 100 ) );
+		assertEquals( 0, overlap.getPixelOverlap( 100, 102 ) );
+		assertEquals( 1.0 / 3, overlap.getPartialOverlap( 100, 101 ), 0.0 );
+
+		final RandomAccess< UnsignedIntType > ra = overlap.getMatrix().randomAccess();
+		ra.setPosition( new int[] { 40000, 40001 } );
+		assertEquals( 1, ra.get().get() );
+		ra.setPosition( new int[] { 40000, 40002 } );
+		assertEquals( 0, ra.get().get() );
+	}
+
 	private ImgLabeling< Integer, UnsignedByteType > createTestLabeling()
 	{
 		Img< UnsignedByteType > indexImg = ArrayImgs.unsignedBytes( new byte[] { 0, 1, 1, 2, 5, 4, 0, 3, 3 }, 3, 3 );
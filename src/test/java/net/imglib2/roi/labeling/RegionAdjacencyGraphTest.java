@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.labeling;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.imglib2.Cursor;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.roi.boundary.Boundary.StructuringElement;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class RegionAdjacencyGraphTest
+{
+	@Test
+	public void testTwoRegions()
+	{
+		final ImgLabeling< Integer, IntType > labeling = new ImgLabeling<>( new CellImgFactory<>( new IntType() ).create( 4, 3 ) );
+		LabelRegionsTest.paintBox( labeling, 1, Intervals.createMinMax( 0, 0, 1, 2 ) );
+		LabelRegionsTest.paintBox( labeling, 2, Intervals.createMinMax( 2, 0, 3, 2 ) );
+
+		final RegionAdjacencyGraph< Integer > four = new RegionAdjacencyGraph<>( labeling, StructuringElement.FOUR_CONNECTED );
+		assertEquals( 3, four.getContacts( 1, 2 ) );
+		assertEquals( 3, four.getContacts( 2, 1 ) );
+		assertEquals( 1, four.numEdges() );
+		assertEquals( Arrays.asList( 2 ), four.getNeighbors( 1 ) );
+
+		final RegionAdjacencyGraph< Integer > eight = new RegionAdjacencyGraph<>( labeling, StructuringElement.EIGHT_CONNECTED );
+		assertEquals( 7, eight.getContacts( 1, 2 ) );
+	}
+
+	@Test
+	public void testRandomLabeling()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 3, 40, 30, 8 );
+		for ( final StructuringElement se : StructuringElement.values() )
+		{
+			final Map< List< Integer >, Long > expected = bruteForceContacts( labeling, se );
+			assertGraphEquals( expected, new RegionAdjacencyGraph<>( labeling, se ) );
+			assertGraphEquals( expected, new RegionAdjacencyGraph<>( Views.interval( labeling, labeling ), se ) );
+			assertGraphEquals( expected, Parallelization.runWithNumThreads( 4, () -> new RegionAdjacencyGraph<>( labeling, se ) ) );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testUnknownLabel()
+	{
+		final ImgLabeling< Integer, IntType > labeling = LabelRegionsTest.createRandomLabeling( 3, 20, 20 );
+		new RegionAdjacencyGraph<>( labeling ).getNeighbors( 1000 );
+	}
+
+	private static void assertGraphEquals( final Map< List< Integer >, Long > expected, final RegionAdjacencyGraph< Integer > graph )
+	{
+		assertEquals( expected.size(), graph.numEdges() );
+		for ( final Map.Entry< List< Integer >, Long > entry : expected.entrySet() )
+			assertEquals( entry.getValue().longValue(), graph.getContacts( entry.getKey().get( 0 ), entry.getKey().get( 1 ) ) );
+		final List< Integer > labels = graph.getIndexedLabels();
+		for ( int i = 0; i < labels.size(); ++i )
+		{
+			final int[] neighbors = graph.getNeighborsForIndex( i );
+			int numExpected = 0;
+			for ( final List< Integer > pair : expected.keySet() )
+				if ( pair.contains( labels.get( i ) ) )
+					++numExpected;
+			assertEquals( numExpected, neighbors.length );
+			final int[] sorted = neighbors.clone();
+			Arrays.sort( sorted );
+			assertArrayEquals( sorted, neighbors );
+		}
+	}
+
+	/**
+	 * Count contacts by visiting all neighbors of all pixels.
+	 */
+	private static Map< List< Integer >, Long > bruteForceContacts( final ImgLabeling< Integer, IntType > labeling, final StructuringElement se )
+	{
+		final int n = labeling.numDimensions();
+		final Map< List< Integer >, Long > contacts = new HashMap<>();
+		final Cursor< LabelingType< Integer > > c = labeling.localizingCursor();
+		final RandomAccess< LabelingType< Integer > > ra = labeling.randomAccess();
+		final long[] pos = new long[ n ];
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > p = c.next();
+			for ( int o = 0; o < Math.pow( 3, n ); ++o )
+			{
+				int nonZero = 0;
+				for ( int d = 0, r = o; d < n; ++d, r /= 3 )
+				{
+					final int offset = r % 3 - 1;
+					pos[ d ] = c.getLongPosition( d ) + offset;
+					if ( offset != 0 )
+						++nonZero;
+				}
+				if ( nonZero == 0 || ( nonZero > 1 && se == StructuringElement.FOUR_CONNECTED ) || !Intervals.contains( labeling, new Point( pos ) ) )
+					continue;
+				ra.setPosition( pos );
+				final LabelingType< Integer > q = ra.get();
+				for ( final Integer a : p )
+					for ( final Integer b : q )
+						if ( !q.contains( a ) && !p.contains( b ) && a < b )
+							contacts.merge( Arrays.asList( a, b ), 1L, Long::sum );
+			}
+		}
+		return contacts;
+	}
+}
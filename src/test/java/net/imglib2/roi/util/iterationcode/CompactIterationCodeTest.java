@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.util.iterationcode;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.imglib2.Point;
+
+import org.junit.Test;
+
+public class CompactIterationCodeTest
+{
+	@Test
+	public void testRoundTrip()
+	{
+		final Random random = new Random( 1 );
+		for ( int n = 1; n <= 4; ++n )
+		{
+			final IterationCodeBuilder builder = new IterationCodeBuilder( n, -3 );
+			final Point p = new Point( n );
+			final long[] pos = new long[ n ];
+			for ( int i = 0; i < 1000; ++i )
+			{
+				// random positions in flat iteration order, with some gaps
+				int d = 0;
+				pos[ 0 ] += 1 + ( random.nextInt( 4 ) == 0 ? random.nextInt( 100 ) : 0 );
+				while ( d < n - 1 && random.nextInt( 20 ) == 0 )
+				{
+					pos[ d ] = random.nextInt( 200 );
+					pos[ ++d ] += 1 + random.nextInt( 3 );
+				}
+				p.setPosition( pos );
+				builder.add( p );
+			}
+			builder.finish();
+
+			final TIntArrayList itcode = builder.getItcode();
+			final CompactIterationCode compact = CompactIterationCode.encode( itcode, n );
+			assertArrayEquals( itcode.toArray(), compact.decode().toArray() );
+		}
+
+		assertTrue( CompactIterationCode.encode( new TIntArrayList(), 3 ).isEmpty() );
+	}
+
+	@Test
+	public void testSizeOfBall()
+	{
+		final int r = 50;
+		final IterationCodeBuilder builder = new IterationCodeBuilder( 3, 0 );
+		final Point p = new Point( 3 );
+		for ( int z = -r; z <= r; ++z )
+			for ( int y = -r; y <= r; ++y )
+				for ( int x = -r; x <= r; ++x )
+					if ( x * x + y * y + z * z <= r * r )
+					{
+						p.setPosition( new long[] { x, y, z } );
+						builder.add( p );
+					}
+		builder.finish();
+
+		final TIntArrayList itcode = builder.getItcode();
+		final CompactIterationCode compact = CompactIterationCode.encode( itcode, 3 );
+		assertArrayEquals( itcode.toArray(), compact.decode().toArray() );
+		assertTrue( 4 * itcode.size() >= 3 * compact.sizeInBytes() );
+
+		// the compact code is iterated like the original
+		final Point expectedPosition = new Point( 3 );
+		final IterationCodeIterator< Point > expected = new IterationCodeIterator<>( builder, new long[ 3 ], expectedPosition );
+		final Point actualPosition = new Point( 3 );
+		final IterationCodeListIterator< Point > actual = new IterationCodeListIterator<>( new CompactIterationCode[] { compact }, new long[ 3 ], actualPosition );
+		long size = 0;
+		while ( expected.hasNext() )
+		{
+			expected.fwd();
+			actual.fwd();
+			assertEquals( expectedPosition, actualPosition );
+			++size;
+		}
+		assertEquals( expected.hasNext(), actual.hasNext() );
+		assertEquals( builder.getSize(), size );
+	}
+}
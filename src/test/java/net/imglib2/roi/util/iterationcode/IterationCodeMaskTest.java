@@ -0,0 +1,173 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.util.iterationcode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.roi.IterableRegion;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+public class IterationCodeMaskTest
+{
+	@Test
+	public void testOperations()
+	{
+		final RandomAccessibleInterval< BitType > a = randomBits( 1, Intervals.createMinMax( 0, 0, 0, 29, 19, 9 ) );
+		final RandomAccessibleInterval< BitType > b = randomBits( 2, Intervals.createMinMax( 10, 5, 3, 39, 24, 12 ) );
+		final IterationCodeMask maskA = toMask( a );
+		final IterationCodeMask maskB = toMask( b );
+
+		final IterationCodeMask and = maskA.and( maskB );
+		final IterationCodeMask or = maskA.or( maskB );
+		final IterationCodeMask minus = maskA.minus( maskB );
+		final IterationCodeMask xor = maskA.xor( maskB );
+
+		long sizeAnd = 0, sizeOr = 0, sizeMinus = 0, sizeXor = 0;
+		for ( final Localizable pos : Views.iterable( Intervals.positions( Intervals.createMinMax( -1, -1, -1, 40, 25, 13 ) ) ) )
+		{
+			final boolean inA = get( a, pos );
+			final boolean inB = get( b, pos );
+			assertEquals( inA, maskA.test( pos ) );
+			assertEquals( inA && inB, and.test( pos ) );
+			assertEquals( inA || inB, or.test( pos ) );
+			assertEquals( inA && !inB, minus.test( pos ) );
+			assertEquals( inA != inB, xor.test( pos ) );
+			sizeAnd += inA && inB ? 1 : 0;
+			sizeOr += inA || inB ? 1 : 0;
+			sizeMinus += inA && !inB ? 1 : 0;
+			sizeXor += inA != inB ? 1 : 0;
+		}
+		assertEquals( sizeAnd, and.getSize() );
+		assertEquals( sizeOr, or.getSize() );
+		assertEquals( sizeMinus, minus.getSize() );
+		assertEquals( sizeXor, xor.getSize() );
+
+		assertIterableRegionEqualsMask( and );
+		assertIterableRegionEqualsMask( or );
+		assertIterableRegionEqualsMask( minus );
+		assertIterableRegionEqualsMask( xor );
+
+		// the IterationCode of the result reproduces the result
+		assertEquals( xor, new IterationCodeMask( xor ) );
+
+		assertTrue( maskA.minus( maskA ).isEmpty() );
+		assertEquals( 0, maskA.and( maskA.minus( maskA ) ).getSize() );
+	}
+
+	@Test
+	public void testFilter()
+	{
+		final RandomAccessibleInterval< BitType > a = randomBits( 3, Intervals.createMinMax( 0, 0, 20, 30 ) );
+		final IterationCodeMask mask = toMask( a );
+		final IterationCodeMask filtered = mask.filter( p -> ( p.getLongPosition( 0 ) + p.getLongPosition( 1 ) ) % 3 != 0 );
+		for ( final Localizable pos : Views.iterable( Intervals.positions( a ) ) )
+			assertEquals( get( a, pos ) && ( pos.getLongPosition( 0 ) + pos.getLongPosition( 1 ) ) % 3 != 0, filtered.test( pos ) );
+		assertIterableRegionEqualsMask( filtered );
+		assertFalse( filtered.test( new Point( -1, 0 ) ) );
+	}
+
+	private static void assertIterableRegionEqualsMask( final IterationCodeMask mask )
+	{
+		final IterableRegion< BoolType > region = mask.toIterableRegion();
+		assertEquals( mask.getSize(), region.size() );
+		final Cursor< Void > c = region.cursor();
+		long size = 0;
+		long previous = Long.MIN_VALUE;
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			assertTrue( mask.test( c ) );
+			// positions are visited in flat iteration order
+			final long flat = flatIndex( mask, c );
+			assertTrue( flat > previous );
+			previous = flat;
+			++size;
+		}
+		assertEquals( mask.getSize(), size );
+	}
+
+	private static long flatIndex( final Interval interval, final Localizable pos )
+	{
+		long index = 0;
+		for ( int d = interval.numDimensions() - 1; d >= 0; --d )
+			index = index * interval.dimension( d ) + pos.getLongPosition( d ) - interval.min( d );
+		return index;
+	}
+
+	private static RandomAccessibleInterval< BitType > randomBits( final long seed, final Interval interval )
+	{
+		final Img< BitType > img = ArrayImgs.bits( Intervals.dimensionsAsLongArray( interval ) );
+		final Random random = new Random( seed );
+		for ( final BitType t : img )
+			t.set( random.nextInt( 3 ) != 0 );
+		return Views.translate( img, Intervals.minAsLongArray( interval ) );
+	}
+
+	private static IterationCodeMask toMask( final RandomAccessibleInterval< BitType > bits )
+	{
+		final IterationCodeBuilder builder = new IterationCodeBuilder( bits.numDimensions(), bits.min( 0 ) );
+		final Cursor< BitType > c = Views.flatIterable( bits ).localizingCursor();
+		while ( c.hasNext() )
+			if ( c.next().get() )
+				builder.add( c );
+		builder.finish();
+		return new IterationCodeMask( builder );
+	}
+
+	private static boolean get( final RandomAccessibleInterval< BitType > bits, final Localizable pos )
+	{
+		if ( !Intervals.contains( bits, pos ) )
+			return false;
+		final RandomAccess< BitType > ra = bits.randomAccess();
+		ra.setPosition( pos );
+		return ra.get().get();
+	}
+}
@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2021 Tobias Pietzsch, Stephan Preibisch, Stephan Saalfeld,
+ * John Bogovic, Albert Cardona, Barry DeZonia, Christian Dietz, Jan Funke,
+ * Aivar Grislis, Jonathan Hale, Grant Harris, Stefan Helfrich, Mark Hiner,
+ * Martin Horn, Steffen Jaensch, Lee Kamentsky, Larry Lindsey, Melissa Linkert,
+ * Mark Longair, Brian Northan, Nick Perry, Curtis Rueden, Johannes Schindelin,
+ * Jean-Yves Tinevez and Michael Zinsmaier.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package net.imglib2.roi.util.iterationcode;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Point;
+
+import org.junit.Test;
+
+public class IterationCodeSkipIndexTest
+{
+	@Test
+	public void testJumpFwd()
+	{
+		final Random random = new Random( 1 );
+		final IterationCodeBuilder builder = new IterationCodeBuilder( 3, 0 );
+		final Point p = new Point( 3 );
+		for ( int z = 0; z < 20; ++z )
+			for ( int y = 0; y < 30; ++y )
+				for ( int x = 0; x < 40; ++x )
+					if ( random.nextInt( 3 ) != 0 )
+					{
+						p.setPosition( new long[] { x, y, z } );
+						builder.add( p );
+					}
+		builder.finish();
+
+		final IterationCodeSkipIndex skipIndex = builder.getSkipIndex();
+		assertEquals( builder.getSize(), skipIndex.size() );
+		assertEquals( 0, skipIndex.count( skipIndex.find( 0 ) ) );
+
+		final long[] offset = { 3, -2, 5 };
+		for ( final long step : new long[] { 1, 5, 37, 1000 } )
+		{
+			final Point expectedPosition = new Point( 3 );
+			final Point actualPosition = new Point( 3 );
+			final IterationCodeIterator< Point > expected = new IterationCodeIterator<>( builder, offset, expectedPosition );
+			final IterationCodeIterator< Point > actual = new IterationCodeIterator<>( builder.getItcode(), skipIndex, offset, actualPosition );
+			for ( long i = step; i <= builder.getSize(); i += step )
+			{
+				for ( long j = 0; j < step; ++j )
+					expected.fwd();
+				actual.jumpFwd( step );
+				assertEquals( expectedPosition, actualPosition );
+				assertEquals( expected.hasNext(), actual.hasNext() );
+			}
+		}
+	}
+}